@@ -0,0 +1,99 @@
+package ch.cern.cms.daq.expertcontroller.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in milliseconds with fixed memory, so that it can record for the whole soak test.
+ * <p>
+ * Latencies below one second are kept with millisecond resolution, longer ones in 100 ms buckets up to ten minutes.
+ * Longer latencies fall into the last bucket, the maximum is kept exactly.
+ */
+class LatencyHistogram {
+
+    private static final int FINE_LIMIT = 1000;
+
+    private static final int COARSE_STEP = 100;
+
+    private static final int BUCKETS = FINE_LIMIT + (600_000 - FINE_LIMIT) / COARSE_STEP;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long millis) {
+        long value = Math.max(0, millis);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return upper bound of the bucket containing given percentile, 0 if nothing recorded
+     */
+    long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clear the recorded latencies. Latencies recorded concurrently may be lost.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return p50, p90, p99 and maximum
+     */
+    String summary() {
+        if (getCount() == 0) {
+            return "n=0";
+        }
+        return "n=" + getCount()
+                + " p50=" + getPercentile(50)
+                + " p90=" + getPercentile(90)
+                + " p99=" + getPercentile(99)
+                + " max=" + getMax() + " ms";
+    }
+
+    private static int bucket(long millis) {
+        if (millis < FINE_LIMIT) {
+            return (int) millis;
+        }
+        return (int) Math.min(BUCKETS - 1, FINE_LIMIT + (millis - FINE_LIMIT) / COARSE_STEP);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < FINE_LIMIT) {
+            return bucket;
+        }
+        return FINE_LIMIT + (long) (bucket - FINE_LIMIT + 1) * COARSE_STEP - 1;
+    }
+}
@@ -0,0 +1,632 @@
+package ch.cern.cms.daq.expertcontroller.loadtest;
+
+import ch.cern.cms.daq.expertcontroller.ExpertControllerServletApplication;
+import ch.cern.cms.daq.expertcontroller.datatransfer.ApprovalRequest;
+import ch.cern.cms.daq.expertcontroller.datatransfer.ApprovalResponse;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequestStep;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryResponse;
+import org.apache.log4j.Logger;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.Transport;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Synthetic DAQExpert and dashboard traffic against a running controller, for load and soak tests.
+ * <p>
+ * Recovery requests and finished signals are sent over HTTP like the DAQExpert does, approval requests are answered
+ * over the dashboard websocket. Arrivals follow the {@link TrafficProfile} regardless of the responses (open loop), so
+ * a slow controller shows as growing latency and dropped arrivals instead of lower load.
+ * <p>
+ * Reported periodically to the log and at the end to the standard output:
+ * <ul>
+ * <li>admission latency: time to answer the /recover request</li>
+ * <li>acceptance decisions</li>
+ * <li>time to recover: from the request that started the procedure until the status broadcast shows it finished.
+ * Only the last procedure is broadcast, procedures whose end is not seen within the recover timeout are counted as
+ * unresolved</li>
+ * <li>retries answered with other response than the original, which indicates a race in the deduplication</li>
+ * <li>heap and threads of the controller from /metrics, the drift over a long run indicates a leak. The endpoint is
+ * sensitive, it is opened only on the embedded controller</li>
+ * </ul>
+ * Run with the benchmark profile:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=ch.cern.cms.daq.expertcontroller.loadtest.TrafficGenerator
+ *     -Djmh.args="--url=http://localhost:8082 --profile=soak --duration=28800"
+ * </pre>
+ * With --embedded the controller is started in this JVM with the simulated level zero FM, other options are then
+ * passed to the controller as properties, e.g. --rcms.simulator.failure-rate=0.05. Exit status is 1 if any request
+ * failed or any retry got other response.
+ */
+public class TrafficGenerator {
+
+    private static final Logger logger = Logger.getLogger(TrafficGenerator.class);
+
+    private static final String APPROVE_REQUESTS = "/topic/approveRequests";
+
+    private static final String STATUS_DELTAS = "/topic/recovery-status-delta";
+
+    private static final String APPROVE = "/app/approve";
+
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    /**
+     * Decisions that start new procedure
+     */
+    private static final Set<String> STARTING_DECISIONS = new HashSet<>(
+            Arrays.asList("accepted", "acceptedWithPreemption"));
+
+    /**
+     * Final states of the procedure as broadcast in the status
+     */
+    private static final Set<String> FINAL_STATES = new HashSet<>(Arrays.asList("Completed", "Failed", "Cancelled"));
+
+    private final String url;
+
+    private final TrafficProfile profile;
+
+    /**
+     * Report interval in seconds
+     */
+    private final long reportInterval;
+
+    /**
+     * Time in milliseconds after which the recovery not seen finished is unresolved
+     */
+    private final long recoverTimeout;
+
+    /**
+     * Time in seconds to wait for the started recoveries after the traffic
+     */
+    private final long drain;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private final WebSocketStompClient stompClient;
+
+    private volatile StompSession stompSession;
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final ThreadPoolExecutor senders;
+
+    /**
+     * Problem ids of this run start here, so that runs against the same database do not continue each other
+     */
+    private final long problemBase = System.currentTimeMillis() * 1000;
+
+    private final LatencyHistogram admission = new LatencyHistogram();
+
+    private final LatencyHistogram intervalAdmission = new LatencyHistogram();
+
+    private final LatencyHistogram timeToRecover = new LatencyHistogram();
+
+    private final Map<String, AtomicLong> decisions = new ConcurrentSkipListMap<>();
+
+    /**
+     * Started procedures by id, with the time the request was sent in nanoseconds
+     */
+    private final Map<Long, Long> recovering = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestIds = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong retryMismatches = new AtomicLong();
+    private final AtomicLong finishedSignals = new AtomicLong();
+    private final AtomicLong approved = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong unresolved = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private long started;
+
+    private Map<String, Number> firstMetrics;
+
+    private Map<String, Number> lastMetrics;
+
+    public TrafficGenerator(String url, TrafficProfile profile, long reportInterval, long recoverTimeout, long drain) {
+        this.url = url;
+        this.profile = profile;
+        this.reportInterval = reportInterval;
+        this.recoverTimeout = recoverTimeout;
+        this.drain = drain;
+
+        List<Transport> transports = Collections.singletonList(new WebSocketTransport(new StandardWebSocketClient()));
+        this.stompClient = new WebSocketStompClient(new SockJsClient(transports));
+        this.stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+
+        this.scheduler = new ScheduledThreadPoolExecutor(2, daemon("load-scheduler"));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.senders = new ThreadPoolExecutor(profile.getConcurrency(), profile.getConcurrency(),
+                                              60, TimeUnit.SECONDS, new SynchronousQueue<>(), daemon("load-sender"));
+    }
+
+    /**
+     * Send the traffic for the duration of the profile, then wait for the started recoveries
+     *
+     * @return false if any request failed or any retry got other response than the original
+     */
+    public boolean run() throws InterruptedException {
+        logger.info("Sending " + profile + " to " + url);
+        connect();
+        lastMetrics = firstMetrics = metrics();
+        started = System.nanoTime();
+
+        ScheduledFuture<?> arrivals = scheduler.scheduleAtFixedRate(
+                this::arrive, 0, (long) (TimeUnit.SECONDS.toNanos(1) / profile.getRate()), TimeUnit.NANOSECONDS);
+        ScheduledFuture<?> reports = scheduler.scheduleAtFixedRate(
+                this::report, reportInterval, reportInterval, TimeUnit.SECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(profile.getDuration()));
+
+        arrivals.cancel(false);
+        senders.shutdown();
+        senders.awaitTermination(1, TimeUnit.MINUTES);
+
+        // let the scheduled finished signals and approvals go out and the started recoveries finish
+        long drainUntil = System.currentTimeMillis()
+                + Math.max(TimeUnit.SECONDS.toMillis(drain), profile.getFinishedDelay());
+        while (!recovering.isEmpty() && System.currentTimeMillis() < drainUntil) {
+            Thread.sleep(100);
+        }
+        reports.cancel(false);
+        scheduler.shutdownNow();
+
+        lastMetrics = metrics();
+        expireRecovering();
+        finalReport();
+
+        if (stompSession != null) {
+            stompSession.disconnect();
+        }
+        stompClient.stop();
+        return failed.get() == 0 && retryMismatches.get() == 0;
+    }
+
+    private void arrive() {
+        for (int i = 0; i < profile.getBurst(); i++) {
+            try {
+                senders.execute(this::sendRequest);
+            } catch (RejectedExecutionException e) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void sendRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long problemId = problemBase + random.nextInt(profile.getProblems());
+        RecoveryRequest request = buildRequest(problemId, random);
+        String key = "load-" + problemBase + "-" + requestIds.incrementAndGet();
+
+        long start = System.nanoTime();
+        RecoveryResponse response;
+        try {
+            response = post(request, key);
+        } catch (RestClientException e) {
+            failed.incrementAndGet();
+            logger.warn("Recovery request of problem " + problemId + " failed: " + e.getMessage());
+            return;
+        } finally {
+            sent.incrementAndGet();
+        }
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        admission.record(latency);
+        intervalAdmission.record(latency);
+        decisions.computeIfAbsent(String.valueOf(response.getAcceptanceDecision()), d -> new AtomicLong())
+                .incrementAndGet();
+
+        if (STARTING_DECISIONS.contains(response.getAcceptanceDecision()) && response.getRecoveryProcedureId() != null) {
+            recovering.putIfAbsent(response.getRecoveryProcedureId(), start);
+        }
+        if (random.nextDouble() < profile.getRetryRatio()) {
+            retry(request, key, response);
+        }
+        if (random.nextDouble() < profile.getFinishedRatio()) {
+            scheduler.schedule(() -> finished(problemId), profile.getFinishedDelay(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Resend the request with the same key, as the DAQExpert does when the response does not come in time
+     */
+    private void retry(RecoveryRequest request, String key, RecoveryResponse original) {
+        retried.incrementAndGet();
+        try {
+            RecoveryResponse response = post(request, key);
+            if (!Objects.equals(original.getAcceptanceDecision(), response.getAcceptanceDecision())
+                    || !Objects.equals(original.getRecoveryProcedureId(), response.getRecoveryProcedureId())) {
+                retryMismatches.incrementAndGet();
+                logger.warn("Retry " + key + " answered with " + response + " instead of " + original);
+            }
+        } catch (RestClientException e) {
+            failed.incrementAndGet();
+            logger.warn("Retry " + key + " failed: " + e.getMessage());
+        }
+    }
+
+    private RecoveryResponse post(RecoveryRequest request, String key) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(IDEMPOTENCY_KEY, key);
+        return restTemplate.postForObject(url + "/recover", new HttpEntity<>(request, headers), RecoveryResponse.class);
+    }
+
+    private void finished(long problemId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        try {
+            restTemplate.postForEntity(url + "/finished", new HttpEntity<>(problemId, headers), Void.class);
+            finishedSignals.incrementAndGet();
+        } catch (RestClientException e) {
+            failed.incrementAndGet();
+            logger.warn("Finished signal of problem " + problemId + " failed: " + e.getMessage());
+        }
+    }
+
+    private RecoveryRequest buildRequest(long problemId, ThreadLocalRandom random) {
+        List<String> subsystems = profile.getSubsystems();
+        int stepCount = 1 + random.nextInt(profile.getMaxSteps());
+        List<RecoveryRequestStep> steps = new ArrayList<>(stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            String subsystem = subsystems.get(random.nextInt(subsystems.size()));
+            RecoveryRequestStep step = RecoveryRequestStep.builder()
+                    .stepIndex(i)
+                    .humanReadable("Recycle " + subsystem)
+                    .issueTTCHardReset(i == 0 && random.nextBoolean())
+                    .redRecycle(new HashSet<>())
+                    .greenRecycle(new HashSet<>())
+                    .fault(new HashSet<>(Collections.singleton(subsystem)))
+                    .reset(new HashSet<>())
+                    .build();
+            (random.nextBoolean() ? step.getRedRecycle() : step.getGreenRecycle()).add(subsystem);
+            steps.add(step);
+        }
+        return RecoveryRequest.builder()
+                .problemId(problemId)
+                .problemTitle("Synthetic problem " + (problemId - problemBase))
+                .problemDescription("Sent by the traffic generator, profile " + profile.getName())
+                .withInterrupt(random.nextDouble() < profile.getWithInterruptRatio())
+                .withPostponement(random.nextDouble() < profile.getWithPostponementRatio())
+                .priority(random.nextInt(3))
+                .observationPeriod(profile.getObservationPeriod())
+                .recoveryRequestSteps(steps)
+                .build();
+    }
+
+    private void onApprovalRequest(ApprovalRequest request) {
+        boolean approve = ThreadLocalRandom.current().nextDouble() < profile.getApprovalRatio();
+        ApprovalResponse response = ApprovalResponse.builder()
+                .recoveryProcedureId(request.getRecoveryProcedureId())
+                .step(request.getDefaultStepIndex())
+                .procedureContext(request.getDefaultStepIndex() == null)
+                .approved(approve)
+                .build();
+        scheduler.schedule(() -> {
+            StompSession session = stompSession;
+            if (session != null && session.isConnected()) {
+                session.send(APPROVE, response);
+                (approve ? approved : rejected).incrementAndGet();
+            }
+        }, profile.getApprovalDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    private void onStatusDelta(Map<?, ?> delta) {
+        Object procedureId = delta.get("procedureId");
+        if (!(procedureId instanceof Number)) {
+            return;
+        }
+        if (delta.get("endDate") != null || FINAL_STATES.contains(delta.get("status"))) {
+            Long start = recovering.remove(((Number) procedureId).longValue());
+            if (start != null) {
+                timeToRecover.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+    }
+
+    private void connect() {
+        try {
+            StompSession session = stompClient.connect(url + "/recovery", new StompSessionHandlerAdapter() {
+                @Override
+                public void handleTransportError(StompSession session, Throwable exception) {
+                    logger.warn("Dashboard websocket failed: " + exception.getMessage());
+                }
+            }).get(10, TimeUnit.SECONDS);
+            session.subscribe(APPROVE_REQUESTS, new Handler<>(ApprovalRequest.class, this::onApprovalRequest));
+            session.subscribe(STATUS_DELTAS, new Handler<>(Map.class, this::onStatusDelta));
+            stompSession = session;
+        } catch (Exception e) {
+            logger.warn("Could not connect dashboard websocket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Count the recoveries started before given time in nanoseconds as unresolved
+     */
+    private void expireRecovering(long startedBefore) {
+        recovering.values().removeIf(start -> {
+            if (start - startedBefore < 0) {
+                unresolved.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Count all recoveries not seen finished as unresolved
+     */
+    private void expireRecovering() {
+        recovering.values().removeIf(start -> {
+            unresolved.incrementAndGet();
+            return true;
+        });
+    }
+
+    private void report() {
+        try {
+            expireRecovering(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(recoverTimeout));
+            if (stompSession == null || !stompSession.isConnected()) {
+                reconnects.incrementAndGet();
+                connect();
+            }
+            lastMetrics = metrics();
+            logger.info(String.format(
+                    "[%s %ds] sent=%d failed=%d dropped=%d admission %s | recovering=%d recovered %s | %s",
+                    profile.getName(), elapsed(), sent.get(), failed.get(), dropped.get(),
+                    intervalAdmission.summary(), recovering.size(), timeToRecover.summary(), soak(lastMetrics)));
+            intervalAdmission.reset();
+        } catch (RuntimeException e) {
+            // exception would cancel the periodic report
+            logger.warn("Report failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Final report goes to the standard output, unlike the log it is the result of the run
+     */
+    private void finalReport() {
+        long total = admission.getCount();
+        StringBuilder report = new StringBuilder()
+                .append("\nProfile ").append(profile.getName()).append(", ").append(elapsed()).append(" s\n")
+                .append("  requests  sent=").append(sent.get())
+                .append(" failed=").append(failed.get())
+                .append(" dropped=").append(dropped.get())
+                .append(" finished signals=").append(finishedSignals.get()).append('\n')
+                .append("  admission ").append(admission.summary()).append('\n')
+                .append("  decisions");
+        decisions.forEach((decision, count) -> report.append(' ').append(decision).append('=').append(count.get())
+                .append(String.format(" (%.1f%%)", total == 0 ? 0 : 100.0 * count.get() / total)));
+        report.append('\n')
+                .append("  approvals approved=").append(approved.get()).append(" rejected=").append(rejected.get())
+                .append('\n')
+                .append("  recovered ").append(timeToRecover.summary())
+                .append(", unresolved=").append(unresolved.get()).append('\n')
+                .append("  retries   sent=").append(retried.get())
+                .append(" mismatched=").append(retryMismatches.get()).append('\n')
+                .append("  websocket reconnects=").append(reconnects.get()).append('\n')
+                .append("  soak      start ").append(soak(firstMetrics))
+                .append(", end ").append(soak(lastMetrics));
+        System.out.println(report);
+    }
+
+    private long elapsed() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+    }
+
+    /**
+     * @return numeric metrics of the controller, empty if not available
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Number> metrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        try {
+            Map<String, Object> all = restTemplate.getForObject(url + "/metrics", Map.class);
+            all.forEach((name, value) -> {
+                if (value instanceof Number) {
+                    metrics.put(name, (Number) value);
+                }
+            });
+        } catch (RestClientException e) {
+            logger.warn("Could not read metrics: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    private static String soak(Map<String, Number> metrics) {
+        if (metrics == null || metrics.isEmpty()) {
+            return "metrics n/a";
+        }
+        return "heap.used=" + metrics.get("heap.used") + " KB"
+                + " threads=" + metrics.get("threads")
+                + " idempotency.size=" + metrics.get("recovery.idempotency.size")
+                + " circuit.state=" + metrics.get("rcms.circuit.state");
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Handler<T> implements StompFrameHandler {
+
+        private final Class<T> type;
+
+        private final Consumer<T> consumer;
+
+        Handler(Class<T> type, Consumer<T> consumer) {
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return type;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void handleFrame(StompHeaders headers, Object payload) {
+            try {
+                consumer.accept((T) payload);
+            } catch (RuntimeException e) {
+                logger.warn("Could not handle frame of " + headers.getDestination() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Options are given as --name=value:
+     * <ul>
+     * <li>url: of the controller, http://localhost:8082 by default</li>
+     * <li>embedded: start the controller in this JVM with the simulated level zero FM</li>
+     * <li>profile: steady, burst, storm or soak, steady by default</li>
+     * <li>rate, burst, duration, problems, concurrency, retry-ratio, finished-ratio, approval-ratio: override the
+     * profile</li>
+     * <li>report-interval: in seconds, 10 by default</li>
+     * <li>recover-timeout: in milliseconds, 600000 by default</li>
+     * <li>drain: time in seconds to wait for the started recoveries after the traffic, 30 by default</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name=value option, got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+
+        TrafficProfile.TrafficProfileBuilder profile = TrafficProfile.named(take(options, "profile", "steady"))
+                .toBuilder();
+        TrafficProfile defaults = profile.build();
+        profile.rate(Double.parseDouble(take(options, "rate", defaults.getRate())))
+                .burst(Integer.parseInt(take(options, "burst", defaults.getBurst())))
+                .duration(Long.parseLong(take(options, "duration", defaults.getDuration())))
+                .problems(Integer.parseInt(take(options, "problems", defaults.getProblems())))
+                .concurrency(Integer.parseInt(take(options, "concurrency", defaults.getConcurrency())))
+                .retryRatio(Double.parseDouble(take(options, "retry-ratio", defaults.getRetryRatio())))
+                .finishedRatio(Double.parseDouble(take(options, "finished-ratio", defaults.getFinishedRatio())))
+                .approvalRatio(Double.parseDouble(take(options, "approval-ratio", defaults.getApprovalRatio())));
+        long reportInterval = Long.parseLong(take(options, "report-interval", 10));
+        long recoverTimeout = Long.parseLong(take(options, "recover-timeout", 600000));
+        long drain = Long.parseLong(take(options, "drain", 30));
+        boolean embedded = Boolean.parseBoolean(take(options, "embedded", false));
+        String url = take(options, "url", "http://localhost:8082");
+
+        ConfigurableApplicationContext context = null;
+        if (embedded) {
+            context = startEmbedded(options);
+            url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        } else if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + options.keySet());
+        }
+
+        boolean ok;
+        try {
+            ok = new TrafficGenerator(url, profile.build(), reportInterval, recoverTimeout, drain).run();
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Start the controller on random port with the simulated level zero FM
+     *
+     * @param properties properties of the controller, override the defaults
+     */
+    private static ConfigurableApplicationContext startEmbedded(Map<String, String> properties) {
+        Map<String, String> all = new LinkedHashMap<>();
+        all.put("server.port", "0");
+        all.put("rcms.simulator.enabled", "true");
+        // controller on random local port, metrics of the soak are read without authentication
+        all.put("endpoints.metrics.sensitive", "false");
+        all.putAll(properties);
+        // given as arguments, default properties would be overridden by application.properties
+        String[] args = all.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(EmbeddedController.class).run(args);
+    }
+
+    /**
+     * Controller as configured by {@link ExpertControllerServletApplication}, without the test configurations that are
+     * on the benchmark classpath. They are excluded by the test context only.
+     */
+    @Configuration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = ExpertControllerServletApplication.class)
+    @EnableJpaRepositories(basePackageClasses = ExpertControllerServletApplication.class)
+    @ComponentScan(basePackageClasses = ExpertControllerServletApplication.class, excludeFilters = {
+            @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ExpertControllerServletApplication.class),
+            @ComponentScan.Filter(type = FilterType.ANNOTATION, classes = TestConfiguration.class),
+            @ComponentScan.Filter(type = FilterType.REGEX, pattern = {
+                    ".*Tests?", ".*\\.MockServicesProvider", "ch\\.cern\\.cms\\.daq\\.expertcontroller\\.loadtest\\..*"})
+    })
+    static class EmbeddedController {
+    }
+
+    private static String take(Map<String, String> options, String name, Object defaultValue) {
+        String value = options.remove(name);
+        return value != null ? value : String.valueOf(defaultValue);
+    }
+}
@@ -0,0 +1,160 @@
+package ch.cern.cms.daq.expertcontroller.loadtest;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Traffic sent by the DAQExpert and the operators. Ratios are probabilities from 0 to 1, times are in milliseconds.
+ */
+@Data
+@Builder(toBuilder = true)
+public class TrafficProfile {
+
+    private String name;
+
+    /**
+     * Arrivals per second, each arrival sends burst requests at once
+     */
+    private double rate;
+
+    private int burst;
+
+    /**
+     * Duration of the traffic in seconds
+     */
+    private long duration;
+
+    /**
+     * Number of distinct problems the requests are drawn from, fewer problems give more continued recoveries
+     */
+    private int problems;
+
+    /**
+     * Maximum number of requests in progress, arrivals above the limit are counted as dropped
+     */
+    private int concurrency;
+
+    private int maxSteps;
+
+    private List<String> subsystems;
+
+    private double withInterruptRatio;
+
+    private double withPostponementRatio;
+
+    /**
+     * Requests resent with the same idempotency key, their response must be the original one
+     */
+    private double retryRatio;
+
+    /**
+     * Requests followed by the finished signal of their condition
+     */
+    private double finishedRatio;
+
+    private long finishedDelay;
+
+    /**
+     * Approval requests answered with approval, the others are answered with rejection
+     */
+    private double approvalRatio;
+
+    private long approvalDelay;
+
+    /**
+     * Observation period of the requests, the configured one if null
+     */
+    private Integer observationPeriod;
+
+    private static final List<String> SUBSYSTEMS = Arrays.asList(
+            "ECAL", "HCAL", "PIXEL", "TRACKER", "ES", "CSC", "DT", "RPC", "TRG", "DAQ");
+
+    /**
+     * Few requests, mostly finished and approved, like a quiet run
+     */
+    public static TrafficProfile steady() {
+        return TrafficProfile.builder()
+                .name("steady")
+                .rate(1)
+                .burst(1)
+                .duration(300)
+                .problems(50)
+                .concurrency(16)
+                .maxSteps(3)
+                .subsystems(SUBSYSTEMS)
+                .withInterruptRatio(0.1)
+                .withPostponementRatio(0.2)
+                .retryRatio(0.1)
+                .finishedRatio(0.8)
+                .finishedDelay(2000)
+                .approvalRatio(1)
+                .approvalDelay(200)
+                .observationPeriod(1000)
+                .build();
+    }
+
+    /**
+     * Bursts of requests as after the loss of a common dependency, when many conditions fire together
+     */
+    public static TrafficProfile burst() {
+        return steady().toBuilder()
+                .name("burst")
+                .rate(0.5)
+                .burst(50)
+                .duration(120)
+                .problems(20)
+                .concurrency(64)
+                .retryRatio(0.3)
+                .build();
+    }
+
+    /**
+     * Continuous high rate of requests of few problems, with retries and slow operators
+     */
+    public static TrafficProfile storm() {
+        return steady().toBuilder()
+                .name("storm")
+                .rate(100)
+                .duration(60)
+                .problems(5)
+                .concurrency(128)
+                .withInterruptRatio(0.3)
+                .retryRatio(0.5)
+                .finishedRatio(0.5)
+                .approvalRatio(0.7)
+                .approvalDelay(1000)
+                .build();
+    }
+
+    /**
+     * Moderate traffic for hours, to find leaks and races rather than the limits
+     */
+    public static TrafficProfile soak() {
+        return steady().toBuilder()
+                .name("soak")
+                .rate(5)
+                .duration(8 * 3600)
+                .problems(200)
+                .concurrency(32)
+                .build();
+    }
+
+    public static TrafficProfile named(String name) {
+        switch (name) {
+            case "steady":
+                return steady();
+            case "burst":
+                return burst();
+            case "storm":
+                return storm();
+            case "soak":
+                return soak();
+            default:
+                throw new IllegalArgumentException("Unknown traffic profile " + name
+                                                           + ", expected steady, burst, storm or soak");
+        }
+    }
+}
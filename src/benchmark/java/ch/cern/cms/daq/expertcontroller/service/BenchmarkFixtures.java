@@ -0,0 +1,96 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.AutomaticRecoveryService;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.Executor;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSM;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMListener;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Procedures, executors and services for the benchmarks. Executors are put in the requested state without executing
+ * anything, their FSM has no listener.
+ */
+class BenchmarkFixtures {
+
+    /**
+     * @param steps  number of jobs, each of them executed once
+     * @param events number of events in the action summary
+     */
+    static RecoveryProcedure procedure(int steps, int events) {
+        OffsetDateTime start = OffsetDateTime.now().minusMinutes(10);
+
+        List<RecoveryJob> jobs = new ArrayList<>();
+        for (int i = 0; i < steps; i++) {
+            jobs.add(RecoveryJob.builder()
+                             .stepIndex(i)
+                             .job("Job " + i)
+                             .status("Completed")
+                             .start(start.plusSeconds(i))
+                             .end(start.plusSeconds(i + 1))
+                             .build());
+        }
+
+        List<Event> summary = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            summary.add(Event.builder()
+                                .content("Event " + i)
+                                .type("processing")
+                                .stepIndex(i % steps)
+                                .date(start.plusNanos(i))
+                                .build());
+        }
+
+        RecoveryProcedure procedure = RecoveryProcedure.builder()
+                .problemTitle("Benchmark problem")
+                .problemIds(Arrays.asList(1L, 2L))
+                .start(start)
+                .procedure(jobs)
+                .executedJobs(new ArrayList<>(jobs))
+                .eventSummary(summary)
+                .build();
+        procedure.setId(1L);
+        return procedure;
+    }
+
+    /**
+     * @param state one of the states on the successful path: Idle, SelectingJob, AwaitingApproval, Recovering or
+     *              Observe
+     */
+    static Executor executor(RecoveryProcedure procedure, State state) {
+        FSM fsm = FSM.builder().build().initialize();
+        FSMEvent[] path = {FSMEvent.RecoveryStarts, FSMEvent.NextJobFound, FSMEvent.JobAccepted, FSMEvent.JobCompleted};
+        for (int i = 0; i < path.length && fsm.getState() != state; i++) {
+            fsm.transition(path[i]);
+        }
+        if (fsm.getState() != state) {
+            throw new IllegalArgumentException("State " + state + " is not on the successful path");
+        }
+
+        FSMListener listener = FSMListener.builder().reportSteps(procedure.getEventSummary()).build();
+        listener.setCurrentProcedure(procedure);
+
+        return Executor.builder()
+                .fsm(fsm)
+                .listener(listener)
+                .executedProcedure(procedure)
+                .isBusyConsumer(() -> true)
+                .build();
+    }
+
+    static DefaultRecoveryService service(Executor executor) {
+        DefaultRecoveryService recoveryService = new AutomaticRecoveryService();
+        ReflectionTestUtils.setField(recoveryService, "dtoMapper", new DtoMapper());
+        ReflectionTestUtils.setField(recoveryService, "recoveryProcedureExecutor", executor);
+        return recoveryService;
+    }
+}
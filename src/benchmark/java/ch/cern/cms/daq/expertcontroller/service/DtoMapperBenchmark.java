@@ -0,0 +1,81 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJobStatus;
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.convention.MatchingStrategies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of the mapping done on every status build: action summary of 30 events and statuses of 5 jobs. Compares
+ * ModelMapper constructed per build with the shared {@link DtoMapper}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtoMapperBenchmark {
+
+    private final DtoMapper dtoMapper = new DtoMapper();
+
+    private List<Event> events;
+
+    private List<RecoveryJob> jobs;
+
+    @Setup
+    public void setup() {
+        events = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            events.add(Event.builder().id((long) i).content("Event " + i).type("info").date(OffsetDateTime.now())
+                               .stepIndex(i % 5).build());
+        }
+        jobs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            jobs.add(RecoveryJob.builder().stepIndex(i).start(OffsetDateTime.now()).end(OffsetDateTime.now()).build());
+        }
+    }
+
+    /**
+     * Mapping as done before, job statuses were not mapped by ModelMapper
+     */
+    @Benchmark
+    public int modelMapperPerBuild() {
+        ModelMapper modelMapper = new ModelMapper();
+        modelMapper.getConfiguration()
+                .setMatchingStrategy(MatchingStrategies.STRICT);
+        List<ch.cern.cms.daq.expertcontroller.datatransfer.Event> dtos = events.stream()
+                .map(e -> modelMapper.map(e, ch.cern.cms.daq.expertcontroller.datatransfer.Event.class))
+                .collect(Collectors.toList());
+        List<RecoveryJobStatus> statuses = jobs.stream()
+                .map(j -> dtoMapper.toJobStatus(j, jobs))
+                .collect(Collectors.toList());
+        return dtos.size() + statuses.size();
+    }
+
+    @Benchmark
+    public int sharedDtoMapper() {
+        List<ch.cern.cms.daq.expertcontroller.datatransfer.Event> dtos = dtoMapper.toEvents(events);
+        List<RecoveryJobStatus> statuses = jobs.stream()
+                .map(j -> dtoMapper.toJobStatus(j, jobs))
+                .collect(Collectors.toList());
+        return dtos.size() + statuses.size();
+    }
+}
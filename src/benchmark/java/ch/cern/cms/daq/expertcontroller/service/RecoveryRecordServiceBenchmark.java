@@ -0,0 +1,167 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRecord;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recovery history served from the in-memory H2 database, with the same context as the service tests (see
+ * {@link MockServicesProvider}). History of given size is inserted once per run.
+ * <p>
+ * Collections of the procedures are lazy, the cost of the listings should not depend on the number of jobs and
+ * subsystems of the procedures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecoveryRecordServiceBenchmark {
+
+    private static final int INSERT_BATCH = 500;
+
+    private static final int PAGE = 100;
+
+    @Param({"1000", "10000", "50000"})
+    private int procedures;
+
+    private ConfigurableApplicationContext context;
+
+    private RecoveryRecordService recoveryRecordService;
+
+    private RecoveryProcedureRepository repository;
+
+    private OffsetDateTime start;
+
+    private OffsetDateTime end;
+
+    /**
+     * Cursor in the middle of the history
+     */
+    private Long middle;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(MockServicesProvider.class)
+                .properties("server.port=0")
+                .run();
+        recoveryRecordService = context.getBean(RecoveryRecordService.class);
+        repository = context.getBean(RecoveryProcedureRepository.class);
+
+        end = OffsetDateTime.now();
+        start = end.minusMinutes(procedures + 1);
+
+        List<RecoveryProcedure> batch = new ArrayList<>();
+        for (int i = 0; i < procedures; i++) {
+            OffsetDateTime procedureStart = start.plusMinutes(i);
+            batch.add(RecoveryProcedure.builder()
+                              .problemTitle("Problem " + i)
+                              .problemIds(Collections.singletonList((long) i))
+                              .start(procedureStart)
+                              .end(procedureStart.plusSeconds(30))
+                              .executedJobs(Arrays.asList(job("first", procedureStart), job("second", procedureStart)))
+                              .build());
+            if (batch.size() == INSERT_BATCH || i == procedures - 1) {
+                List<RecoveryProcedure> saved = repository.save(batch);
+                int first = i + 1 - saved.size();
+                if (first <= procedures / 2 && procedures / 2 <= i) {
+                    middle = saved.get(procedures / 2 - first).getId();
+                }
+                batch = new ArrayList<>();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<RecoveryRecord> firstPage() {
+        return recoveryRecordService.getRecords(start, end, null, PAGE);
+    }
+
+    @Benchmark
+    public List<RecoveryRecord> middlePage() {
+        return recoveryRecordService.getRecords(start, end, middle, PAGE);
+    }
+
+    /**
+     * Request without paging parameters, limited by records.max-page-size
+     */
+    @Benchmark
+    public List<RecoveryRecord> defaultPage() {
+        return recoveryRecordService.getRecords(start, end);
+    }
+
+    /**
+     * Procedures with their jobs, latest first
+     */
+    @Benchmark
+    public List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> proceduresPage() {
+        return recoveryRecordService.getProcedures(start, end, null, PAGE);
+    }
+
+    /**
+     * Single procedure loaded with the detail entity graph
+     */
+    @Benchmark
+    public RecoveryProcedure procedureDetail() {
+        return repository.findById(middle).orElse(null);
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        recoveryRecordService.exportRecords(start, end, new DiscardingOutputStream());
+    }
+
+    private static RecoveryJob job(String name, OffsetDateTime start) {
+        return RecoveryJob.builder()
+                .job(name)
+                .start(start)
+                .end(start.plusSeconds(10))
+                .redRecycle(new HashSet<>(Arrays.asList("ECAL", "PIXEL")))
+                .greenRecycle(new HashSet<>(Collections.singletonList("TRACKER")))
+                .fault(new HashSet<>(Arrays.asList("ECAL", "PIXEL")))
+                .reset(new HashSet<>())
+                .build();
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryServiceStatus;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.Executor;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the service status served to the dashboards, for the procedure in progress.
+ * <p>
+ * {@link #unchanged()} is the read between two executor updates, {@link #updated()} includes publishing the executor
+ * snapshot and building the status from it, as done once per FSM transition.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class RecoveryServiceStatusBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int steps;
+
+    @Param({"10", "1000", "10000"})
+    private int events;
+
+    private Executor executor;
+
+    private DefaultRecoveryService recoveryService;
+
+    @Setup
+    public void setup() {
+        executor = BenchmarkFixtures.executor(BenchmarkFixtures.procedure(steps, events), State.Recovering);
+        recoveryService = BenchmarkFixtures.service(executor);
+    }
+
+    @Benchmark
+    public RecoveryServiceStatus unchanged() {
+        return recoveryService.getRecoveryServiceStatus();
+    }
+
+    @Benchmark
+    public RecoveryServiceStatus updated() {
+        executor.publishStatus();
+        return recoveryService.getRecoveryServiceStatus();
+    }
+}
@@ -0,0 +1,70 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission decision for the requests arriving from several threads at once, all of them deciding against the same
+ * executor. Idle executor accepts, executor in Observe continues the same problem and postpones the others.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class RequestAdmissionBenchmark {
+
+    @Param({"Idle", "Observe"})
+    private State state;
+
+    private DefaultRecoveryService recoveryService;
+
+    private RecoveryRequest sameProblem;
+
+    private RecoveryRequest otherProblem;
+
+    @Setup
+    public void setup() {
+        recoveryService = BenchmarkFixtures.service(
+                BenchmarkFixtures.executor(BenchmarkFixtures.procedure(5, 30), state));
+
+        sameProblem = RecoveryRequest.builder()
+                .problemId(1L)
+                .problemTitle("Benchmark problem")
+                .isSameProblem(true)
+                .recoveryRequestSteps(Collections.emptyList())
+                .build();
+        otherProblem = RecoveryRequest.builder()
+                .problemId(3L)
+                .problemTitle("Other problem")
+                .withPostponement(true)
+                .recoveryRequestSteps(Collections.emptyList())
+                .build();
+    }
+
+    @Benchmark
+    public String sameProblem() {
+        return recoveryService.acceptRecoveryRequestForExecution(sameProblem);
+    }
+
+    @Benchmark
+    public String otherProblem() {
+        return recoveryService.acceptRecoveryRequestForExecution(otherProblem);
+    }
+}
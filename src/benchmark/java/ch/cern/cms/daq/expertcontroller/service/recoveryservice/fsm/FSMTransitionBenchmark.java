@@ -0,0 +1,185 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm;
+
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the FSM itself. Listener does nothing, so that the cost of the transition lookup and the event
+ * dispatch is measured. One operation is one transition, the procedure goes through the full successful path and
+ * back to Idle.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class FSMTransitionBenchmark {
+
+    private static final FSMEvent[] SUCCESSFUL_PROCEDURE = {
+            FSMEvent.RecoveryStarts,
+            FSMEvent.NextJobFound,
+            FSMEvent.JobAccepted,
+            FSMEvent.JobCompleted,
+            FSMEvent.Finished,
+            FSMEvent.ReportStatus
+    };
+
+    private FSM fsm;
+
+    @Setup
+    public void setup() {
+        fsm = FSM.builder().listener(new NoOpListener()).build().initialize();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(6)
+    public State successfulProcedure() {
+        for (FSMEvent event : SUCCESSFUL_PROCEDURE) {
+            fsm.transition(event);
+        }
+        return fsm.getState();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(3)
+    public State interruptedProcedure() {
+        fsm.transition(FSMEvent.RecoveryStarts);
+        fsm.transition(FSMEvent.Interrupt);
+        // listener does not report the status
+        fsm.transition(FSMEvent.ReportStatus);
+        return fsm.getState();
+    }
+
+    /**
+     * Handles every event without follow up event
+     */
+    static class NoOpListener implements IFSMListener {
+
+        @Override
+        public void setCurrentProcedure(RecoveryProcedure recoveryProcedure) {
+        }
+
+        @Override
+        public List<Event> getSummary() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onStart() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onJobAccepted() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onOtherJobAccepted() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onJobCompleted() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onJobNoEffect() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onRecoveryFailed() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onReportStatus() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onNextJobNotFound() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onNextJobFound() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onTimeout() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onException() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onJobException() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onFinished() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onInterrupted() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onCancelled() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onProcedureAccepted() {
+            return null;
+        }
+
+        @Override
+        public RecoveryJob getCurrentJob() {
+            return null;
+        }
+
+        @Override
+        public FSMEvent onApprovedJobNotExist() {
+            return null;
+        }
+
+        @Override
+        public void setCurrentJob(RecoveryJob job) {
+        }
+
+        @Override
+        public RecoveryProcedure getCurrentProcedure() {
+            return null;
+        }
+
+        @Override
+        public void onNewRcmsStatus(String status) {
+        }
+    }
+}
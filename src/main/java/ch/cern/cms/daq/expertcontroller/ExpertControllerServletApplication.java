@@ -2,9 +2,11 @@ package ch.cern.cms.daq.expertcontroller;
 
 import ch.cern.cms.daq.expertcontroller.service.ProbeRecoverySender;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.ExecutorFactory;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.ExecutorPartitions;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.IExecutor;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
@@ -36,9 +38,26 @@ public class ExpertControllerServletApplication extends SpringBootServletInitial
     @Configuration
     public static class AppConfig {
 
+        /**
+         * @param async whether to use executor that does not block threads while waiting for consumers
+         */
         @Bean
-        public IExecutor executorService() {
-            return ExecutorFactory.DEFAULT_EXECUTOR;
+        public IExecutor executorService(@Value("${executor.async:false}") boolean async) {
+            return async ? ExecutorFactory.ASYNC_EXECUTOR : ExecutorFactory.DEFAULT_EXECUTOR;
+        }
+
+        /**
+         * @param executorService primary executor
+         * @param maxPartitions   maximum number of procedures executed in parallel
+         * @param async           whether to use executors that do not block threads while waiting for consumers
+         */
+        @Bean
+        public ExecutorPartitions executorPartitions(IExecutor executorService,
+                                                     @Value("${recovery.partitions.max:4}") int maxPartitions,
+                                                     @Value("${executor.async:false}") boolean async) {
+            return new ExecutorPartitions(executorService,
+                                          () -> ExecutorFactory.buildPartitionExecutor(async),
+                                          maxPartitions);
         }
     }
 
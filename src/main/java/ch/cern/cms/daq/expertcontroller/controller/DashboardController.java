@@ -51,7 +51,8 @@ public class DashboardController {
 
 
     /**
-     * Called by the dashboard client when requests status
+     * Called by the dashboard client when requests status, e.g. on connect. Afterwards the client applies the status
+     * deltas, full status is broadcast only when the view is reset
      */
     @MessageMapping("/status")
     @SendTo("/topic/recovery-status")
@@ -84,4 +85,14 @@ public class DashboardController {
         this.template.convertAndSend("/topic/recovery-status", recoveryServiceStatus);
     }
 
+    /**
+     * Sends change of the recovery status to the dashboard client
+     *
+     * @param recoveryStatusDelta data transfer object describing what has changed since the last status
+     */
+    public void notifyRecoveryStatusDelta(RecoveryStatusDelta recoveryStatusDelta) {
+        logger.debug("Notifying dashboard status delta: " + recoveryStatusDelta);
+        this.template.convertAndSend("/topic/recovery-status-delta", recoveryStatusDelta);
+    }
+
 }
\ No newline at end of file
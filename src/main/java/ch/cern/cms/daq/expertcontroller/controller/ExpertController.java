@@ -4,18 +4,27 @@ import ch.cern.cms.daq.expertcontroller.datatransfer.*;
 import ch.cern.cms.daq.expertcontroller.service.IRecoveryService;
 import ch.cern.cms.daq.expertcontroller.service.ProbeRecoverySender;
 import ch.cern.cms.daq.expertcontroller.service.RecoveryRecordService;
+import ch.cern.cms.daq.expertcontroller.service.RecoveryRequestDeduplicator;
+import ch.cern.cms.daq.expertcontroller.service.StepEffectivenessStatistics;
+import ch.cern.cms.daq.expertcontroller.service.rcms.LV0AutomatorStatusMonitor;
 import org.apache.log4j.Logger;
 import org.hibernate.cfg.NotYetImplementedException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -35,23 +44,39 @@ public class ExpertController {
     @Autowired
     ProbeRecoverySender probeRecoverySender;
 
+    @Autowired
+    RecoveryRequestDeduplicator recoveryRequestDeduplicator;
+
+    @Autowired
+    LV0AutomatorStatusMonitor lv0AutomatorStatusMonitor;
+
+    @Autowired
+    StepEffectivenessStatistics stepEffectivenessStatistics;
+
+    private final static String NDJSON = "application/x-ndjson";
+
     @Value("${controller.message}")
     private String message;
 
     /**
      * Defines endpoint to request recovery
      *
-     * @param request data transfer object describing recovery request
+     * @param request        data transfer object describing recovery request
+     * @param idempotencyKey optional key of the request, retry with the same key is answered with the original
+     *                       response instead of being processed again
      * @return response to the recovery request, includes decision whether recovery request has been accepted or
      * rejected
      */
     @RequestMapping(value = "/recover", method = RequestMethod.POST)
-    public ResponseEntity<RecoveryResponse> requestRecovery(@RequestBody RecoveryRequest request) {
+    public ResponseEntity<RecoveryResponse> requestRecovery(
+            @RequestBody RecoveryRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
         logger.info("New recovery request for problem: " + request.getProblemId() + " " + request.getProblemTitle());
 
         try {
-            RecoveryResponse response = recoveryService.submitRecoveryRequest(request);
+            RecoveryResponse response = recoveryRequestDeduplicator.process(
+                    idempotencyKey, request, recoveryService::submitRecoveryRequest);
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } catch (IllegalArgumentException e) {
 
@@ -88,6 +113,18 @@ public class ExpertController {
         recoveryService.finished(id);
     }
 
+    /**
+     * Endpoint for the LV0 automator notifications. Changed parameters are passed to the automator status monitor so
+     * that the end of ongoing recovery is detected without waiting for the next poll.
+     *
+     * @param parameters changed LV0 automator parameters, name to value
+     */
+    @RequestMapping(value = "/lv0a-notification", method = RequestMethod.POST)
+    public void lv0AutomatorNotification(@RequestBody Map<String, String> parameters) {
+        logger.debug("LV0A notification received: " + parameters);
+        lv0AutomatorStatusMonitor.onParameterNotification(parameters);
+    }
+
     /**
      * Endpoint to schedule test recovery
      *
@@ -138,20 +175,72 @@ public class ExpertController {
      *
      * @param start beginning of requested time span
      * @param end   end of requested time span
+     * @param after id of the last procedure of the previous page, omit for the first page
+     * @param limit maximum number of procedures in the page, omit for all procedures of the time span
      * @return data transfer objects describing recovery records within given time span
      */
     @CrossOrigin(origins = "*")
     @RequestMapping(value = "/records")
     public Collection<RecoveryRecord> getRecoveryRecords(
             @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime start,
-            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime end) {
-        logger.info("Requested records between: " + start + " and  " + end);
-        List<RecoveryRecord> result = recoveryRecordService.getRecords(start, end);
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime end,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        logger.info("Requested records between: " + start + " and  " + end + ", after: " + after);
+        List<RecoveryRecord> result = recoveryRecordService.getRecords(start, end, after, limit);
 
         logger.debug("Result: " + result);
         return result;
     }
 
+    /**
+     * Endpoint to export all recovery records within given time span as newline delimited JSON. Records are streamed
+     * from the database, gzip compressed when the client accepts it.
+     *
+     * @param start beginning of requested time span
+     * @param end   end of requested time span
+     */
+    @CrossOrigin(origins = "*")
+    @RequestMapping(value = "/records/export", method = RequestMethod.GET)
+    public void exportRecoveryRecords(
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime start,
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime end,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+        logger.info("Requested export of records between: " + start + " and  " + end);
+        try (OutputStream out = exportStream(acceptEncoding, response)) {
+            recoveryRecordService.exportRecords(start, end, out);
+        }
+    }
+
+    /**
+     * Endpoint to export all recovery procedures within given time span as newline delimited JSON. Procedures are
+     * streamed from the database, gzip compressed when the client accepts it.
+     *
+     * @param start beginning of requested time span
+     * @param end   end of requested time span
+     */
+    @RequestMapping(value = "/procedures/export", method = RequestMethod.GET)
+    public void exportProcedures(
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime start,
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime end,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+        logger.info("Requested export of procedures between: " + start + " and  " + end);
+        try (OutputStream out = exportStream(acceptEncoding, response)) {
+            recoveryRecordService.exportProcedures(start, end, out);
+        }
+    }
+
+    private OutputStream exportStream(String acceptEncoding, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return new GZIPOutputStream(response.getOutputStream());
+        }
+        return response.getOutputStream();
+    }
+
     @RequestMapping(value = "/interrupt", method = RequestMethod.GET)
     public InterruptResponse interrupt() {
         return recoveryService.interrupt();
@@ -160,8 +249,21 @@ public class ExpertController {
     @RequestMapping(value = "/procedures", method = RequestMethod.GET)
     public List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> getProcedures(
             @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime start,
-            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime end) {
-        return recoveryRecordService.getProcedures(start, end);
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime end,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        return recoveryRecordService.getProcedures(start, end, after, limit);
+    }
+
+    /**
+     * Endpoint to get historical effectiveness of the recovery steps of given problem
+     *
+     * @param problemTitle title of the problem as given in the recovery requests
+     * @return statistics of the steps, most effective first
+     */
+    @RequestMapping(value = "/step-effectiveness", method = RequestMethod.GET)
+    public List<StepEffectiveness> getStepEffectiveness(@RequestParam("problemTitle") String problemTitle) {
+        return stepEffectivenessStatistics.getStatistics(problemTitle);
     }
 
     /**
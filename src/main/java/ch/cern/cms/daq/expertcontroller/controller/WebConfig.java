@@ -0,0 +1,28 @@
+package ch.cern.cms.daq.expertcontroller.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Persistence context for the whole web request (open entity manager in view) on all endpoints but /recover. Request
+ * for recovery waits for the executor, with open persistence context it would hold a DB connection meanwhile, which
+ * the executor may need to finish the procedure. Replaces the one of spring.jpa.open-in-view, which is disabled.
+ */
+@Configuration
+public class WebConfig extends WebMvcConfigurerAdapter {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        OpenEntityManagerInViewInterceptor interceptor = new OpenEntityManagerInViewInterceptor();
+        interceptor.setEntityManagerFactory(entityManagerFactory);
+        registry.addWebRequestInterceptor(interceptor).excludePathPatterns("/recover");
+    }
+}
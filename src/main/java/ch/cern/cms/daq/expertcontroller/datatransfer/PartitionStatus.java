@@ -0,0 +1,21 @@
+package ch.cern.cms.daq.expertcontroller.datatransfer;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Status of one of the partitions executing procedures in parallel
+ *
+ * @see RecoveryServiceStatus
+ */
+@Data
+@Builder
+public class PartitionStatus {
+
+    private String executorState;
+
+    /**
+     * Procedure executed in the partition
+     */
+    private RecoveryProcedureStatus lastProcedureStatus;
+}
@@ -31,6 +31,16 @@ public class RecoveryRequest {
 
     private boolean withPostponement;
 
+    /**
+     * Importance of the request, higher first. Orders the postponed requests, 0 if not given
+     */
+    private Integer priority;
+
+    /**
+     * Observation period in milliseconds after each step, observe.period if not given
+     */
+    private Integer observationPeriod;
+
     private List<RecoveryRequestStep> recoveryRequestSteps;
 
     public String toString() {
@@ -27,4 +27,9 @@ public class RecoveryRequestStep {
 
     Set<String> reset;
 
+    /**
+     * Observation period in milliseconds after this step, overrides the one of the request
+     */
+    Integer observationPeriod;
+
 }
@@ -4,6 +4,8 @@ package ch.cern.cms.daq.expertcontroller.datatransfer;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 @Builder
 public class RecoveryServiceStatus {
@@ -14,4 +16,15 @@ public class RecoveryServiceStatus {
      * Last submitted procedure. It can be still ongoing of finished in case executor is in idle state.
      */
     private RecoveryProcedureStatus lastProcedureStatus;
+
+    /**
+     * State of the circuit to the level zero FM: Closed, Open or HalfOpen
+     */
+    private String rcmsCircuitState;
+
+    /**
+     * Statuses of all busy partitions when procedures are executed in parallel, null otherwise. Last procedure is the
+     * one started most recently.
+     */
+    private List<PartitionStatus> partitionStatuses;
 }
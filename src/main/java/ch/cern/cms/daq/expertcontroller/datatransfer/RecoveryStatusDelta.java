@@ -0,0 +1,57 @@
+package ch.cern.cms.daq.expertcontroller.datatransfer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Change of the recovery service status since the previously broadcast one. Lets the dashboard update its view
+ * without receiving the whole status. If reset is set, the delta describes the whole procedure and replaces the view.
+ *
+ * @see RecoveryServiceStatus
+ */
+@Data
+@Builder
+public class RecoveryStatusDelta {
+
+    private String executorState;
+
+    /**
+     * State of the circuit to the level zero FM: Closed, Open or HalfOpen
+     */
+    private String rcmsCircuitState;
+
+    /**
+     * Id of the recovery procedure that the delta applies to
+     */
+    private Long procedureId;
+
+    /**
+     * Whether delta describes the whole procedure, e.g. when new procedure has started
+     */
+    private boolean reset;
+
+    @JsonProperty("status")
+    private String finalStatus;
+
+    /**
+     * Events appended to the action summary
+     */
+    private List<Event> newEvents;
+
+    /**
+     * Statuses of the jobs that have changed
+     */
+    @JsonProperty("automatedSteps")
+    private List<RecoveryJobStatus> changedJobStatuses;
+
+    private Date endDate;
+
+    /**
+     * Statuses of the busy partitions, set only when they have changed
+     */
+    private List<PartitionStatus> partitionStatuses;
+}
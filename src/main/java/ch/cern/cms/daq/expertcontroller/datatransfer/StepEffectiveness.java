@@ -0,0 +1,36 @@
+package ch.cern.cms.daq.expertcontroller.datatransfer;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Historical effectiveness of one recovery step for given problem
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StepEffectiveness {
+
+    /**
+     * What the step does, e.g. "ttchr;red=ECAL;green=;fault=ECAL;reset="
+     */
+    String signature;
+
+    /** Executions with known outcome */
+    long attempts;
+
+    /** Executions after which the problem finished */
+    long successes;
+
+    double successRate;
+
+    /** Mean time in milliseconds from the start of the step to its outcome */
+    long meanDuration;
+
+    /** Whether the step has enough attempts to be ranked */
+    boolean ranked;
+
+}
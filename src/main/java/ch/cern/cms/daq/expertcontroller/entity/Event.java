@@ -5,16 +5,25 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.time.OffsetDateTime;
 
+/**
+ * Entry of the recovery procedure event journal. Events are append-only: inserted once and never updated.
+ */
 @Data
 @Builder
 @Entity
+@Immutable
+@Table(indexes = @Index(name = "event_procedure_sequence", columnList = "recovery_procedure_id,list_index"))
 @NoArgsConstructor
 @AllArgsConstructor
 public class Event {
@@ -33,4 +42,16 @@ public class Event {
      * Index of step this event in context of
      */
     private Integer stepIndex;
+
+    /**
+     * Id of the procedure this event belongs to
+     */
+    @Column(name = "recovery_procedure_id", updatable = false)
+    private Long procedureId;
+
+    /**
+     * Position of this event in the procedure's event summary
+     */
+    @Column(name = "list_index", updatable = false)
+    private Integer sequence;
 }
@@ -0,0 +1,43 @@
+package ch.cern.cms.daq.expertcontroller.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+
+/**
+ * Recovery request that has already been processed, with the response given to it. Repeated request with the same key
+ * is answered with the stored response.
+ */
+@Data
+@Builder
+@Entity
+@Table(indexes = @Index(name = "processed_recovery_request_received", columnList = "received"))
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedRecoveryRequest {
+
+    /**
+     * Idempotency key given by the client. Requests without the key are not stored, see RecoveryRequestDeduplicator
+     */
+    @Id
+    @Column(length = 255)
+    private String requestKey;
+
+    private OffsetDateTime received;
+
+    private String acceptanceDecision;
+
+    private Long recoveryProcedureId;
+
+    private Long rejectedDueToConditionId;
+
+    private Long continuesTheConditionId;
+}
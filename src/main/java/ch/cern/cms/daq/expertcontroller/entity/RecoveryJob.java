@@ -2,10 +2,12 @@ package ch.cern.cms.daq.expertcontroller.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import java.time.OffsetDateTime;
 import java.time.ZonedDateTime;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -42,18 +44,22 @@ public class RecoveryJob {
 
     @ElementCollection
     @CollectionTable(name ="recoveryJobRedRecycle")
+    @BatchSize(size = 50)
     Set<String> redRecycle;
 
     @ElementCollection
     @CollectionTable(name ="recoveryJobGreenRecycle")
+    @BatchSize(size = 50)
     Set<String> greenRecycle;
 
     @ElementCollection
     @CollectionTable(name ="recoveryJobFault")
+    @BatchSize(size = 50)
     Set<String> fault;
 
     @ElementCollection
     @CollectionTable(name ="recoveryJobReset")
+    @BatchSize(size = 50)
     Set<String> reset;
 
     /*TODO: remove this: job can be executed only once (step will count jobs with given stepIndex)*/
@@ -68,6 +74,35 @@ public class RecoveryJob {
     @Transient
     String rcmsStatus;
 
+    /**
+     * Observation period in milliseconds after this job, executor's default if null
+     */
+    @Transient
+    Integer observationPeriod;
+
+    /**
+     * @return copy of this job, sets of subsystems are copied too
+     */
+    public RecoveryJob copy() {
+        return RecoveryJob.builder()
+                .id(id)
+                .job(job)
+                .start(start)
+                .end(end)
+                .issueTTCHardReset(issueTTCHardReset)
+                .stepIndex(stepIndex)
+                .redRecycle(redRecycle != null ? new HashSet<>(redRecycle) : null)
+                .greenRecycle(greenRecycle != null ? new HashSet<>(greenRecycle) : null)
+                .fault(fault != null ? new HashSet<>(fault) : null)
+                .reset(reset != null ? new HashSet<>(reset) : null)
+                .executionCount(executionCount)
+                .status(status)
+                .procedureId(procedureId)
+                .rcmsStatus(rcmsStatus)
+                .observationPeriod(observationPeriod)
+                .build();
+    }
+
     public String toCompactString(){
         StringBuilder sb = new StringBuilder();
         sb.append(this.getClass().getSimpleName());
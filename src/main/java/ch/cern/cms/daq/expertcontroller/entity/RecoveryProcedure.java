@@ -1,6 +1,9 @@
 package ch.cern.cms.daq.expertcontroller.entity;
 
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
 import java.time.OffsetDateTime;
@@ -10,24 +13,40 @@ import java.util.List;
 
 /**
  * Recovery job that will be executed by controller.
+ * <p>
+ * Executed jobs are loaded lazily, in batches when accessed on more procedures. Lists of procedures are served by the
+ * projections (see {@link ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureSummary}), single procedure
+ * is loaded with the {@link #DETAIL_GRAPH}.
  */
 @Builder
-@ToString
+@ToString(exclude = "executedJobs")
 @Data
 @Entity
+@Table(indexes = {
+        @Index(name = "recovery_procedure_start", columnList = "start,id"),
+        @Index(name = "recovery_procedure_end", columnList = "end")})
+@NamedEntityGraph(name = RecoveryProcedure.DETAIL_GRAPH, attributeNodes = @NamedAttributeNode("executedJobs"))
 @NoArgsConstructor
 @AllArgsConstructor
 public class RecoveryProcedure {
 
+    /**
+     * Entity graph of the procedure with its executed jobs, fetched in one query
+     */
+    public static final String DETAIL_GRAPH = "RecoveryProcedure.detail";
+
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
 
     /**
-     * Related problem ids
+     * Related problem ids. Few per procedure, always loaded but by separate select: joined together with the jobs the
+     * ids would be repeated for every job.
      */
     @ElementCollection(fetch = FetchType.EAGER)
     @CollectionTable(name = "problemIds")
+    @Fetch(FetchMode.SELECT)
+    @BatchSize(size = 50)
     private List<Long> problemIds;
 
     private String problemTitle;
@@ -39,16 +58,21 @@ public class RecoveryProcedure {
     private String state;
 
     /**
-     * Jobs that were executed. Detailed information when and how many times there were executed.
+     * Jobs that were executed. Detailed information when and how many times there were executed. Lazy, not part of
+     * toString so that detached procedure can be logged.
      */
-    @OneToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @OneToMany(cascade = CascadeType.ALL)
     @JoinColumn(name = "recovery_procedure_id")
     @OrderColumn(name = "list_index")
+    @BatchSize(size = 50)
     private List<RecoveryJob> executedJobs;
 
-    @OneToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL)
-    @JoinColumn(name = "recovery_procedure_id")
-    @OrderColumn(name = "list_index")
+    /**
+     * Events of the procedure. Not saved with the procedure, events are appended to the event journal (see
+     * {@link ch.cern.cms.daq.expertcontroller.repository.EventRepository}) so that saving the procedure does not
+     * rewrite the whole list. Rebuilt from the journal on read.
+     */
+    @Transient
     private List<Event> eventSummary;
 
 
@@ -58,6 +82,12 @@ public class RecoveryProcedure {
     @Transient
     private List<RecoveryJob> procedure;
 
+    /**
+     * Time the request of the procedure was received, as returned by {@link System#nanoTime()}. Null if not known
+     */
+    @Transient
+    private Long received;
+
     @Transient
     private Iterator<RecoveryJob> iterator;
 
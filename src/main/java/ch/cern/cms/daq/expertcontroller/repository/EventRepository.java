@@ -0,0 +1,26 @@
+package ch.cern.cms.daq.expertcontroller.repository;
+
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only journal of the recovery procedure events
+ */
+@RepositoryRestResource(exported = false)
+public interface EventRepository extends JpaRepository<Event, Long> {
+
+    /**
+     * Will return the events of given procedure in order they were appended
+     */
+    List<Event> findByProcedureIdOrderBySequence(@Param("procedureId") Long procedureId);
+
+    /**
+     * Will return the events of given procedures in order they were appended
+     */
+    List<Event> findByProcedureIdInOrderBySequence(@Param("procedureIds") Collection<Long> procedureIds);
+}
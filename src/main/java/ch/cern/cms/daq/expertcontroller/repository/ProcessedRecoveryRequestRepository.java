@@ -0,0 +1,28 @@
+package ch.cern.cms.daq.expertcontroller.repository;
+
+import ch.cern.cms.daq.expertcontroller.entity.ProcessedRecoveryRequest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Responses given to the recovery requests, by idempotency key
+ */
+@RepositoryRestResource(exported = false)
+public interface ProcessedRecoveryRequestRepository extends JpaRepository<ProcessedRecoveryRequest, String> {
+
+    /**
+     * Will remove the requests received before given date
+     *
+     * @return number of removed requests
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from ProcessedRecoveryRequest p where p.received < :date")
+    int deleteReceivedBefore(@Param("date") OffsetDateTime date);
+}
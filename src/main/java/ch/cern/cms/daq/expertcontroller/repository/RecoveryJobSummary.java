@@ -0,0 +1,19 @@
+package ch.cern.cms.daq.expertcontroller.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Projection of the executed recovery job without its subsystem sets
+ */
+public interface RecoveryJobSummary {
+
+    Long getProcedureId();
+
+    Long getId();
+
+    String getJob();
+
+    OffsetDateTime getStart();
+
+    OffsetDateTime getEnd();
+}
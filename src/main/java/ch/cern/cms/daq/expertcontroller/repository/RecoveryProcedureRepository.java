@@ -1,31 +1,156 @@
 package ch.cern.cms.daq.expertcontroller.repository;
 
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
 
+import javax.persistence.QueryHint;
 import java.time.OffsetDateTime;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-@RepositoryRestResource
+/**
+ * Recovery procedures. Collections of the procedure are lazy: lists are served by the summary projection (also the
+ * excerpt of the exported collection resources), single procedure is loaded with its jobs by the detail entity graph.
+ */
+@RepositoryRestResource(excerptProjection = RecoveryProcedureSummary.class)
 public interface RecoveryProcedureRepository extends JpaRepository<RecoveryProcedure, Long> {
+
+    @EntityGraph(RecoveryProcedure.DETAIL_GRAPH)
     Optional<RecoveryProcedure> findById(@Param("id") Long id);
 
+    /**
+     * Will return the procedure with its jobs, exported item resource
+     */
+    @Override
+    @EntityGraph(RecoveryProcedure.DETAIL_GRAPH)
+    RecoveryProcedure findOne(Long id);
+
+
+    String BETWEEN = "r.start <= :endDate and (r.end >= :startDate or r.end is null)";
 
     /**
-     * Will return the Recovery procedures in given time window
+     * Procedures in the time window that started after the earliest start. With the earliest start shortly before the
+     * window (by the longest duration of a procedure) the start is bounded from both sides and the (start, id) index
+     * is scanned only over the window, not from the oldest procedure.
      */
-    @Query("select r from RecoveryProcedure r where r.start <= :endDate and (r.end >= :startDate or r.end is null)")
+    String BOUNDED_BETWEEN = "r.start >= :earliestStart and " + BETWEEN;
+
+    String SUMMARY = "select r.id as id, r.problemTitle as problemTitle, r.start as start, r.end as end"
+            + " from RecoveryProcedure r";
+
+    /**
+     * Will return the Recovery procedures in given time window (see BOUNDED_BETWEEN)
+     */
+    @Query("select r from RecoveryProcedure r where " + BETWEEN)
     List<RecoveryProcedure> findBetween(
             @Param("startDate") OffsetDateTime startDate,
             @Param("endDate") OffsetDateTime endDate,
             Sort sort);
 
+    /**
+     * Will return the first page of the Recovery procedures in given time window (see BOUNDED_BETWEEN), latest first
+     */
+    @Query("select r from RecoveryProcedure r where " + BOUNDED_BETWEEN + " order by r.start desc, r.id desc")
+    @RestResource(exported = false)
+    List<RecoveryProcedure> findBetween(
+            @Param("earliestStart") OffsetDateTime earliestStart,
+            @Param("startDate") OffsetDateTime startDate,
+            @Param("endDate") OffsetDateTime endDate,
+            Pageable pageable);
+
+    /**
+     * Will return the page of the Recovery procedures in given time window (see BOUNDED_BETWEEN) that started before the cursor procedure,
+     * latest first
+     */
+    @Query("select r from RecoveryProcedure r where " + BOUNDED_BETWEEN
+            + " and (r.start < :cursorStart or (r.start = :cursorStart and r.id < :cursorId))"
+            + " order by r.start desc, r.id desc")
+    @RestResource(exported = false)
+    List<RecoveryProcedure> findBetweenBefore(
+            @Param("earliestStart") OffsetDateTime earliestStart,
+            @Param("startDate") OffsetDateTime startDate,
+            @Param("endDate") OffsetDateTime endDate,
+            @Param("cursorStart") OffsetDateTime cursorStart,
+            @Param("cursorId") Long cursorId,
+            Pageable pageable);
+
+    /**
+     * Will return the first page of the Recovery procedure summaries in given time window (see BOUNDED_BETWEEN), in order of start
+     */
+    @Query(SUMMARY + " where " + BOUNDED_BETWEEN + " order by r.start, r.id")
+    @RestResource(exported = false)
+    List<RecoveryProcedureSummary> findSummariesBetween(
+            @Param("earliestStart") OffsetDateTime earliestStart,
+            @Param("startDate") OffsetDateTime startDate,
+            @Param("endDate") OffsetDateTime endDate,
+            Pageable pageable);
+
+    /**
+     * Will return the page of the Recovery procedure summaries in given time window (see BOUNDED_BETWEEN) that started after the cursor
+     * procedure, in order of start
+     */
+    @Query(SUMMARY + " where " + BOUNDED_BETWEEN
+            + " and (r.start > :cursorStart or (r.start = :cursorStart and r.id > :cursorId))"
+            + " order by r.start, r.id")
+    @RestResource(exported = false)
+    List<RecoveryProcedureSummary> findSummariesBetweenAfter(
+            @Param("earliestStart") OffsetDateTime earliestStart,
+            @Param("startDate") OffsetDateTime startDate,
+            @Param("endDate") OffsetDateTime endDate,
+            @Param("cursorStart") OffsetDateTime cursorStart,
+            @Param("cursorId") Long cursorId,
+            Pageable pageable);
+
+    /**
+     * Will return the Recovery procedures in given time window (see BOUNDED_BETWEEN), in order of start. Stream has to be consumed and
+     * closed within transaction.
+     */
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "100"))
+    @Query("select r from RecoveryProcedure r where " + BOUNDED_BETWEEN + " order by r.start, r.id")
+    Stream<RecoveryProcedure> streamBetween(
+            @Param("earliestStart") OffsetDateTime earliestStart,
+            @Param("startDate") OffsetDateTime startDate,
+            @Param("endDate") OffsetDateTime endDate);
+
+    /**
+     * Will return the Recovery procedure summaries in given time window (see BOUNDED_BETWEEN), in order of start. Stream has to be consumed
+     * and closed within transaction.
+     */
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "100"))
+    @Query(SUMMARY + " where " + BOUNDED_BETWEEN + " order by r.start, r.id")
+    Stream<RecoveryProcedureSummary> streamSummariesBetween(
+            @Param("earliestStart") OffsetDateTime earliestStart,
+            @Param("startDate") OffsetDateTime startDate,
+            @Param("endDate") OffsetDateTime endDate);
+
+    /**
+     * Will return the summaries of the jobs executed by given procedures, in order of execution
+     */
+    @Query("select r.id as procedureId, j.id as id, j.job as job, j.start as start, j.end as end"
+            + " from RecoveryProcedure r join r.executedJobs j where r.id in :procedureIds order by r.id, index(j)")
+    @RestResource(exported = false)
+    List<RecoveryJobSummary> findJobSummaries(@Param("procedureIds") Collection<Long> procedureIds);
+
+    /**
+     * Will return the start of given procedure, used as pagination cursor
+     */
+    @Query("select r.start from RecoveryProcedure r where r.id = :id")
+    @RestResource(exported = false)
+    OffsetDateTime findStartById(@Param("id") Long id);
+
 
     List<RecoveryProcedure> findTop20ByOrderByStartDesc();
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package ch.cern.cms.daq.expertcontroller.repository;
+
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import org.springframework.data.rest.core.config.Projection;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Projection of the recovery procedure without its collections
+ */
+@Projection(name = "summary", types = RecoveryProcedure.class)
+public interface RecoveryProcedureSummary {
+
+    Long getId();
+
+    String getProblemTitle();
+
+    OffsetDateTime getStart();
+
+    OffsetDateTime getEnd();
+}
@@ -5,21 +5,26 @@ import ch.cern.cms.daq.expertcontroller.datatransfer.*;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
 import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import ch.cern.cms.daq.expertcontroller.service.rcms.RcmsCircuitBreaker;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.ExecutorPartitions;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.ExecutorStatus;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.IExecutor;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
 import lombok.Getter;
 import org.apache.log4j.Logger;
-import org.modelmapper.ModelMapper;
-import org.modelmapper.convention.MatchingStrategies;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -34,24 +39,111 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
     @Autowired
     private RecoveryProcedureRepository recoveryProcedureRepository;
 
+    @Autowired
+    private DtoMapper dtoMapper;
+
     @Autowired
     protected IExecutor recoveryProcedureExecutor;
 
+    /**
+     * Executors of the procedures running in parallel on disjoint sets of subsystems
+     */
+    @Autowired(required = false)
+    private ExecutorPartitions executorPartitions;
+
+    @Autowired(required = false)
+    private RcmsCircuitBreaker rcmsCircuitBreaker;
+
+    @Autowired(required = false)
+    private StepEffectivenessStatistics stepEffectivenessStatistics;
+
+    /**
+     * Whether procedures touching disjoint sets of subsystems are executed in parallel
+     */
+    @Value("${recovery.partitioned:false}")
+    private boolean partitioned;
 
     /**
-     * Less important request in comparison to currentRequest. It will be executed if and only if currentRequest was
-     * fully processed and condition that generated waitingRequest has not been finished TODO: is it neccessary
+     * Maximum number of postponed requests
      */
-    private RecoveryRequest waitingRequest;
+    @Value("${recovery.queue.capacity:16}")
+    private int pendingRequestsCapacity;
+
+    /**
+     * Time in milliseconds after which the priority of postponed request grows by one
+     */
+    @Value("${recovery.queue.aging-period:10000}")
+    private long pendingRequestsAgingPeriod;
+
+    /**
+     * Time in milliseconds after which postponed request that was not resubmitted is dropped
+     */
+    @Value("${recovery.queue.expiry:120000}")
+    private long pendingRequestsExpiry;
+
+    /**
+     * Window in milliseconds in which status updates are merged into one dashboard broadcast
+     */
+    @Value("${dashboard.broadcast.window:50}")
+    private long broadcastWindow;
+
+    /**
+     * Whether full status is broadcast with every status delta, not only with the ones resetting the dashboard view
+     */
+    @Value("${dashboard.broadcast.full-status-always:false}")
+    private boolean broadcastFullStatusAlways;
+
+    /**
+     * Whether the same problem reported again during observation ends it with no effect of the last job
+     */
+    @Value("${observe.early-no-effect:false}")
+    private boolean observeEarlyNoEffect;
+
+    /**
+     * Less important requests in comparison to the executed ones. They are executed when executor becomes idle if the
+     * condition that generated them has not been finished.
+     */
+    private PendingRequestQueue pendingRequests;
 
 
     protected ScheduledThreadPoolExecutor delayedFinishedSignals;
 
+    /**
+     * Submits pending requests outside of the executor's transition
+     */
+    private ScheduledThreadPoolExecutor pendingRequestsDispatcher;
+
+    private ScheduledThreadPoolExecutor statusBroadcastScheduler;
+
+    private RecoveryStatusBroadcaster statusBroadcaster;
+
+    /**
+     * Last built service status of every executor, see {@link #getRecoveryServiceStatus()}
+     */
+    private final Map<IExecutor, StatusSnapshot> serviceStatuses = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes the decisions on submitted requests, from HTTP threads and from the dispatcher of pending requests,
+     * so that two requests cannot both find the same executor idle
+     */
+    private final Object submissionLock = new Object();
+
     private final static Logger logger = Logger.getLogger(DefaultRecoveryService.class);
 
     @PostConstruct
     private void init() {
         delayedFinishedSignals = new ScheduledThreadPoolExecutor(1);
+        pendingRequestsDispatcher = new ScheduledThreadPoolExecutor(1);
+        pendingRequests = new PendingRequestQueue(
+                pendingRequestsCapacity, pendingRequestsAgingPeriod, pendingRequestsExpiry);
+        statusBroadcastScheduler = new ScheduledThreadPoolExecutor(1);
+        statusBroadcaster = new RecoveryStatusBroadcaster(
+                broadcastWindow,
+                this::getRecoveryServiceStatus,
+                dashboardController::notifyRecoveryStatus,
+                dashboardController::notifyRecoveryStatusDelta,
+                statusBroadcastScheduler,
+                broadcastFullStatusAlways);
     }
 
     /**
@@ -65,6 +157,7 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
      */
     public RecoveryResponse submitRecoveryRequest(RecoveryRequest request) {
 
+        long received = System.nanoTime();
         if (request == null) {
             throw new IllegalArgumentException("Recovery request cannot be empty");
         }
@@ -79,39 +172,73 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
 
         logger.debug("New request has been submitted " + request);
 
-        String acceptanceDecision = acceptRecoveryRequestForExecution(request);
+        synchronized (submissionLock) {
+            return handleRecoveryRequest(request, response, received);
+        }
+    }
+
+    private RecoveryResponse handleRecoveryRequest(RecoveryRequest request, RecoveryResponse response, long received) {
+
+        Set<String> partition = null;
+        List<IExecutor> conflicting = Arrays.asList(recoveryProcedureExecutor);
+        IExecutor executor = recoveryProcedureExecutor;
+
+        if (isPartitioned()) {
+            partition = ExecutorPartitions.partitionOf(request);
+            conflicting = executorPartitions.getConflicting(partition);
+            if (!conflicting.isEmpty()) {
+                executor = conflicting.get(0);
+            } else {
+                IExecutor idle = executorPartitions.getIdle();
+                if (idle != null) {
+                    executor = idle;
+                } else {
+                    logger.info("No executor available for partition " + partition + ", competing with primary one");
+                    conflicting = Arrays.asList(recoveryProcedureExecutor);
+                }
+            }
+            logger.debug("Request of partition " + partition + " handled by executor " + executor);
+        }
+
+        String acceptanceDecision = acceptRecoveryRequestForExecution(request, executor);
         response.setAcceptanceDecision(acceptanceDecision);
 
 
         switch (acceptanceDecision) {
             case "accepted":
                 logger.info("Accepted recovery request: " + request);
-                RecoveryProcedure recoveryProcedure = createRecoveryProcedure(request);
+                RecoveryProcedure recoveryProcedure = createRecoveryProcedure(request, received);
                 recoveryProcedureRepository.save(recoveryProcedure);
                 logger.debug("New procedure has been persisted with id " + recoveryProcedure.getId());
-                recoveryProcedureExecutor.start(recoveryProcedure);
+                assignPartition(executor, partition);
+                executor.start(recoveryProcedure);
                 response.setRecoveryProcedureId(recoveryProcedure.getId());
 
                 break;
             case "acceptedWithPreemption":
                 logger.info("Accepted with preemption recovery " + request);
-                recoveryProcedureExecutor.interrupt();
-
-                RecoveryProcedure preemptedProcedure = recoveryProcedureExecutor.getExecutedProcedure();
-                recoveryProcedureRepository.save(preemptedProcedure);
-                logger.info("Preempted procedure has been updated in db");
+                for (IExecutor preempted : conflicting) {
+                    // final state of the preempted procedure is saved by the executor when it ends on interrupt
+                    preempted.interrupt();
+                    logger.info("Preempted procedure has been interrupted");
+                }
 
-                RecoveryProcedure preemptingProcedure = createRecoveryProcedure(request);
+                RecoveryProcedure preemptingProcedure = createRecoveryProcedure(request, received);
                 recoveryProcedureRepository.save(preemptingProcedure);
-                logger.info("Preempting procedure has been persisted with id " + preemptedProcedure.getId());
-                recoveryProcedureExecutor.start(preemptingProcedure);
+                logger.info("Preempting procedure has been persisted with id " + preemptingProcedure.getId());
+                assignPartition(executor, partition);
+                executor.start(preemptingProcedure);
                 response.setRecoveryProcedureId(preemptingProcedure.getId());
                 break;
 
             case "acceptedToContinue":
 
                 logger.info("Accepted to continue recovery " + request);
-                response.setRecoveryProcedureId(recoveryProcedureExecutor.getExecutedProcedure().getId());
+                response.setRecoveryProcedureId(executor.getExecutedProcedure().getId());
+
+                if (observeEarlyNoEffect && executor.noEffect()) {
+                    logger.info("Problem persists, observation ended with no effect");
+                }
 
                 //TODO: set which problem id is continued (Expert must match?)
                 //TODO: set executor to continue
@@ -123,16 +250,16 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
 
                 logger.info("Accepted to postpone recovery " + request);
 
-                //TODO: is it the correct way?
-                //TODO: check if there is no other waiting request
-                //TODO: perhaps comparing to waitingRequest will be enought (no need for queue of waiting request, only
-                // 1 is enought)
-                waitingRequest = request;
+                if (!pendingRequests.offer(request)) {
+                    response.setAcceptanceDecision("rejected");
+                    response.setRejectedDueToConditionId(
+                            executor.getExecutedProcedure().getProblemIds().iterator().next());
+                }
 
                 break;
             case "rejected":
                 logger.info("Rejected recovery " + request);
-                Long conditionId = recoveryProcedureExecutor.getExecutedProcedure().getProblemIds().iterator().next();
+                Long conditionId = executor.getExecutedProcedure().getProblemIds().iterator().next();
                 response.setRejectedDueToConditionId(conditionId);
                 break;
             case "rejectedDueToManualRecovery":
@@ -152,7 +279,7 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
     public RecoveryProcedureStatus getRecoveryProcedureStatus(Long id) {
 
 
-        ExecutorStatus status = recoveryProcedureExecutor.getStatus();
+        ExecutorStatus status = executorOfProcedure(id).getStatus();
 
         RecoveryProcedureStatus.RecoveryProcedureStatusBuilder builder = RecoveryProcedureStatus.builder();
         builder.finalStatus(status.getState().toString());
@@ -165,11 +292,7 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
             // TODO: set up recovery requests
 
 
-            ModelMapper modelMapper = new ModelMapper();
-            modelMapper.getConfiguration()
-                    .setMatchingStrategy(MatchingStrategies.STRICT);
-            List<Event> executorStatus = modelMapper.map(status.getActionSummary(), List.class);
-            builder.actionSummary(executorStatus);
+            builder.actionSummary(dtoMapper.toEvents(status.getActionSummary()));
 
         }
         return builder.build();
@@ -179,18 +302,63 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
     /**
      * This service status describes current executor status and last procedure. Last procedure can be finished or
      * ongoing. It's based on current state, database is not accessed.
+     * <p>
+     * Status is built once per executor snapshot (see {@link ExecutorStatus}) and shared by all readers until the
+     * executor publishes the next one. State of the circuit to level zero FM changes without the executor, it is read
+     * on every call.
+     * <p>
+     * In partitioned mode the status describes the partition that started procedure most recently, statuses of all
+     * busy partitions are listed along.
      *
      * @return
      */
     @Override
     public RecoveryServiceStatus getRecoveryServiceStatus() {
 
+        IExecutor executor = isPartitioned() ? executorPartitions.getLatest() : recoveryProcedureExecutor;
+        RecoveryServiceStatus built = builtStatusOf(executor);
+
+        List<PartitionStatus> partitionStatuses = null;
+        if (isPartitioned()) {
+            partitionStatuses = executorPartitions.getBusy().stream()
+                    .map(this::builtStatusOf)
+                    .map(s -> PartitionStatus.builder()
+                            .executorState(s.getExecutorState())
+                            .lastProcedureStatus(s.getLastProcedureStatus())
+                            .build())
+                    .collect(Collectors.toList());
+        }
+
+        return RecoveryServiceStatus.builder()
+                .executorState(built.getExecutorState())
+                .lastProcedureStatus(built.getLastProcedureStatus())
+                .rcmsCircuitState(rcmsCircuitBreaker != null ? rcmsCircuitBreaker.getState().toString() : null)
+                .partitionStatuses(partitionStatuses)
+                .build();
+    }
+
+    /**
+     * @return status built from the current snapshot of given executor, reused while the snapshot does not change
+     */
+    private RecoveryServiceStatus builtStatusOf(IExecutor executor) {
+        ExecutorStatus status = executor.getStatus();
+
+        StatusSnapshot snapshot = serviceStatuses.get(executor);
+        if (snapshot != null && snapshot.source == status) {
+            return snapshot.status;
+        }
+        RecoveryServiceStatus built = buildRecoveryServiceStatus(status);
+        serviceStatuses.put(executor, new StatusSnapshot(status, built));
+        return built;
+    }
+
+    private RecoveryServiceStatus buildRecoveryServiceStatus(ExecutorStatus status) {
+
         // 1. Get Executor status
-        ExecutorStatus status = recoveryProcedureExecutor.getStatus();
         logger.info("State of executor is " + status.getState());
 
         // 2. Get Last Procedure
-        RecoveryProcedure lastExecutedProcedure = recoveryProcedureExecutor.getExecutedProcedure();
+        ExecutorStatus.ExecutedProcedure lastExecutedProcedure = status.getExecutedProcedure();
         if (lastExecutedProcedure == null) {
             logger.info("No previous procedures");
         } else {
@@ -240,60 +408,42 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
 
 
         if (existLastProcedure) {
-            ModelMapper modelMapper = new ModelMapper();
-            modelMapper.getConfiguration()
-                    .setMatchingStrategy(MatchingStrategies.STRICT);
-
-            if (actionSummary != null) {
-                List<Event> actionSummaryDTO =
-                        actionSummary.stream()
-                                .map(e -> modelMapper.map(e, ch.cern.cms.daq.expertcontroller.datatransfer.Event.class))
-                                .collect(Collectors.toList());
-
-                recoveryProcedureStatus.setActionSummary(actionSummaryDTO);
-            }
+            recoveryProcedureStatus.setActionSummary(unmodifiable(dtoMapper.toEvents(actionSummary)));
             recoveryProcedureStatus.setFinalStatus(finalStatus);
             recoveryProcedureStatus.setId(lastExecutedProcedure.getId());
             recoveryProcedureStatus.setConditionIds(lastExecutedProcedure.getProblemIds());
 
-            ArrayList<RecoveryJobStatus> jobStatuses = new ArrayList<>();
-            lastExecutedProcedure.getProcedure().stream().forEach(j -> {
-                Date started = null, finished = null;
-                if (j.getStart() != null)
-                    started = Date.from(j.getStart().toInstant());
-
-                if (j.getEnd() != null)
-                    finished = Date.from(j.getEnd().toInstant());
-
-                // count jobs with given step index
-
-                logger.trace("Counting executed times for step " + j.getStepIndex());
-                logger.trace("... from executed jobs: " + lastExecutedProcedure.getExecutedJobs());
-                Long executed = 0L;
-                if (lastExecutedProcedure.getExecutedJobs() != null)
-                    executed = lastExecutedProcedure.getExecutedJobs().stream()
-                            .filter(c -> c.getStepIndex() == j.getStepIndex())
-                            .filter(c -> c.getEnd() != null).count();
-
-                RecoveryJobStatus recoveryJobStatus = RecoveryJobStatus.builder()
-                        .started(started)
-                        .finished(finished)
-                        .stepIndex(j.getStepIndex())
-                        .status(j.getStatus())
-                        .rcmsStatus(j.getRcmsStatus())
-                        .timesExecuted(executed.intValue())
-                        .build();
-
-                jobStatuses.add(recoveryJobStatus);
-            });
+            List<RecoveryJob> executedJobs = lastExecutedProcedure.getExecutedJobs();
+            List<RecoveryJobStatus> jobStatuses = lastExecutedProcedure.getSteps().stream()
+                    .map(j -> dtoMapper.toJobStatus(j, executedJobs))
+                    .collect(Collectors.toList());
 
-            recoveryProcedureStatus.setJobStatuses(jobStatuses);
+            recoveryProcedureStatus.setJobStatuses(Collections.unmodifiableList(jobStatuses));
 
             builder.lastProcedureStatus(recoveryProcedureStatus);
         }
         return builder.build();
     }
 
+    private static <T> List<T> unmodifiable(List<T> list) {
+        return list != null ? Collections.unmodifiableList(list) : null;
+    }
+
+    /**
+     * Service status built from the executor snapshot
+     */
+    private static class StatusSnapshot {
+
+        private final ExecutorStatus source;
+
+        private final RecoveryServiceStatus status;
+
+        private StatusSnapshot(ExecutorStatus source, RecoveryServiceStatus status) {
+            this.source = source;
+            this.status = status;
+        }
+    }
+
     /**
      * Handle decision.
      *
@@ -329,7 +479,7 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
             logger.info("Received approval response for procedure: " + procedureId);
         }
 
-        recoveryProcedureExecutor.approveRecovery(approvalResponse);
+        executorOfProcedure(procedureId).approveRecovery(approvalResponse);
 
         //TODO: give some more detailed feedback (scheduled to execute/not found etc)
         return "processed";
@@ -337,17 +487,22 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
 
 
     /**
-     * Whenever underlying elements update this should be passed to Dashboard
+     * Whenever underlying elements update this should be passed to Dashboard. Updates are merged, see {@link
+     * RecoveryStatusBroadcaster}.
      * <p>
-     * TODO: call this method whenever there is an update
+     * Called by the executor holding its lock, so the executors are checked for idleness on the dispatcher thread.
      */
     public void onRecoveryProcedureStateUpdate() {
 
-        // TODO: fill with recovery procedure finalStatus
-
-        RecoveryServiceStatus recoveryServiceStatus = getRecoveryServiceStatus();
+        statusBroadcaster.requestUpdate();
 
-        dashboardController.notifyRecoveryStatus(recoveryServiceStatus);
+        if (!pendingRequests.isEmpty()) {
+            pendingRequestsDispatcher.execute(() -> {
+                if (hasIdleExecutor()) {
+                    dispatchPendingRequests();
+                }
+            });
+        }
     }
 
 
@@ -360,11 +515,40 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
      * Called when Recovery procedure finishes
      */
     public void onRecoveryProcedureCompletion() {
+        logger.info("Recovery procedure completed, pending requests will now be picked up");
+        pendingRequestsDispatcher.execute(this::dispatchPendingRequests);
+    }
 
-        //TODO: decide if this is right
-        if (waitingRequest != null) {
-            logger.info("Recovery procedure completed, waiting request will now be picked up");
-            waitingRequest = null;
+    /**
+     * Submit pending requests, the most important first, until executor postpones them again. Request rejected due to
+     * manual recovery is queued again, other rejected requests are dropped.
+     */
+    private void dispatchPendingRequests() {
+        RecoveryRequest request;
+        while ((request = pendingRequests.poll()) != null) {
+            logger.info("Dispatching pending request " + request);
+            String acceptanceDecision;
+            try {
+                acceptanceDecision = submitRecoveryRequest(request).getAcceptanceDecision();
+            } catch (RuntimeException e) {
+                logger.error("Dispatching pending request of problem " + request.getProblemId() + " failed", e);
+                continue;
+            }
+            if ("acceptedToPostpone".equals(acceptanceDecision)) {
+                // executor busy again, request is back in the queue
+                break;
+            }
+            if ("rejectedDueToManualRecovery".equals(acceptanceDecision)) {
+                logger.info("Pending request of problem " + request.getProblemId()
+                                    + " waits for the manual recovery to finish");
+                if (!pendingRequests.offer(request)) {
+                    logger.warn("Pending request of problem " + request.getProblemId() + " dropped, queue is full");
+                }
+                break;
+            }
+            if ("rejected".equals(acceptanceDecision)) {
+                logger.warn("Pending request of problem " + request.getProblemId() + " rejected on dispatch, dropped");
+            }
         }
     }
 
@@ -373,7 +557,7 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
      *
      * @param recoveryRequest recovery request that will bee a base for cration of Recovery procedure
      */
-    private RecoveryProcedure createRecoveryProcedure(RecoveryRequest recoveryRequest) {
+    private RecoveryProcedure createRecoveryProcedure(RecoveryRequest recoveryRequest, long received) {
         RecoveryProcedure recoveryProcedure =
                 RecoveryProcedure.builder().
                         procedure(recoveryRequest.getRecoveryRequestSteps().stream()
@@ -385,16 +569,24 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
                                                   .reset(c.getReset())
                                                   .fault(c.getFault())
                                                   .issueTTCHardReset(c.getIssueTTCHardReset())
+                                                  .observationPeriod(c.getObservationPeriod() != null
+                                                                             ? c.getObservationPeriod()
+                                                                             : recoveryRequest.getObservationPeriod())
                                                   .build())
                                           .collect(Collectors.toList()))
                         .problemTitle(recoveryRequest.getProblemTitle())
                         .problemIds(Arrays.asList(recoveryRequest.getProblemId()))
+                        .received(received)
                         .build();
 
         if (recoveryProcedure.getProcedure() == null || recoveryProcedure.getProcedure().size() == 0) {
             throw new IllegalArgumentException("Recovery procedure has no jobs");
         }
 
+        if (stepEffectivenessStatistics != null) {
+            stepEffectivenessStatistics.apply(recoveryProcedure);
+        }
+
         logger.info("Procedure built: " + recoveryProcedure);
 
         return recoveryProcedure;
@@ -417,20 +609,37 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
      * </ul>
      */
     protected String acceptRecoveryRequestForExecution(RecoveryRequest request) {
+        return acceptRecoveryRequestForExecution(request, recoveryProcedureExecutor);
+    }
 
-        String result;
-        ExecutorStatus executorStatus = recoveryProcedureExecutor.getStatus();
-        RecoveryProcedure recoveryProcedure = recoveryProcedureExecutor.getExecutedProcedure();
+    /**
+     * Decides whether recovery request will be accepted to execute by given executor.
+     *
+     * @see #acceptRecoveryRequestForExecution(RecoveryRequest)
+     */
+    protected String acceptRecoveryRequestForExecution(RecoveryRequest request, IExecutor executor) {
 
-        if (executorStatus.getState() == State.Idle) {
-            if(recoveryProcedureExecutor.isAvailable()) {
+        String result;
+        ExecutorStatus executorStatus = executor.getStatus();
+        boolean idle = isPartitioned()
+                ? ExecutorPartitions.isIdle(executor)
+                : executorStatus.getState() == State.Idle;
+
+        if (idle) {
+            /* Recovery ongoing in RCMS while other partition is recovering is not the manual one */
+            boolean otherPartitionBusy = isPartitioned() && !executorPartitions.getBusy().isEmpty();
+            if (otherPartitionBusy || executor.isAvailable()) {
                 logger.debug("Following request has been accepted: " + request);
                 result = "accepted";
             } else{
                 result = "rejectedDueToManualRecovery";
             }
         } else {
-            logger.info("There is procedure currently being executed: " + recoveryProcedure);
+            ExecutorStatus.ExecutedProcedure executedProcedure = executorStatus.getExecutedProcedure();
+            logger.info("There is procedure currently being executed: "
+                                + (executedProcedure != null
+                                   ? executedProcedure.getId() + " " + executedProcedure.getProblemTitle()
+                                   : null));
 
             /* Request with interruption */
             if (request.isWithInterrupt()) {
@@ -470,13 +679,23 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
     public void finished(Long id) {
 
         logger.info("Handling finish signal for problem " + id);
-        State executorState = recoveryProcedureExecutor.getStatus().getState();
+        if (pendingRequests.remove(id)) {
+            logger.info("Pending request of problem " + id + " is no longer needed");
+        }
+        IExecutor executor = recoveryProcedureExecutor;
+        if (isPartitioned()) {
+            IExecutor partitionExecutor = executorPartitions.getByProblemId(id);
+            if (partitionExecutor != null) {
+                executor = partitionExecutor;
+            }
+        }
+        State executorState = executor.getStatus().getState();
 
         if (executorState != State.Idle) {
 
             boolean corresponds;
             try {
-                corresponds = recoveryProcedureExecutor.getExecutedProcedure().getProblemIds().contains(id);
+                corresponds = executor.getExecutedProcedure().getProblemIds().contains(id);
             } catch (NullPointerException e) {
                 corresponds = false;
             }
@@ -488,7 +707,7 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
 
                     logger.info("Executor in " + executorState + " state. Handling finish signal.");
 
-                    boolean accepted = recoveryProcedureExecutor.finished();
+                    boolean accepted = executor.finished();
 
                     if (!accepted) {
                         delayedFinishedSignals.schedule(() -> this.finished(id), 1, TimeUnit.SECONDS);
@@ -499,7 +718,7 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
 
             } else {
                 logger.info("Finish signal for problem " + id + " unrelated to currently executed recovery procedure: "
-                                    + recoveryProcedureExecutor.getExecutedProcedure().getProblemIds());
+                                    + executor.getExecutedProcedure().getProblemIds());
             }
 
         } else {
@@ -511,17 +730,22 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
     @Override
     public void shutdown() {
         logger.info("Recovery service is going down");
-        if (recoveryProcedureExecutor.getStatus().getState() != State.Idle) {
+        pendingRequests.clear();
+        pendingRequestsDispatcher.shutdownNow();
+        statusBroadcastScheduler.shutdown();
+        for (IExecutor executor : getBusyExecutors()) {
             logger.info("Ending the ongoing recovery procedure");
-            recoveryProcedureExecutor.interrupt();
+            executor.interrupt();
         }
     }
 
     @Override
     public InterruptResponse interrupt() {
         logger.info("Handling interrupting signal");
-        if (recoveryProcedureExecutor.getStatus().getState() != State.Idle) {
-            recoveryProcedureExecutor.interrupt();
+        pendingRequests.clear();
+        List<IExecutor> busy = getBusyExecutors();
+        if (!busy.isEmpty()) {
+            busy.forEach(IExecutor::interrupt);
             return InterruptResponse.builder().status("accepted").message("").build();
         } else {
             logger.info("Executor is in idle state, ignoring interrupt signal");
@@ -530,4 +754,44 @@ public abstract class DefaultRecoveryService implements IRecoveryService {
                     .message("Executor is in idle state, ignoring interrupt signal").build();
         }
     }
+
+    private boolean isPartitioned() {
+        return partitioned && executorPartitions != null;
+    }
+
+    private void assignPartition(IExecutor executor, Set<String> partition) {
+        if (isPartitioned()) {
+            executorPartitions.assign(executor, partition);
+        }
+    }
+
+    /**
+     * @return executor of given procedure, primary executor if procedure is not known
+     */
+    private IExecutor executorOfProcedure(Long procedureId) {
+        if (isPartitioned()) {
+            IExecutor executor = executorPartitions.getByProcedureId(procedureId);
+            if (executor != null) {
+                return executor;
+            }
+        }
+        return recoveryProcedureExecutor;
+    }
+
+    private boolean hasIdleExecutor() {
+        if (isPartitioned()) {
+            return executorPartitions.getBusy().size() < executorPartitions.size();
+        }
+        return recoveryProcedureExecutor.getStatus().getState() == State.Idle;
+    }
+
+    private List<IExecutor> getBusyExecutors() {
+        if (isPartitioned()) {
+            return executorPartitions.getBusy();
+        }
+        if (recoveryProcedureExecutor.getStatus().getState() != State.Idle) {
+            return Arrays.asList(recoveryProcedureExecutor);
+        }
+        return new ArrayList<>();
+    }
 }
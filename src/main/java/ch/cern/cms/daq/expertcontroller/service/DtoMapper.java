@@ -0,0 +1,131 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.Event;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJobStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.convention.MatchingStrategies;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Maps entities to data transfer objects.
+ * <p>
+ * Type maps are created and validated once, on construction, so the mapping does not infer the properties on every
+ * call. Events and jobs, mapped in bulk, have explicit converters. Configured ModelMapper is thread safe and shared by
+ * all callers.
+ */
+@Component
+public class DtoMapper {
+
+    private final ModelMapper modelMapper;
+
+    public DtoMapper() {
+        modelMapper = new ModelMapper();
+        modelMapper.getConfiguration()
+                .setMatchingStrategy(MatchingStrategies.STRICT);
+
+        // mapped on every status build, converted explicitly instead of property by property
+        modelMapper.createTypeMap(ch.cern.cms.daq.expertcontroller.entity.Event.class, Event.class)
+                .setConverter(context -> toEvent(context.getSource(), context.getDestination()));
+        modelMapper.createTypeMap(RecoveryJob.class, ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJob.class)
+                .setConverter(context -> toJob(context.getSource(), context.getDestination()));
+        modelMapper.createTypeMap(ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure.class,
+                                  RecoveryProcedure.class);
+        modelMapper.validate();
+    }
+
+    public Event toEvent(ch.cern.cms.daq.expertcontroller.entity.Event event) {
+        return toEvent(event, null);
+    }
+
+    /**
+     * @return events in the same order, null if given list is null
+     */
+    public List<Event> toEvents(List<ch.cern.cms.daq.expertcontroller.entity.Event> events) {
+        if (events == null) {
+            return null;
+        }
+        return events.stream().map(this::toEvent).collect(Collectors.toList());
+    }
+
+    public RecoveryProcedure toProcedure(ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure procedure) {
+        return modelMapper.map(procedure, RecoveryProcedure.class);
+    }
+
+    public List<RecoveryProcedure> toProcedures(
+            List<ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure> procedures) {
+        return procedures.stream().map(this::toProcedure).collect(Collectors.toList());
+    }
+
+    private static Event toEvent(ch.cern.cms.daq.expertcontroller.entity.Event source, Event destination) {
+        if (source == null) {
+            return null;
+        }
+        Event event = destination != null ? destination : new Event();
+        event.setId(source.getId());
+        event.setDate(source.getDate());
+        event.setType(source.getType());
+        event.setContent(source.getContent());
+        event.setStepIndex(source.getStepIndex());
+        return event;
+    }
+
+    private static ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJob toJob(
+            RecoveryJob source, ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJob destination) {
+        if (source == null) {
+            return null;
+        }
+        ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJob job =
+                destination != null ? destination : new ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJob();
+        job.setId(source.getId());
+        job.setJob(source.getJob());
+        job.setStart(source.getStart());
+        job.setEnd(source.getEnd());
+        job.setIssueTTCHardReset(source.getIssueTTCHardReset());
+        job.setStepIndex(source.getStepIndex());
+        job.setRedRecycle(copy(source.getRedRecycle()));
+        job.setGreenRecycle(copy(source.getGreenRecycle()));
+        job.setFault(copy(source.getFault()));
+        job.setReset(copy(source.getReset()));
+        job.setExecutionCount(source.getExecutionCount());
+        return job;
+    }
+
+    private static Set<String> copy(Set<String> set) {
+        return set != null ? new HashSet<>(set) : null;
+    }
+
+    /**
+     * @param job          job of the procedure
+     * @param executedJobs jobs executed so far in the procedure, may be null
+     * @return status of the job, including how many times the step of the job was executed
+     */
+    public RecoveryJobStatus toJobStatus(RecoveryJob job, List<RecoveryJob> executedJobs) {
+
+        int executed = 0;
+        if (executedJobs != null) {
+            for (RecoveryJob executedJob : executedJobs) {
+                if (Objects.equals(executedJob.getStepIndex(), job.getStepIndex()) && executedJob.getEnd() != null) {
+                    executed++;
+                }
+            }
+        }
+
+        return RecoveryJobStatus.builder()
+                .started(job.getStart() != null ? Date.from(job.getStart().toInstant()) : null)
+                .finished(job.getEnd() != null ? Date.from(job.getEnd().toInstant()) : null)
+                .stepIndex(job.getStepIndex())
+                .status(job.getStatus())
+                .rcmsStatus(job.getRcmsStatus())
+                .timesExecuted(executed)
+                .build();
+    }
+}
@@ -0,0 +1,124 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency timers of the recovery: time spent in the FSM states, RCMS calls, approvals and persistence. Exposed in the
+ * actuator metrics endpoint, every timer as
+ * <ul>
+ * <li>timer.[name].count - number of recorded durations</li>
+ * <li>timer.[name].mean, timer.[name].max - in milliseconds</li>
+ * <li>timer.[name].le.[bound] - histogram, number of durations not longer than the bound in milliseconds</li>
+ * </ul>
+ * Values are cumulative since the start of the application, rates and windows are left to the scraper.
+ */
+@Component
+public class LatencyMetrics implements PublicMetrics {
+
+    /**
+     * Upper bounds of the histogram buckets in milliseconds. Recoveries take from milliseconds (TTC hard reset) to
+     * minutes (approval, long recycle).
+     */
+    static final long[] BUCKETS = {10, 50, 100, 500, 1000, 5000, 10000, 30000, 60000, 300000, 600000};
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name  name of the timer, created on first use
+     * @param nanos duration in nanoseconds
+     */
+    public void record(String name, long nanos) {
+        timers.computeIfAbsent(name, n -> new Timer()).record(nanos);
+    }
+
+    /**
+     * @param startNanos start of the measured operation, as returned by {@link System#nanoTime()}
+     */
+    public void recordSince(String name, long startNanos) {
+        record(name, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return timer of given name, null if nothing has been recorded
+     */
+    public Timer getTimer(String name) {
+        return timers.get(name);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        timers.forEach((name, timer) -> {
+            String prefix = "timer." + name;
+            long count = timer.getCount();
+            metrics.add(new Metric<>(prefix + ".count", count));
+            metrics.add(new Metric<>(prefix + ".mean", timer.getMeanMillis()));
+            metrics.add(new Metric<>(prefix + ".max", timer.getMaxMillis()));
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += timer.buckets.get(i);
+                metrics.add(new Metric<>(prefix + ".le." + BUCKETS[i], cumulative));
+            }
+        });
+        return metrics;
+    }
+
+    /**
+     * Thread safe timer, records are not synchronized with each other
+     */
+    public static class Timer {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder total = new LongAdder();
+
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Durations per bucket, longer than the last bound are only counted
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length);
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (millis <= BUCKETS[i]) {
+                    buckets.incrementAndGet(i);
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : total.sum() / 1e6 / n;
+        }
+
+        public double getMaxMillis() {
+            return max.get() / 1e6;
+        }
+    }
+}
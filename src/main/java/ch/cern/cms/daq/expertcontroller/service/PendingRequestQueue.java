@@ -0,0 +1,194 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import org.apache.log4j.Logger;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded queue of the postponed recovery requests.
+ * <p>
+ * Requests are ordered by priority that grows with the time spent in the queue (aging), so that low priority request
+ * is not postponed forever. Request of the problem that is already queued replaces the queued one, keeping its
+ * position. Requests that were not resubmitted for longer than expiry period are considered stale and dropped. When
+ * the queue is full the request with lowest priority is dropped.
+ */
+public class PendingRequestQueue {
+
+    private final static Logger logger = Logger.getLogger(PendingRequestQueue.class);
+
+    private final int capacity;
+
+    /**
+     * Time in milliseconds after which the priority of queued request grows by one
+     */
+    private final long agingPeriod;
+
+    /**
+     * Time in milliseconds after which not resubmitted request is dropped
+     */
+    private final long expiry;
+
+    private final LongSupplier clock;
+
+    /**
+     * All entries age at the same rate so their order does not change while queued
+     */
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(
+            Comparator.comparingDouble(Entry::getRank).reversed().thenComparingLong(e -> e.sequence));
+
+    private final Map<Long, Entry> byProblemId = new HashMap<>();
+
+    private long sequence;
+
+    public PendingRequestQueue(int capacity, long agingPeriod, long expiry) {
+        this(capacity, agingPeriod, expiry, System::currentTimeMillis);
+    }
+
+    PendingRequestQueue(int capacity, long agingPeriod, long expiry, LongSupplier clock) {
+        this.capacity = capacity;
+        this.agingPeriod = agingPeriod;
+        this.expiry = expiry;
+        this.clock = clock;
+    }
+
+    /**
+     * Add request to the queue
+     *
+     * @return false if the queue is full of more important requests and given request has been dropped
+     */
+    public synchronized boolean offer(RecoveryRequest request) {
+        long now = clock.getAsLong();
+        expire(now);
+
+        Entry queued = request.getProblemId() != null ? byProblemId.get(request.getProblemId()) : null;
+        if (queued != null) {
+            logger.debug("Request of problem " + request.getProblemId() + " already queued, replacing");
+            Entry replacement = new Entry(request, queued.enqueued, now, queued.sequence);
+            queue.remove(queued);
+            queue.add(replacement);
+            byProblemId.put(request.getProblemId(), replacement);
+            return true;
+        }
+
+        Entry entry = new Entry(request, now, now, sequence++);
+        if (queue.size() >= capacity) {
+            Entry lowest = queue.stream().max(queue.comparator()).get();
+            if (queue.comparator().compare(entry, lowest) >= 0) {
+                logger.info("Pending request queue is full, dropping " + request);
+                return false;
+            }
+            logger.info("Pending request queue is full, dropping " + lowest.request);
+            remove(lowest);
+        }
+
+        queue.add(entry);
+        if (request.getProblemId() != null) {
+            byProblemId.put(request.getProblemId(), entry);
+        }
+        return true;
+    }
+
+    /**
+     * @return the most important request, null if there is none
+     */
+    public synchronized RecoveryRequest poll() {
+        expire(clock.getAsLong());
+        Entry entry = queue.poll();
+        if (entry == null) {
+            return null;
+        }
+        if (entry.request.getProblemId() != null) {
+            byProblemId.remove(entry.request.getProblemId());
+        }
+        return entry.request;
+    }
+
+    /**
+     * Remove request of the problem, e.g. when the problem has finished
+     *
+     * @return true if there was such request
+     */
+    public synchronized boolean remove(Long problemId) {
+        Entry entry = byProblemId.get(problemId);
+        if (entry == null) {
+            return false;
+        }
+        remove(entry);
+        return true;
+    }
+
+    public synchronized void clear() {
+        queue.clear();
+        byProblemId.clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    private void expire(long now) {
+        Iterator<Entry> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.updated > expiry) {
+                logger.info("Dropping stale pending request " + entry.request);
+                iterator.remove();
+                if (entry.request.getProblemId() != null) {
+                    byProblemId.remove(entry.request.getProblemId());
+                }
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        queue.remove(entry);
+        if (entry.request.getProblemId() != null) {
+            byProblemId.remove(entry.request.getProblemId());
+        }
+    }
+
+    private class Entry {
+
+        private final RecoveryRequest request;
+
+        /**
+         * Time of the first submission, base of the aging
+         */
+        private final long enqueued;
+
+        /**
+         * Time of the last submission, base of the expiry
+         */
+        private final long updated;
+
+        private final long sequence;
+
+        /**
+         * Priority at time t is priority + (t - enqueued) / agingPeriod. Term t is common to all entries.
+         */
+        private final double rank;
+
+        Entry(RecoveryRequest request, long enqueued, long updated, long sequence) {
+            this.request = request;
+            this.enqueued = enqueued;
+            this.updated = updated;
+            this.sequence = sequence;
+            int priority = request.getPriority() != null ? request.getPriority() : 0;
+            this.rank = priority - (double) enqueued / agingPeriod;
+        }
+
+        double getRank() {
+            return rank;
+        }
+    }
+}
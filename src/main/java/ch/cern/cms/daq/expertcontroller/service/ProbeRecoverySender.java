@@ -74,7 +74,7 @@ public class ProbeRecoverySender {
     }
 
     private ResponseEntity<RecoveryResponse> sendRecoveryRequest(RecoveryRequest recoveryRequest) {
-        ResponseEntity<RecoveryResponse> response = expertController.requestRecovery(recoveryRequest);
+        ResponseEntity<RecoveryResponse> response = expertController.requestRecovery(recoveryRequest, null);
         logger.info("Recovery submitted." +
                             " Status: " + response.getStatusCode() +
                             " Acceptance decision: " + response.getBody().getAcceptanceDecision() +
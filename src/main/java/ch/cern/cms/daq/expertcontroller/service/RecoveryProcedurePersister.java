@@ -0,0 +1,416 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.EventRepository;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind persistence of the recovery procedure updates.
+ * <p>
+ * FSM updates the procedure on every transition. Instead of saving it on the FSM thread, the procedure is marked dirty
+ * and saved periodically by the writer thread. Repeated updates of the same procedure between flushes result in one
+ * save. Dirty procedures are saved in one transaction so that the statements can be batched (see
+ * hibernate.jdbc.batch_size). Finished procedure and all dirty procedures on shutdown are saved immediately, after the
+ * flush in progress if any.
+ * <p>
+ * FSM keeps updating the procedure while it waits for the flush. What is saved is a detached copy taken when the update
+ * is persisted, on the FSM thread. Ids generated for the copies of the jobs are remembered and given to the later
+ * copies, so that the jobs are inserted once. This is remembered for the recently finished procedures too, so that
+ * saving a finished procedure again does not insert its jobs and events again.
+ * <p>
+ * Event summary of the procedure only grows. Events are appended to the journal (see {@link EventRepository}) in the
+ * transaction of the procedure save, each event is inserted once, so the cost of the save does not depend on the number
+ * of events recorded so far.
+ */
+@Component
+public class RecoveryProcedurePersister implements PublicMetrics {
+
+    private final static Logger logger = Logger.getLogger(RecoveryProcedurePersister.class);
+
+    @Autowired
+    private RecoveryProcedureRepository recoveryProcedureRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired(required = false)
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private LatencyMetrics latencyMetrics;
+
+    /**
+     * Period of the flushes in milliseconds, 0 to save every update immediately
+     */
+    @Value("${persistence.flush-period:200}")
+    private long flushPeriod;
+
+    /**
+     * Copies of the dirty procedures by id, in order of the first update
+     */
+    private final Map<Long, RecoveryProcedure> dirty = new LinkedHashMap<>();
+
+    /**
+     * Held while saving, so that saves of the same procedure are not reordered
+     */
+    private final Object saveLock = new Object();
+
+    /**
+     * Number of recently finished procedures whose saved state is remembered
+     */
+    private static final int FINISHED_CAPACITY = 100;
+
+    /**
+     * What has been saved of the unfinished procedures, by id. Guarded by the save lock
+     */
+    private final Map<Long, Saved> saved = new HashMap<>();
+
+    /**
+     * What has been saved of the recently finished procedures, by id, eldest are forgotten. Guarded by the save lock
+     */
+    private final Map<Long, Saved> finished = new LinkedHashMap<Long, Saved>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Saved> eldest) {
+            return size() > FINISHED_CAPACITY;
+        }
+    };
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+
+    private ScheduledThreadPoolExecutor writer;
+
+    private volatile boolean closed;
+
+    public RecoveryProcedurePersister() {
+    }
+
+    public RecoveryProcedurePersister(RecoveryProcedureRepository recoveryProcedureRepository,
+                                      EventRepository eventRepository,
+                                      long flushPeriod) {
+        this(recoveryProcedureRepository, eventRepository, null, flushPeriod);
+    }
+
+    public RecoveryProcedurePersister(RecoveryProcedureRepository recoveryProcedureRepository,
+                                      EventRepository eventRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      long flushPeriod) {
+        this.recoveryProcedureRepository = recoveryProcedureRepository;
+        this.eventRepository = eventRepository;
+        this.transactionManager = transactionManager;
+        this.flushPeriod = flushPeriod;
+    }
+
+    @PostConstruct
+    void init() {
+        if (flushPeriod > 0) {
+            writer = new ScheduledThreadPoolExecutor(1);
+            writer.scheduleWithFixedDelay(this::flush, flushPeriod, flushPeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        closed = true;
+        if (writer != null) {
+            writer.shutdown();
+        }
+        logger.info("Flushing recovery procedures before shutdown");
+        flush();
+    }
+
+    /**
+     * Persist the updated procedure. Saved immediately if it has finished, on next flush otherwise. Called by the FSM
+     * while it holds the executor lock: the procedure is copied before return and not read afterwards, except for new
+     * procedure that gets the generated id.
+     */
+    public void persist(RecoveryProcedure recoveryProcedure) {
+        updates.incrementAndGet();
+        RecoveryProcedure snapshot = snapshot(recoveryProcedure);
+
+        if (writer == null || closed || snapshot.getId() == null || snapshot.getEnd() != null) {
+            RecoveryProcedure result;
+            synchronized (saveLock) {
+                if (snapshot.getId() != null) {
+                    synchronized (dirty) {
+                        dirty.remove(snapshot.getId());
+                    }
+                }
+                result = save(snapshot);
+            }
+            if (recoveryProcedure.getId() == null && result != null) {
+                recoveryProcedure.setId(result.getId());
+            }
+            return;
+        }
+
+        synchronized (dirty) {
+            dirty.put(snapshot.getId(), snapshot);
+        }
+    }
+
+    /**
+     * Save all dirty procedures
+     */
+    public void flush() {
+        synchronized (saveLock) {
+            List<RecoveryProcedure> batch;
+            synchronized (dirty) {
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(dirty.values());
+                dirty.clear();
+            }
+
+            long start = System.nanoTime();
+            try {
+                List<RecoveryProcedure> result = inTransaction(() -> {
+                    restoreJobIds(batch);
+                    List<RecoveryProcedure> savedBatch = recoveryProcedureRepository.save(batch);
+                    appendEvents(batch, savedBatch);
+                    return savedBatch;
+                });
+                remember(batch, result);
+                saves.addAndGet(batch.size());
+                batches.incrementAndGet();
+                if (latencyMetrics != null) {
+                    latencyMetrics.recordSince("persistence.flush", start);
+                }
+                logger.debug("Flushed " + batch.size() + " recovery procedures");
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                logger.warn("Flush of " + batch.size() + " recovery procedures failed, will retry", e);
+                synchronized (dirty) {
+                    // procedures updated in the meantime are already queued
+                    batch.forEach(p -> dirty.putIfAbsent(p.getId(), p));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of procedures waiting for the flush
+     */
+    public int getPending() {
+        synchronized (dirty) {
+            return dirty.size();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("persistence.updates", updates.get()));
+        metrics.add(new Metric<>("persistence.saves", saves.get()));
+        metrics.add(new Metric<>("persistence.batches", batches.get()));
+        metrics.add(new Metric<>("persistence.failures", failures.get()));
+        metrics.add(new Metric<>("persistence.events", events.get()));
+        metrics.add(new Metric<>("persistence.pending", getPending()));
+        return metrics;
+    }
+
+    /**
+     * Save the procedure with its new events in one transaction, with the save lock held
+     *
+     * @return procedure as returned by the repository
+     */
+    private RecoveryProcedure save(RecoveryProcedure recoveryProcedure) {
+        long start = System.nanoTime();
+        List<RecoveryProcedure> procedures = Collections.singletonList(recoveryProcedure);
+        RecoveryProcedure result = inTransaction(() -> {
+            restoreJobIds(procedures);
+            RecoveryProcedure savedProcedure = recoveryProcedureRepository.save(recoveryProcedure);
+            appendEvents(procedures, Collections.singletonList(savedProcedure));
+            return savedProcedure;
+        });
+        remember(procedures, Collections.singletonList(result));
+        saves.incrementAndGet();
+        if (latencyMetrics != null) {
+            latencyMetrics.recordSince("persistence.save", start);
+        }
+        return result;
+    }
+
+    private <T> T inTransaction(Supplier<T> work) {
+        if (transactionManager == null) {
+            return work.get();
+        }
+        return new TransactionTemplate(transactionManager).execute(status -> work.get());
+    }
+
+    /**
+     * Give the copies of the jobs the ids generated when they were saved before
+     */
+    private void restoreJobIds(List<RecoveryProcedure> procedures) {
+        for (RecoveryProcedure procedure : procedures) {
+            Saved before = procedure.getId() != null ? savedState(procedure.getId()) : null;
+            if (before == null || procedure.getExecutedJobs() == null) {
+                continue;
+            }
+            List<RecoveryJob> jobs = procedure.getExecutedJobs();
+            for (int i = 0; i < jobs.size() && i < before.jobIds.size(); i++) {
+                if (jobs.get(i).getId() == null) {
+                    jobs.get(i).setId(before.jobIds.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Remember the generated ids of the jobs and the number of journaled events of the saved procedures. Finished
+     * procedure is moved to the recently finished ones.
+     *
+     * @param procedures saved procedures
+     * @param result     procedures as returned by the repository, in the same order
+     */
+    private void remember(List<RecoveryProcedure> procedures, List<RecoveryProcedure> result) {
+        for (int p = 0; p < procedures.size(); p++) {
+            RecoveryProcedure procedure = procedures.get(p);
+            RecoveryProcedure savedProcedure = result != null && p < result.size() && result.get(p) != null
+                    ? result.get(p)
+                    : procedure;
+            Long procedureId = savedProcedure.getId() != null ? savedProcedure.getId() : procedure.getId();
+            if (procedureId == null) {
+                continue;
+            }
+            Saved state = new Saved();
+            if (savedProcedure.getExecutedJobs() != null) {
+                savedProcedure.getExecutedJobs().forEach(job -> state.jobIds.add(job.getId()));
+            }
+            state.events = procedure.getEventSummary() != null ? procedure.getEventSummary().size() : 0;
+            if (procedure.getEnd() != null) {
+                saved.remove(procedureId);
+                finished.put(procedureId, state);
+            } else {
+                saved.put(procedureId, state);
+            }
+        }
+    }
+
+    /**
+     * @return what has been saved of the procedure, null if it has not been saved or finished long ago
+     */
+    private Saved savedState(Long procedureId) {
+        Saved state = saved.get(procedureId);
+        return state != null ? state : finished.get(procedureId);
+    }
+
+    /**
+     * Insert events of given procedures that are not in the journal yet. Summary is only appended to, so the new
+     * events are the ones after the events journaled by the previous save.
+     *
+     * @param procedures updated procedures
+     * @param result     procedures as returned by the repository, in the same order
+     */
+    private void appendEvents(List<RecoveryProcedure> procedures, List<RecoveryProcedure> result) {
+        List<Event> appended = new ArrayList<>();
+        for (int p = 0; p < procedures.size(); p++) {
+            RecoveryProcedure procedure = procedures.get(p);
+            Long procedureId = result != null && p < result.size() && result.get(p) != null
+                    ? result.get(p).getId()
+                    : procedure.getId();
+            if (procedureId == null || procedure.getEventSummary() == null) {
+                continue;
+            }
+            Saved before = savedState(procedureId);
+            List<Event> summary = procedure.getEventSummary();
+            for (int i = before != null ? before.events : 0; i < summary.size(); i++) {
+                // copy for every attempt, id assigned in rolled back transaction is not reused
+                Event event = copy(summary.get(i));
+                event.setProcedureId(procedureId);
+                event.setSequence(i);
+                appended.add(event);
+            }
+        }
+        if (appended.isEmpty()) {
+            return;
+        }
+
+        eventRepository.save(appended);
+        events.addAndGet(appended.size());
+    }
+
+    /**
+     * Detached copy of the persistent state of the procedure. Jobs and events are copied too, the FSM keeps updating
+     * them.
+     */
+    static RecoveryProcedure snapshot(RecoveryProcedure procedure) {
+        List<RecoveryJob> jobs = null;
+        if (procedure.getExecutedJobs() != null) {
+            jobs = new ArrayList<>(procedure.getExecutedJobs().size());
+            for (RecoveryJob job : procedure.getExecutedJobs()) {
+                jobs.add(job.copy());
+            }
+        }
+        List<Event> summary = null;
+        if (procedure.getEventSummary() != null) {
+            summary = new ArrayList<>(procedure.getEventSummary().size());
+            for (Event event : procedure.getEventSummary()) {
+                summary.add(copy(event));
+            }
+        }
+        return RecoveryProcedure.builder()
+                .id(procedure.getId())
+                .problemIds(procedure.getProblemIds() != null ? new ArrayList<>(procedure.getProblemIds()) : null)
+                .problemTitle(procedure.getProblemTitle())
+                .start(procedure.getStart())
+                .end(procedure.getEnd())
+                .state(procedure.getState())
+                .executedJobs(jobs)
+                .eventSummary(summary)
+                .build();
+    }
+
+    private static Event copy(Event event) {
+        return Event.builder()
+                .date(event.getDate())
+                .type(event.getType())
+                .content(event.getContent())
+                .stepIndex(event.getStepIndex())
+                .build();
+    }
+
+    /**
+     * Saved state of the procedure
+     */
+    private static class Saved {
+
+        /**
+         * Ids of the executed jobs, by position
+         */
+        private final List<Long> jobIds = new ArrayList<>();
+
+        /**
+         * Number of events in the journal
+         */
+        private int events;
+    }
+}
@@ -1,35 +1,219 @@
 package ch.cern.cms.daq.expertcontroller.service;
 
 import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRecord;
+import ch.cern.cms.daq.expertcontroller.entity.Event;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.EventRepository;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryJobSummary;
 import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
-import org.modelmapper.ModelMapper;
-import org.modelmapper.convention.MatchingStrategies;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureSummary;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class RecoveryRecordService {
 
+    private final static Logger logger = Logger.getLogger(RecoveryRecordService.class);
+
+    /**
+     * Number of procedures exported at once. Also the JDBC fetch size of the export queries.
+     */
+    private final static int EXPORT_CHUNK_SIZE = 100;
+
     @Autowired
     private RecoveryProcedureRepository recoveryProcedureRepository;
 
+    @Autowired
+    private EventRepository eventRepository;
+
+    /**
+     * Maximum number of procedures returned in one page when the limit is given
+     */
+    @Value("${records.max-page-size:1000}")
+    private int maxPageSize;
+
+    /**
+     * Longest duration of a procedure in milliseconds. Procedures that started this long before the requested time
+     * span are not looked up, so that the query is bounded by the start index
+     */
+    @Value("${records.max-procedure-duration:86400000}")
+    private long maxProcedureDuration;
+
     @Autowired
     private IRecoveryService iRecoveryService;
 
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     public List<RecoveryRecord> getRecords(OffsetDateTime start, OffsetDateTime end) {
+        return getRecords(start, end, null, null);
+    }
+
+    /**
+     * Returns one page of the records of procedures within given time span, in order of start. Every procedure record
+     * is followed by the records of its jobs.
+     *
+     * @param after id of the last procedure of the previous page, null for the first page
+     * @param limit maximum number of procedures in the page, capped by the maximum page size. Null for all procedures
+     *              after the cursor: response grows with the time span, the dashboard does not send the limit yet
+     */
+    public List<RecoveryRecord> getRecords(OffsetDateTime start, OffsetDateTime end, Long after, Integer limit) {
+
+        List<RecoveryProcedureSummary> procedures;
+        if (after == null) {
+            procedures = recoveryProcedureRepository.findSummariesBetween(earliestStart(start), start, end, page(limit));
+        } else {
+            OffsetDateTime cursorStart = recoveryProcedureRepository.findStartById(after);
+            if (cursorStart == null) {
+                logger.warn("Unknown pagination cursor " + after);
+                return new ArrayList<>();
+            }
+            procedures = recoveryProcedureRepository.findSummariesBetweenAfter(
+                    earliestStart(start), start, end, cursorStart, after, page(limit));
+        }
+
+        return toRecords(procedures);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> getProcedures(OffsetDateTime start, OffsetDateTime end) {
+        return getProcedures(start, end, null, null);
+    }
 
-        List<RecoveryProcedure> procedures = recoveryProcedureRepository.findBetween(start, end, new Sort("start"));
+    /**
+     * Returns one page of the procedures within given time span, latest first
+     *
+     * @param after id of the last procedure of the previous page, null for the first page
+     * @param limit maximum number of procedures in the page, capped by the maximum page size. Null for all procedures
+     *              after the cursor
+     */
+    @Transactional(readOnly = true)
+    public List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> getProcedures(
+            OffsetDateTime start, OffsetDateTime end, Long after, Integer limit) {
+
+        List<RecoveryProcedure> procedureList;
+        if (after == null) {
+            procedureList = recoveryProcedureRepository.findBetween(earliestStart(start), start, end, page(limit));
+        } else {
+            OffsetDateTime cursorStart = recoveryProcedureRepository.findStartById(after);
+            if (cursorStart == null) {
+                logger.warn("Unknown pagination cursor " + after);
+                return new ArrayList<>();
+            }
+            procedureList = recoveryProcedureRepository.findBetweenBefore(
+                    earliestStart(start), start, end, cursorStart, after, page(limit));
+        }
+        loadEventSummaries(procedureList);
+
+        return dtoMapper.toProcedures(procedureList);
+    }
+
+    /**
+     * Writes records of all procedures within given time span as newline delimited JSON, in order of start. Procedures
+     * are read from database cursor and written in chunks, memory use does not depend on the length of the time span.
+     */
+    @Transactional(readOnly = true)
+    public void exportRecords(OffsetDateTime start, OffsetDateTime end, OutputStream out) throws IOException {
+        JsonGenerator generator = lineGenerator(out);
+        List<RecoveryProcedureSummary> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+
+        try (Stream<RecoveryProcedureSummary> procedures =
+                     recoveryProcedureRepository.streamSummariesBetween(earliestStart(start), start, end)) {
+            Iterator<RecoveryProcedureSummary> iterator = procedures.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == EXPORT_CHUNK_SIZE || !iterator.hasNext()) {
+                    writeLines(generator, toRecords(chunk));
+                    chunk.clear();
+                }
+            }
+        }
+        generator.flush();
+    }
+
+    /**
+     * Writes all procedures within given time span as newline delimited JSON, in order of start. Procedures are read
+     * from database cursor and written in chunks, memory use does not depend on the length of the time span.
+     */
+    @Transactional(readOnly = true)
+    public void exportProcedures(OffsetDateTime start, OffsetDateTime end, OutputStream out) throws IOException {
+        JsonGenerator generator = lineGenerator(out);
+        List<RecoveryProcedure> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+
+        try (Stream<RecoveryProcedure> procedures = recoveryProcedureRepository.streamBetween(earliestStart(start), start, end)) {
+            Iterator<RecoveryProcedure> iterator = procedures.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == EXPORT_CHUNK_SIZE || !iterator.hasNext()) {
+                    loadEventSummaries(chunk);
+                    writeLines(generator, dtoMapper.toProcedures(chunk));
+                    chunk.clear();
+                    // written procedures are not needed in persistence context anymore
+                    entityManager.clear();
+                }
+            }
+        }
+        generator.flush();
+    }
+
+    /**
+     * Generator of one JSON value per line, values are separated by the new lines only
+     */
+    private JsonGenerator lineGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private void writeLines(JsonGenerator generator, List<?> values) throws IOException {
+        for (Object value : values) {
+            objectMapper.writeValue(generator, value);
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+    }
+
+    /**
+     * Builds records of given procedures, every procedure record is followed by the records of its jobs
+     */
+    private List<RecoveryRecord> toRecords(List<RecoveryProcedureSummary> procedures) {
+        Map<Long, List<RecoveryJobSummary>> jobs = procedures.isEmpty()
+                ? Collections.emptyMap()
+                : recoveryProcedureRepository.findJobSummaries(
+                procedures.stream().map(RecoveryProcedureSummary::getId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.groupingBy(RecoveryJobSummary::getProcedureId));
 
         List<RecoveryRecord> records = new ArrayList<>();
 
-        procedures.stream().forEach(p -> {
+        procedures.forEach(p -> {
 
             RecoveryRecord procedureRecord = RecoveryRecord.builder()
                     .id(p.getId())
@@ -39,7 +223,7 @@ public class RecoveryRecordService {
                     .description("" + p.getProblemTitle())
                     .build();
 
-            List<RecoveryRecord> jobRecords = p.getExecutedJobs().stream()
+            List<RecoveryRecord> jobRecords = jobs.getOrDefault(p.getId(), Collections.emptyList()).stream()
                     .map(j -> RecoveryRecord.builder()
                             .id(j.getId())
                             .start(j.getStart())
@@ -57,20 +241,38 @@ public class RecoveryRecordService {
 
 
         return records;
-
     }
 
-    public List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> getProcedures(OffsetDateTime start, OffsetDateTime end) {
-        List<RecoveryProcedure> procedureList =
-                recoveryProcedureRepository.findBetween(start, end, new Sort(Sort.Direction.DESC, "start"));
-
+    /**
+     * @return earliest start of the procedure that may still be running at given time
+     */
+    private OffsetDateTime earliestStart(OffsetDateTime start) {
+        return start.minus(maxProcedureDuration, ChronoUnit.MILLIS);
+    }
 
-        ModelMapper modelMapper = new ModelMapper();
-        modelMapper.getConfiguration()
-                .setMatchingStrategy(MatchingStrategies.STRICT);
-        List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> result = modelMapper.map(procedureList, List.class);
+    /**
+     * Page of given size, capped by the maximum page size. Null (query without paging) when no limit is given, so that
+     * callers not using pagination still get all procedures of the time span
+     */
+    private Pageable page(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return null;
+        }
+        return new PageRequest(0, Math.min(limit, maxPageSize));
+    }
 
+    /**
+     * Rebuild event summaries of given procedures from the event journal, with one query for all procedures
+     */
+    private void loadEventSummaries(List<RecoveryProcedure> procedures) {
+        if (procedures.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Event>> summaries = eventRepository.findByProcedureIdInOrderBySequence(
+                procedures.stream().map(RecoveryProcedure::getId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.groupingBy(Event::getProcedureId));
 
-        return result;
+        procedures.forEach(p -> p.setEventSummary(summaries.getOrDefault(p.getId(), new ArrayList<>())));
     }
 }
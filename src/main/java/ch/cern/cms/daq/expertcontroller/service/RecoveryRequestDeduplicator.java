@@ -0,0 +1,355 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryResponse;
+import ch.cern.cms.daq.expertcontroller.entity.ProcessedRecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.repository.ProcessedRecoveryRequestRepository;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Idempotent processing of the recovery requests.
+ * <p>
+ * Client may retry the request when the controller is slow to respond. Request is identified by the idempotency key
+ * given by the client. Repeated request within the window is not processed again, it is answered with the response
+ * given to the first one. Retry arriving while the first request is still processed waits for its response.
+ * <p>
+ * Requests without the key (DAQExpert does not send it) are identified by the problem id and the request content, but
+ * only while the first one is processed: the same problem may be legitimately reported again with the same content,
+ * and is processed again, e.g. rejected, once the first request has been answered.
+ * <p>
+ * Recently processed requests are kept in memory, bounded by the capacity. Responses are also stored in the database
+ * so that retries are recognized after eviction or restart. Requests that failed are not remembered and may be
+ * retried.
+ */
+@Component
+public class RecoveryRequestDeduplicator implements PublicMetrics {
+
+    private final static Logger logger = Logger.getLogger(RecoveryRequestDeduplicator.class);
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private ProcessedRecoveryRequestRepository processedRecoveryRequestRepository;
+
+    /**
+     * Time in milliseconds during which the repeated request is answered with the first response, 0 to process every
+     * request. Should be shorter than the pending request expiry so that resubmissions still refresh postponed
+     * requests.
+     */
+    @Value("${recovery.idempotency.window:30000}")
+    private long window;
+
+    /**
+     * Maximum number of requests remembered in memory
+     */
+    @Value("${recovery.idempotency.capacity:1000}")
+    private int capacity;
+
+    /**
+     * Whether request without the key, identical to the request being processed, waits for its response
+     */
+    @Value("${recovery.idempotency.in-flight:true}")
+    private boolean inFlightDeduplication;
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private Map<String, Entry> entries;
+
+    /**
+     * Requests without the key that are being processed, by the content key
+     */
+    private final Map<String, CompletableFuture<RecoveryResponse>> inFlight = new HashMap<>();
+
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Stores the responses and purges the requests out of the window. Responses are not stored on the request thread so
+     * that the response is not delayed by the database.
+     */
+    private ScheduledThreadPoolExecutor writer;
+
+    public RecoveryRequestDeduplicator() {
+    }
+
+    RecoveryRequestDeduplicator(ProcessedRecoveryRequestRepository processedRecoveryRequestRepository,
+                                long window,
+                                int capacity,
+                                LongSupplier clock) {
+        this(processedRecoveryRequestRepository, window, capacity, false, clock);
+    }
+
+    RecoveryRequestDeduplicator(ProcessedRecoveryRequestRepository processedRecoveryRequestRepository,
+                                long window,
+                                int capacity,
+                                boolean inFlightDeduplication,
+                                LongSupplier clock) {
+        this.processedRecoveryRequestRepository = processedRecoveryRequestRepository;
+        this.inFlightDeduplication = inFlightDeduplication;
+        this.window = window;
+        this.capacity = capacity;
+        this.clock = clock;
+        this.entries = createEntries(capacity);
+    }
+
+    @PostConstruct
+    void init() {
+        entries = createEntries(capacity);
+        if (window > 0) {
+            writer = new ScheduledThreadPoolExecutor(1);
+            writer.scheduleWithFixedDelay(this::purge, window, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * Process the request unless the request with the same idempotency key has been processed within the window
+     *
+     * @param idempotencyKey key given by the client, request without the key is processed unless the same request is
+     *                       being processed
+     * @param request        recovery request
+     * @param processor      processing of the request
+     * @return response of the processor, the first response for the repeated request
+     * @throws IllegalArgumentException if the idempotency key is too long
+     */
+    public RecoveryResponse process(String idempotencyKey,
+                                    RecoveryRequest request,
+                                    Function<RecoveryRequest, RecoveryResponse> processor) {
+        if (idempotencyKey == null) {
+            return inFlightDeduplication ? processOnce(request, processor) : processor.apply(request);
+        }
+        if (window <= 0) {
+            return processor.apply(request);
+        }
+
+        String key = key(idempotencyKey);
+        long now = clock.getAsLong();
+        Entry own = new Entry(now);
+        Entry first;
+
+        synchronized (entries) {
+            first = entries.get(key);
+            if (first != null && now - first.received > window) {
+                entries.remove(key);
+                first = null;
+            }
+            if (first == null) {
+                entries.put(key, own);
+            }
+        }
+
+        if (first != null) {
+            duplicates.incrementAndGet();
+            logger.info("Repeated recovery request " + key + ", answering with the first response");
+            return await(first.response);
+        }
+
+        try {
+            RecoveryResponse response = findProcessed(key, now);
+            if (response != null) {
+                duplicates.incrementAndGet();
+                logger.info("Recovery request " + key + " already processed, answering with the stored response");
+            } else {
+                response = processor.apply(request);
+                RecoveryResponse stored = response;
+                if (writer != null) {
+                    writer.execute(() -> store(key, now, stored));
+                } else {
+                    store(key, now, stored);
+                }
+            }
+            own.response.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                entries.remove(key, own);
+            }
+            own.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Process the request unless the same request without the key is being processed, the response is not remembered
+     * afterwards
+     */
+    private RecoveryResponse processOnce(RecoveryRequest request,
+                                         Function<RecoveryRequest, RecoveryResponse> processor) {
+        String key = contentKey(request);
+        CompletableFuture<RecoveryResponse> own = new CompletableFuture<>();
+        CompletableFuture<RecoveryResponse> first;
+
+        synchronized (inFlight) {
+            first = inFlight.putIfAbsent(key, own);
+        }
+
+        if (first != null) {
+            duplicates.incrementAndGet();
+            logger.info("Recovery request " + key + " retried while processed, answering with the first response");
+            return await(first);
+        }
+
+        try {
+            RecoveryResponse response = processor.apply(request);
+            own.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (inFlight) {
+                inFlight.remove(key, own);
+            }
+        }
+    }
+
+    /**
+     * Remove the requests that are out of the window
+     */
+    void purge() {
+        long since = clock.getAsLong() - window;
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.received < since && entry.response.isDone());
+        }
+        try {
+            int removed = processedRecoveryRequestRepository.deleteReceivedBefore(toDate(since));
+            logger.debug("Purged " + removed + " processed recovery requests");
+        } catch (RuntimeException e) {
+            logger.warn("Could not purge processed recovery requests: " + e.getMessage());
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("recovery.idempotency.duplicates", duplicates.get()));
+        metrics.add(new Metric<>("recovery.idempotency.failures", failures.get()));
+        metrics.add(new Metric<>("recovery.idempotency.size", size()));
+        return metrics;
+    }
+
+    static String key(String idempotencyKey) {
+        String key = "key:" + idempotencyKey;
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key longer than " + (MAX_KEY_LENGTH - 4) + " characters");
+        }
+        return key;
+    }
+
+    /**
+     * Key of the request without the idempotency key: problem id and hash of the request content
+     */
+    static String contentKey(RecoveryRequest request) {
+        return "problem:" + request.getProblemId() + ":" + Integer.toHexString(request.hashCode());
+    }
+
+    private RecoveryResponse findProcessed(String key, long now) {
+        ProcessedRecoveryRequest processed;
+        try {
+            processed = processedRecoveryRequestRepository.findOne(key);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            logger.warn("Could not look up processed recovery request " + key + ": " + e.getMessage());
+            return null;
+        }
+        if (processed == null || processed.getReceived().isBefore(toDate(now - window))) {
+            return null;
+        }
+        return RecoveryResponse.builder()
+                .acceptanceDecision(processed.getAcceptanceDecision())
+                .recoveryProcedureId(processed.getRecoveryProcedureId())
+                .rejectedDueToConditionId(processed.getRejectedDueToConditionId())
+                .continuesTheConditionId(processed.getContinuesTheConditionId())
+                .build();
+    }
+
+    /**
+     * Response is already given, failure to store it only means that the retry after restart is processed again
+     */
+    private void store(String key, long received, RecoveryResponse response) {
+        try {
+            processedRecoveryRequestRepository.save(ProcessedRecoveryRequest.builder()
+                    .requestKey(key)
+                    .received(toDate(received))
+                    .acceptanceDecision(response.getAcceptanceDecision())
+                    .recoveryProcedureId(response.getRecoveryProcedureId())
+                    .rejectedDueToConditionId(response.getRejectedDueToConditionId())
+                    .continuesTheConditionId(response.getContinuesTheConditionId())
+                    .build());
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            logger.warn("Could not store processed recovery request " + key + ": " + e.getMessage());
+        }
+    }
+
+    private static RecoveryResponse await(CompletableFuture<RecoveryResponse> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static OffsetDateTime toDate(long millis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static Map<String, Entry> createEntries(int capacity) {
+        return new LinkedHashMap<String, Entry>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity && eldest.getValue().response.isDone();
+            }
+        };
+    }
+
+    private static class Entry {
+
+        private final long received;
+
+        private final CompletableFuture<RecoveryResponse> response = new CompletableFuture<>();
+
+        Entry(long received) {
+            this.received = received;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.Event;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJobStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedureStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryServiceStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryStatusDelta;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Broadcasts recovery service status to the dashboards.
+ * <p>
+ * One FSM transition triggers several updates in a row. Updates requested within the window are merged: the status is
+ * built once, at the end of the window, and only the latest snapshot is sent. Snapshot equal to the previously sent
+ * one is not sent at all. The delta to the previously sent status is broadcast for the clients that keep their own
+ * view. The full status is broadcast only with the first snapshot and with the deltas that reset the view, unless it is
+ * configured to be sent with every delta. Clients joining later request the full status themselves.
+ */
+public class RecoveryStatusBroadcaster {
+
+    private final static Logger logger = Logger.getLogger(RecoveryStatusBroadcaster.class);
+
+    /**
+     * Coalescing window in milliseconds, 0 to send every update immediately
+     */
+    private final long window;
+
+    private final Supplier<RecoveryServiceStatus> statusSupplier;
+
+    private final Consumer<RecoveryServiceStatus> statusConsumer;
+
+    private final Consumer<RecoveryStatusDelta> deltaConsumer;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Whether full status is broadcast with every delta, for the clients that do not apply the deltas
+     */
+    private final boolean fullStatusAlways;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private RecoveryServiceStatus lastSent;
+
+    public RecoveryStatusBroadcaster(long window,
+                                     Supplier<RecoveryServiceStatus> statusSupplier,
+                                     Consumer<RecoveryServiceStatus> statusConsumer,
+                                     Consumer<RecoveryStatusDelta> deltaConsumer,
+                                     ScheduledExecutorService scheduler) {
+        this(window, statusSupplier, statusConsumer, deltaConsumer, scheduler, false);
+    }
+
+    public RecoveryStatusBroadcaster(long window,
+                                     Supplier<RecoveryServiceStatus> statusSupplier,
+                                     Consumer<RecoveryServiceStatus> statusConsumer,
+                                     Consumer<RecoveryStatusDelta> deltaConsumer,
+                                     ScheduledExecutorService scheduler,
+                                     boolean fullStatusAlways) {
+        this.window = window;
+        this.statusSupplier = statusSupplier;
+        this.statusConsumer = statusConsumer;
+        this.deltaConsumer = deltaConsumer;
+        this.scheduler = scheduler;
+        this.fullStatusAlways = fullStatusAlways;
+    }
+
+    /**
+     * Request broadcast of the current status. Status is sent at the end of the window.
+     */
+    public void requestUpdate() {
+        if (window <= 0) {
+            flush();
+            return;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void flush() {
+        // updates requested while building the status schedule next broadcast
+        scheduled.set(false);
+
+        RecoveryServiceStatus status;
+        try {
+            status = statusSupplier.get();
+        } catch (RuntimeException e) {
+            logger.warn("Could not build recovery status to broadcast", e);
+            return;
+        }
+
+        if (status.equals(lastSent)) {
+            logger.debug("Recovery status unchanged, not broadcasting");
+            return;
+        }
+
+        RecoveryStatusDelta delta = delta(lastSent, status);
+        if (fullStatusAlways || lastSent == null || delta.isReset()) {
+            statusConsumer.accept(status);
+        }
+        deltaConsumer.accept(delta);
+        lastSent = status;
+    }
+
+    /**
+     * @param previous previously sent status, may be null
+     * @param current  status to send
+     * @return change between given statuses
+     */
+    static RecoveryStatusDelta delta(RecoveryServiceStatus previous, RecoveryServiceStatus current) {
+
+        RecoveryProcedureStatus currentProcedure = current.getLastProcedureStatus();
+        RecoveryProcedureStatus previousProcedure = previous != null ? previous.getLastProcedureStatus() : null;
+
+        RecoveryStatusDelta.RecoveryStatusDeltaBuilder builder = RecoveryStatusDelta.builder()
+                .executorState(current.getExecutorState())
+                .rcmsCircuitState(current.getRcmsCircuitState());
+
+        if (previous == null || !Objects.equals(previous.getPartitionStatuses(), current.getPartitionStatuses())) {
+            builder.partitionStatuses(current.getPartitionStatuses());
+        }
+
+        if (currentProcedure == null) {
+            return builder.reset(previousProcedure != null).build();
+        }
+
+        builder.procedureId(currentProcedure.getId())
+                .finalStatus(currentProcedure.getFinalStatus())
+                .endDate(currentProcedure.getEndDate());
+
+        List<Event> events = orEmpty(currentProcedure.getActionSummary());
+        List<RecoveryJobStatus> jobStatuses = orEmpty(currentProcedure.getJobStatuses());
+
+        boolean sameProcedure = previousProcedure != null
+                && Objects.equals(previousProcedure.getId(), currentProcedure.getId());
+        List<Event> previousEvents = sameProcedure ? orEmpty(previousProcedure.getActionSummary()) : null;
+
+        if (!sameProcedure || previousEvents.size() > events.size()
+                || !previousEvents.equals(events.subList(0, previousEvents.size()))) {
+            return builder.reset(true).newEvents(events).changedJobStatuses(jobStatuses).build();
+        }
+
+        Map<Integer, RecoveryJobStatus> previousJobStatuses = new HashMap<>();
+        orEmpty(previousProcedure.getJobStatuses()).forEach(j -> previousJobStatuses.put(j.getStepIndex(), j));
+
+        List<RecoveryJobStatus> changedJobStatuses = new ArrayList<>();
+        for (RecoveryJobStatus jobStatus : jobStatuses) {
+            if (!jobStatus.equals(previousJobStatuses.get(jobStatus.getStepIndex()))) {
+                changedJobStatuses.add(jobStatus);
+            }
+        }
+
+        return builder.reset(false)
+                .newEvents(new ArrayList<>(events.subList(previousEvents.size(), events.size())))
+                .changedJobStatuses(changedJobStatuses)
+                .build();
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list != null ? list : Collections.emptyList();
+    }
+}
@@ -0,0 +1,440 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.StepEffectiveness;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Historical effectiveness of the recovery steps by problem title.
+ * <p>
+ * Steps are compared by what they do (see {@link #signature(RecoveryJob)}), not by their index or description. The
+ * last executed step of a completed procedure led to the finished signal, steps executed before it had no effect. The
+ * last step of a failed procedure had no effect or failed, the last step of a cancelled procedure has unknown outcome
+ * and is not counted. Time of an attempt runs from the start of the step to the end of the procedure or to the start of
+ * the next step, so it includes the observation window.
+ * <p>
+ * Statistics are built from the procedures finished within the history period on startup and updated as procedures
+ * finish. In propose mode the better order of steps is logged for every new procedure, in reorder mode the procedure
+ * is executed in that order. Steps are ordered by success probability per unit of time, the order that minimizes the
+ * expected time to recover when steps are tried one after another. Steps without enough attempts keep the position
+ * given by the client.
+ */
+@Component
+public class StepEffectivenessStatistics implements PublicMetrics {
+
+    private final static Logger logger = Logger.getLogger(StepEffectivenessStatistics.class);
+
+    public enum Mode {
+        Off, Propose, Reorder
+    }
+
+    /**
+     * Number of procedures read from the history before the persistence context is cleared
+     */
+    private final static int HISTORY_CHUNK_SIZE = 100;
+
+    /**
+     * Number of recently recorded procedure ids remembered, so that every procedure is recorded once. Ids of the
+     * history are all kept until it is loaded.
+     */
+    private final static int RECORDED_CAPACITY = 1000;
+
+    @Autowired(required = false)
+    private RecoveryProcedureRepository recoveryProcedureRepository;
+
+    @Autowired(required = false)
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Use of the statistics for new procedures: off, propose or reorder
+     */
+    @Value("${recovery.step-ranking.mode:off}")
+    private String modeName;
+
+    /**
+     * Minimum number of attempts with known outcome before the step is ranked
+     */
+    @Value("${recovery.step-ranking.min-attempts:5}")
+    private int minAttempts;
+
+    /**
+     * Days of history loaded on startup, 0 to start without history
+     */
+    @Value("${recovery.step-ranking.history-days:90}")
+    private int historyDays;
+
+    /**
+     * Maximum number of problem titles kept, least recently used are dropped
+     */
+    @Value("${recovery.step-ranking.capacity:1000}")
+    private int capacity;
+
+    private Mode mode;
+
+    /**
+     * Statistics of the steps by problem title and step signature
+     */
+    private Map<String, Map<String, Counts>> statistics;
+
+    /**
+     * Ids of the recorded procedures, true for the procedures from the history. Guarded by itself
+     */
+    private final Map<Long, Boolean> recorded = new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return !loading && size() > RECORDED_CAPACITY;
+        }
+    };
+
+    /**
+     * History is being loaded, procedures recorded meanwhile may be in the history too
+     */
+    private volatile boolean loading;
+
+    private ScheduledThreadPoolExecutor loader;
+
+    private final AtomicLong procedures = new AtomicLong();
+    private final AtomicLong proposed = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+
+    public StepEffectivenessStatistics() {
+    }
+
+    StepEffectivenessStatistics(Mode mode, int minAttempts, int capacity) {
+        this.mode = mode;
+        this.minAttempts = minAttempts;
+        this.capacity = capacity;
+        this.statistics = createStatistics(capacity);
+    }
+
+    @PostConstruct
+    void init() {
+        mode = parseMode(modeName);
+        statistics = createStatistics(capacity);
+        if (historyDays > 0 && recoveryProcedureRepository != null && transactionManager != null) {
+            loading = true;
+            loader = new ScheduledThreadPoolExecutor(1);
+            loader.execute(this::loadHistory);
+            loader.shutdown();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Record the outcome of the finished procedure. Called on every update, only the first call after the procedure
+     * has ended is recorded. Procedure that is also in the history being loaded is recorded once.
+     */
+    public void record(RecoveryProcedure procedure) {
+        if (procedure.getEnd() == null || procedure.getId() == null || !markRecorded(procedure.getId(), false)) {
+            return;
+        }
+        recordOutcome(procedure);
+    }
+
+    /**
+     * Apply the mode to the new procedure: log the better order of its steps, or reorder them. Execution continues in
+     * the order of the reordered steps also after the step requested out of sequence: steps that are ranked before it
+     * are skipped, as steps given before it by the client are.
+     */
+    public void apply(RecoveryProcedure procedure) {
+        if (mode == Mode.Off || procedure.getProcedure() == null) {
+            return;
+        }
+        List<RecoveryJob> steps = procedure.getProcedure();
+        List<RecoveryJob> ranked = rank(procedure.getProblemTitle(), steps);
+        if (ranked.equals(steps)) {
+            return;
+        }
+        if (mode == Mode.Reorder) {
+            reordered.incrementAndGet();
+            procedure.setProcedure(ranked);
+            logger.info("Steps of " + procedure.getProblemTitle() + " reordered by historical effectiveness: "
+                                + stepIndexes(steps) + " -> " + stepIndexes(ranked));
+        } else {
+            proposed.incrementAndGet();
+            logger.info("Steps of " + procedure.getProblemTitle() + " would be more effective in order "
+                                + stepIndexes(ranked) + " instead of " + stepIndexes(steps));
+        }
+    }
+
+    /**
+     * @return given steps ordered by historical effectiveness for given problem, steps without enough attempts at
+     * their original positions
+     */
+    List<RecoveryJob> rank(String problemTitle, List<RecoveryJob> steps) {
+        double[] scores = new double[steps.size()];
+        synchronized (statistics) {
+            Map<String, Counts> counts = statistics.get(problemTitle);
+            if (counts == null) {
+                return steps;
+            }
+            for (int i = 0; i < steps.size(); i++) {
+                Counts stepCounts = counts.get(signature(steps.get(i)));
+                scores[i] = stepCounts != null && stepCounts.attempts >= minAttempts ? stepCounts.score() : Double.NaN;
+            }
+        }
+
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            if (!Double.isNaN(scores[i])) {
+                slots.add(i);
+            }
+        }
+        // stable, steps of equal score keep the order of the client
+        List<Integer> order = new ArrayList<>(slots);
+        order.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+
+        List<RecoveryJob> ranked = new ArrayList<>(steps);
+        for (int i = 0; i < slots.size(); i++) {
+            ranked.set(slots.get(i), steps.get(order.get(i)));
+        }
+        return ranked;
+    }
+
+    /**
+     * @return statistics of the steps of given problem, most effective first
+     */
+    public List<StepEffectiveness> getStatistics(String problemTitle) {
+        List<StepEffectiveness> result = new ArrayList<>();
+        synchronized (statistics) {
+            Map<String, Counts> counts = statistics.getOrDefault(problemTitle, Collections.emptyMap());
+            counts.forEach((signature, stepCounts) -> result.add(StepEffectiveness.builder()
+                    .signature(signature)
+                    .attempts(stepCounts.attempts)
+                    .successes(stepCounts.successes)
+                    .successRate(stepCounts.attempts == 0 ? 0 : (double) stepCounts.successes / stepCounts.attempts)
+                    .meanDuration(stepCounts.attempts == 0 ? 0 : stepCounts.millis / stepCounts.attempts)
+                    .ranked(stepCounts.attempts >= minAttempts)
+                    .build()));
+        }
+        result.sort(Comparator.comparing(StepEffectiveness::isRanked)
+                            .thenComparingDouble(this::score)
+                            .reversed());
+        return result;
+    }
+
+    /**
+     * @return what the step does: TTC hard reset and the sorted subsystems of every action
+     */
+    static String signature(RecoveryJob job) {
+        return (Boolean.TRUE.equals(job.getIssueTTCHardReset()) ? "ttchr" : "")
+                + ";red=" + sorted(job.getRedRecycle())
+                + ";green=" + sorted(job.getGreenRecycle())
+                + ";fault=" + sorted(job.getFault())
+                + ";reset=" + sorted(job.getReset());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        synchronized (statistics) {
+            metrics.add(new Metric<>("recovery.step-ranking.problems", statistics.size()));
+        }
+        metrics.add(new Metric<>("recovery.step-ranking.procedures", procedures.get()));
+        metrics.add(new Metric<>("recovery.step-ranking.proposed", proposed.get()));
+        metrics.add(new Metric<>("recovery.step-ranking.reordered", reordered.get()));
+        return metrics;
+    }
+
+    /**
+     * Build the statistics from the procedures started and finished within the history period. Procedures are streamed, the
+     * persistence context is cleared after every chunk so that memory use does not depend on the length of the history.
+     * Procedures already recorded as they finished are skipped.
+     */
+    void loadHistory() {
+        OffsetDateTime until = OffsetDateTime.now();
+        OffsetDateTime since = until.minusDays(historyDays);
+        long start = System.nanoTime();
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        try {
+            Integer loaded = transaction.execute(status -> {
+                int count = 0;
+                int read = 0;
+                try (Stream<RecoveryProcedure> history = recoveryProcedureRepository.streamBetween(since, since, until)) {
+                    Iterator<RecoveryProcedure> iterator = history.iterator();
+                    while (iterator.hasNext()) {
+                        RecoveryProcedure procedure = iterator.next();
+                        // procedures that finish from now on are recorded as they finish
+                        if (procedure.getEnd() != null && procedure.getEnd().isBefore(until)
+                                && markRecorded(procedure.getId(), true)) {
+                            recordOutcome(procedure);
+                            count++;
+                        }
+                        if (++read % HISTORY_CHUNK_SIZE == 0) {
+                            entityManager.clear();
+                        }
+                    }
+                }
+                return count;
+            });
+            logger.info("Step effectiveness of " + loaded + " procedures since " + since + " loaded in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (RuntimeException e) {
+            logger.warn("Could not load history of step effectiveness: " + e.getMessage());
+        } finally {
+            synchronized (recorded) {
+                loading = false;
+                // ids of the history are dropped first, in order of start: the latest may still be updated
+                Iterator<Boolean> eldest = recorded.values().iterator();
+                while (recorded.size() > RECORDED_CAPACITY && eldest.hasNext()) {
+                    if (eldest.next()) {
+                        eldest.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param history procedure is read from the history
+     * @return true if the procedure has not been recorded yet, it is marked as recorded
+     */
+    private boolean markRecorded(Long id, boolean history) {
+        synchronized (recorded) {
+            return recorded.putIfAbsent(id, history) == null;
+        }
+    }
+
+    private void recordOutcome(RecoveryProcedure procedure) {
+        List<RecoveryJob> jobs = procedure.getExecutedJobs();
+        if (jobs == null || jobs.isEmpty() || procedure.getProblemTitle() == null) {
+            return;
+        }
+        procedures.incrementAndGet();
+
+        Map<String, Counts> outcomes = new HashMap<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            RecoveryJob job = jobs.get(i);
+            boolean last = i == jobs.size() - 1;
+            if (job.getStart() == null || (last && State.Cancelled.toString().equals(procedure.getState()))) {
+                continue;
+            }
+            OffsetDateTime outcome = last || jobs.get(i + 1).getStart() == null
+                    ? procedure.getEnd()
+                    : jobs.get(i + 1).getStart();
+            boolean success = last && State.Completed.toString().equals(procedure.getState());
+
+            Counts counts = outcomes.computeIfAbsent(signature(job), signature -> new Counts());
+            counts.attempts++;
+            counts.successes += success ? 1 : 0;
+            counts.millis += Math.max(0, Duration.between(job.getStart(), outcome).toMillis());
+        }
+
+        synchronized (statistics) {
+            Map<String, Counts> counts = statistics.computeIfAbsent(procedure.getProblemTitle(), title -> new HashMap<>());
+            outcomes.forEach((signature, outcome) -> counts.computeIfAbsent(signature, s -> new Counts()).add(outcome));
+        }
+    }
+
+    private double score(StepEffectiveness step) {
+        return step.getMeanDuration() == 0
+                ? step.getSuccessRate()
+                : step.getSuccessRate() / step.getMeanDuration();
+    }
+
+    private static String sorted(Set<String> subsystems) {
+        return subsystems == null ? "" : String.join(",", new TreeSet<>(subsystems));
+    }
+
+    private static String stepIndexes(List<RecoveryJob> steps) {
+        return steps.stream().map(step -> String.valueOf(step.getStepIndex())).collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private static Mode parseMode(String name) {
+        for (Mode mode : Mode.values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown recovery.step-ranking.mode " + name
+                                                   + ", expected off, propose or reorder");
+    }
+
+    private static Map<String, Map<String, Counts>> createStatistics(int capacity) {
+        return new LinkedHashMap<String, Map<String, Counts>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Counts>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Outcomes of one step, guarded by the statistics lock
+     */
+    private static class Counts {
+
+        private long attempts;
+
+        private long successes;
+
+        /**
+         * Total time of the attempts in milliseconds
+         */
+        private long millis;
+
+        void add(Counts other) {
+            attempts += other.attempts;
+            successes += other.successes;
+            millis += other.millis;
+        }
+
+        /**
+         * @return successes per millisecond of the attempts
+         */
+        double score() {
+            if (millis == 0) {
+                return successes > 0 ? Double.MAX_VALUE : 0;
+            }
+            return (double) successes / millis;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import rcms.fm.fw.service.command.CommandServiceException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of the function manager controllers keyed by sender and target URI.
+ * <p>
+ * Building a controller creates the Axis stubs of the parameter and command relays, so controllers are reused
+ * between calls. A controller is borrowed for the duration of one operation and given back afterwards. Controller
+ * that failed in the operation is considered unhealthy and is discarded instead of being pooled again. Controllers
+ * that were idle for too long are evicted periodically.
+ * <p>
+ * When the {@link LV0AutomatorSimulator} is enabled the controllers act on the simulator instead of the remote FM.
+ */
+@Component
+public class FMControllerPool implements PublicMetrics {
+
+    private static Logger logger = Logger.getLogger(FMControllerPool.class);
+
+    /**
+     * Maximum time in milliseconds the controller may stay unused in the pool
+     */
+    @Value("${rcms.pool.max-idle-time:600000}")
+    private long maxIdleTime;
+
+    /**
+     * Maximum number of unused controllers kept per key
+     */
+    @Value("${rcms.pool.max-idle-per-key:4}")
+    private int maxIdlePerKey;
+
+    @Autowired(required = false)
+    private LV0AutomatorSimulator simulator;
+
+    private final Map<String, Deque<PooledController>> idle = new ConcurrentHashMap<>();
+
+    /**
+     * Keys of the controllers that are currently borrowed
+     */
+    private final Map<FMController, String> borrowed = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ScheduledThreadPoolExecutor evictor;
+
+    public FMControllerPool() {
+    }
+
+    public FMControllerPool(long maxIdleTime, int maxIdlePerKey) {
+        this.maxIdleTime = maxIdleTime;
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    FMControllerPool(long maxIdleTime, int maxIdlePerKey, LV0AutomatorSimulator simulator) {
+        this(maxIdleTime, maxIdlePerKey);
+        this.simulator = simulator;
+    }
+
+    @PostConstruct
+    private void init() {
+        evictor = new ScheduledThreadPoolExecutor(1);
+        long period = Math.max(maxIdleTime / 2, 1000);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        evictor.shutdownNow();
+        idle.clear();
+    }
+
+    /**
+     * Borrow the LV0 automator controller. Must be given back with {@link #release(FMController, boolean)}
+     */
+    public LV0AutomatorController borrowAutomatorController(String senderURI, String targetURI)
+            throws LV0AutomatorControlException {
+
+        String key = "LV0A " + senderURI + " " + targetURI;
+        FMController pooled = poll(key);
+        if (pooled != null) {
+            return (LV0AutomatorController) pooled;
+        }
+
+        LV0AutomatorController controller = simulator != null
+                ? simulator.automatorController(senderURI)
+                : new LV0AutomatorController(senderURI);
+        controller.addURI(targetURI);
+        borrowed.put(controller, key);
+        return controller;
+    }
+
+    /**
+     * Borrow the level zero controller. Must be given back with {@link #release(FMController, boolean)}
+     */
+    public L0Controller borrowL0Controller(String senderURI, String targetURI)
+            throws LV0AutomatorControlException, CommandServiceException {
+
+        String key = "L0 " + senderURI + " " + targetURI;
+        FMController pooled = poll(key);
+        if (pooled != null) {
+            return (L0Controller) pooled;
+        }
+
+        L0Controller controller = simulator != null
+                ? simulator.l0Controller(senderURI)
+                : new L0Controller(senderURI);
+        controller.addURI(targetURI);
+        borrowed.put(controller, key);
+        return controller;
+    }
+
+    /**
+     * Give back borrowed controller
+     *
+     * @param controller borrowed controller
+     * @param healthy    false if the operation on controller failed, controller will be discarded
+     */
+    public void release(FMController controller, boolean healthy) {
+        String key = borrowed.remove(controller);
+        if (key == null) {
+            throw new IllegalArgumentException("Controller has not been borrowed from this pool");
+        }
+
+        if (!healthy) {
+            logger.info("Discarding unhealthy controller " + key);
+            evictions.incrementAndGet();
+            return;
+        }
+
+        Deque<PooledController> controllers = idle.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+        if (controllers.size() < maxIdlePerKey) {
+            controllers.push(new PooledController(controller, System.currentTimeMillis()));
+        } else {
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return ratio of borrow requests served by pooled controller
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("rcms.pool.hits", hits.get()));
+        metrics.add(new Metric<>("rcms.pool.misses", misses.get()));
+        metrics.add(new Metric<>("rcms.pool.evictions", evictions.get()));
+        metrics.add(new Metric<>("rcms.pool.hit-rate", getHitRate()));
+        metrics.add(new Metric<>("rcms.pool.borrowed", borrowed.size()));
+        metrics.add(new Metric<>("rcms.command-beans.hit-rate", LV0AutomatorController.COMMAND_BEANS.getHitRate()));
+        metrics.add(new Metric<>("rcms.command-beans.size", LV0AutomatorController.COMMAND_BEANS.size()));
+        return metrics;
+    }
+
+    void evictIdle() {
+        long threshold = System.currentTimeMillis() - maxIdleTime;
+        for (Deque<PooledController> controllers : idle.values()) {
+            Iterator<PooledController> iterator = controllers.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().lastUsed < threshold) {
+                    iterator.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private FMController poll(String key) {
+        Deque<PooledController> controllers = idle.get(key);
+        PooledController pooled = controllers != null ? controllers.poll() : null;
+
+        if (pooled != null) {
+            hits.incrementAndGet();
+            borrowed.put(pooled.controller, key);
+            return pooled.controller;
+        }
+        logger.debug("No pooled controller for " + key + ", building new one");
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private static class PooledController {
+
+        private final FMController controller;
+
+        private final long lastUsed;
+
+        PooledController(FMController controller, long lastUsed) {
+            this.controller = controller;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
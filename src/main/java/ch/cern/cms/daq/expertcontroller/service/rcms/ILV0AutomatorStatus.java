@@ -0,0 +1,27 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import java.util.Map;
+
+/**
+ * Read access to the recovery related parameters of the LV0 automator.
+ *
+ * @see LV0AutomatorController
+ * @see LV0AutomatorStatusMonitor
+ */
+public interface ILV0AutomatorStatus {
+
+    /**
+     * @return Whether or not a recovery is currently ongoing.
+     */
+    boolean isRecoveryOngoing() throws LV0AutomatorControlException;
+
+    /**
+     * @return The currently ongoing (global) recovery action.
+     */
+    String getRecoveryAction() throws LV0AutomatorControlException;
+
+    /**
+     * @return Currently ongoing subsystem recovery actions by subsystem.
+     */
+    Map<String, String> getSubsystemRecoveryActions() throws LV0AutomatorControlException;
+}
@@ -17,12 +17,17 @@ import java.util.Map;
  * Makes use of the RCMS framework's ParameterRelayRemote class.
  */
 @SuppressWarnings("rawtypes")
-public class LV0AutomatorController extends FMController {
+public class LV0AutomatorController extends FMController implements ILV0AutomatorStatus {
 
 	public static final String SUBSYSTEM_SCHEDULE_RECYCLE = "Recycle";
 	public static final String SUBSYSTEM_SCHEDULE_RECONFIGURE = "Reconfigure";
 	public static final String SUBSYSTEM_SCHEDULE_NONE = "None";
 
+	/**
+	 * Beans of the schedule and fault commands, shared by all controllers
+	 */
+	static final ParameterBeanCache COMMAND_BEANS = new ParameterBeanCache(256);
+
 
 	public LV0AutomatorController(String senderURI) throws LV0AutomatorControlException{
 		super(senderURI);
@@ -101,13 +106,13 @@ public class LV0AutomatorController extends FMController {
 		}
 	}
 
-	private static final FunctionManagerParameterBean buildSetScheduleBean(String subsystemName, String schedule) {
+	private static final FunctionManagerParameterBean[] buildSetScheduleBean(String subsystemName, String schedule) {
 		Map<String, String> requestMap = new HashMap<>();
 		requestMap.put("command", "subsystemSchedule");
 		requestMap.put("system", subsystemName);
 		requestMap.put("schedule", schedule);
 
-		return mapToBean(requestMap);
+		return COMMAND_BEANS.get(requestMap);
 	}
 
 	/**
@@ -121,7 +126,7 @@ public class LV0AutomatorController extends FMController {
 	 *             If there was an error setting the GUI_COMMAND parameter.
 	 */
 	public void setSchedule(String subsystemName, String schedule) throws LV0AutomatorControlException {
-		FunctionManagerParameterBean[] setScheduleBean = { buildSetScheduleBean(subsystemName, schedule) };
+		FunctionManagerParameterBean[] setScheduleBean = buildSetScheduleBean(subsystemName, schedule);
 		try {
 			this.parameterRelay.setParameter(this.URIs, setScheduleBean, this.senderURI);
 		} catch (ParameterServiceException psEx) {
@@ -129,12 +134,13 @@ public class LV0AutomatorController extends FMController {
 		}
 	}
 
-	private static final FunctionManagerParameterBean buildSetSchedulesBean(Map<String, String> schedules) {
+	private static final FunctionManagerParameterBean[] buildSetSchedulesBean(Map<String, String> schedules) {
 		Map<String, Object> requestMap = new HashMap<>();
 		requestMap.put("command", "subsystemSchedules");
-		requestMap.put("schedules", schedules);
+		// copy, the caller may modify the map that is part of the cache key
+		requestMap.put("schedules", new HashMap<>(schedules));
 
-		return mapToBean(requestMap);
+		return COMMAND_BEANS.get(requestMap);
 	}
 
 	/**
@@ -147,7 +153,7 @@ public class LV0AutomatorController extends FMController {
 	 *             If there was an error setting the GUI_COMMAND parameter.
 	 */
 	public void setSchedules(Map<String, String> schedules) throws LV0AutomatorControlException {
-		FunctionManagerParameterBean[] setScheduleBean = { buildSetSchedulesBean(schedules) };
+		FunctionManagerParameterBean[] setScheduleBean = buildSetSchedulesBean(schedules);
 		try {
 			this.parameterRelay.setParameter(this.URIs, setScheduleBean, this.senderURI);
 		} catch (ParameterServiceException psEx) {
@@ -155,13 +161,13 @@ public class LV0AutomatorController extends FMController {
 		}
 	}
 
-	private static final FunctionManagerParameterBean buildSetFaultBean(String subsystemName, boolean atFault) {
+	private static final FunctionManagerParameterBean[] buildSetFaultBean(String subsystemName, boolean atFault) {
 		Map<String, String> requestMap = new HashMap<>();
 		requestMap.put("command", "subsystemFault");
 		requestMap.put("system", subsystemName);
 		requestMap.put("atFault", Boolean.toString(atFault));
 
-		return mapToBean(requestMap);
+		return COMMAND_BEANS.get(requestMap);
 	}
 
 	/**
@@ -175,7 +181,7 @@ public class LV0AutomatorController extends FMController {
 	 *             If there was an error setting the GUI_COMMAND parameter.
 	 */
 	public void setFault(String subsystemName, boolean atFault) throws LV0AutomatorControlException {
-		FunctionManagerParameterBean[] setFaultBean = { buildSetFaultBean(subsystemName, atFault) };
+		FunctionManagerParameterBean[] setFaultBean = buildSetFaultBean(subsystemName, atFault);
 		try {
 			this.parameterRelay.setParameter(this.URIs, setFaultBean, this.senderURI);
 		} catch (ParameterServiceException psEx) {
@@ -183,12 +189,13 @@ public class LV0AutomatorController extends FMController {
 		}
 	}
 
-	private static final FunctionManagerParameterBean buildSetFaultsBean(Map<String, Boolean> faults) {
+	private static final FunctionManagerParameterBean[] buildSetFaultsBean(Map<String, Boolean> faults) {
 		Map<String, Object> requestMap = new HashMap<>();
 		requestMap.put("command", "subsystemFaults");
-		requestMap.put("faults", faults);
+		// copy, the caller may modify the map that is part of the cache key
+		requestMap.put("faults", new HashMap<>(faults));
 
-		return mapToBean(requestMap);
+		return COMMAND_BEANS.get(requestMap);
 	}
 
 	/**
@@ -200,7 +207,7 @@ public class LV0AutomatorController extends FMController {
 	 *             If there was an error setting the GUI_COMMAND parameter.
 	 */
 	public void setFaults(Map<String, Boolean> faults) throws LV0AutomatorControlException {
-		FunctionManagerParameterBean[] setScheduleBean = { buildSetFaultsBean(faults) };
+		FunctionManagerParameterBean[] setScheduleBean = buildSetFaultsBean(faults);
 		try {
 			this.parameterRelay.setParameter(this.URIs, setScheduleBean, this.senderURI);
 		} catch (ParameterServiceException psEx) {
@@ -316,6 +323,7 @@ public class LV0AutomatorController extends FMController {
 	 * @throws LV0AutomatorControlException
 	 *             If there was a problem retrieving the parameter.
 	 */
+	@Override
 	public String getRecoveryAction() throws LV0AutomatorControlException {
 		try {
 			FunctionManagerParameterBean[] parameterBeans = this.parameterRelay.getParameter(this.URIs,
@@ -346,6 +354,7 @@ public class LV0AutomatorController extends FMController {
 	 * @throws LV0AutomatorControlException
 	 *             If there was a problem retrieving the parameter.
 	 */
+	@Override
 	public Map<String, String> getSubsystemRecoveryActions() throws LV0AutomatorControlException {
 		try {
 			FunctionManagerParameterBean[] parameterBeans = this.parameterRelay.getParameter(this.URIs,
@@ -373,6 +382,7 @@ public class LV0AutomatorController extends FMController {
 	 * @throws LV0AutomatorControlException
 	 *             If there was a problem retrieving the parameter.
 	 */
+	@Override
 	public boolean isRecoveryOngoing() throws LV0AutomatorControlException {
 		try {
 			FunctionManagerParameterBean[] parameterBeans = this.parameterRelay.getParameter(this.URIs,
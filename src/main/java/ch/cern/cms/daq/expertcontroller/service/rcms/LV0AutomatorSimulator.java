@@ -0,0 +1,317 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import rcms.fm.fw.service.command.CommandServiceException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the LV0 automator and the level zero FM, enabled with rcms.simulator.enabled=true.
+ * <p>
+ * Controllers borrowed from the {@link FMControllerPool} then act on this simulator instead of the remote FM. It keeps
+ * the recovery parameters (RECOVERY_ONGOING, RECOVERY_ACTION, SUBSYSTEM_RECOVERY_ACTIONS, SUBSYSTEM_SCHEDULE,
+ * SUBSYSTEM_FAULTS) and counts the TTCHardReset commands. Started recovery goes through the stop, recovery and start
+ * phases of given duration, subsystems are recovered according to their schedules. Parameter changes are pushed to
+ * the {@link LV0AutomatorStatusMonitor} like the LV0 automator notifications.
+ * <p>
+ * Every call takes the configured latency plus random jitter and fails with given probability, so that the whole
+ * controller can be load tested without the CMS network.
+ */
+@Component
+@ConditionalOnProperty(name = "rcms.simulator.enabled", havingValue = "true")
+public class LV0AutomatorSimulator {
+
+    private static Logger logger = Logger.getLogger(LV0AutomatorSimulator.class);
+
+    static final String ACTION_NONE = "None";
+    static final String ACTION_STOPPING = "Stopping run";
+    static final String ACTION_RECOVERING = "Recovering subsystems";
+    static final String ACTION_STARTING = "Starting run";
+
+    /**
+     * Latency of every call in milliseconds
+     */
+    @Value("${rcms.simulator.latency:20}")
+    private long latency;
+
+    /**
+     * Maximum random latency in milliseconds added to every call
+     */
+    @Value("${rcms.simulator.jitter:10}")
+    private long jitter;
+
+    /**
+     * Probability that the call fails, 0 to 1
+     */
+    @Value("${rcms.simulator.failure-rate:0}")
+    private double failureRate;
+
+    /**
+     * Duration of every phase of the recovery in milliseconds
+     */
+    @Value("${rcms.simulator.phase-duration:500}")
+    private long phaseDuration;
+
+    @Autowired(required = false)
+    private LV0AutomatorStatusMonitor statusMonitor;
+
+    private ScheduledThreadPoolExecutor phases;
+
+    private boolean recoveryOngoing;
+
+    private String recoveryAction = ACTION_NONE;
+
+    private final Map<String, String> subsystemRecoveryActions = new HashMap<>();
+
+    private final Map<String, String> schedules = new HashMap<>();
+
+    private final Map<String, Boolean> faults = new HashMap<>();
+
+    /**
+     * Incremented by every started and interrupted recovery, phases of the older recovery are ignored
+     */
+    private long generation;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong recoveries = new AtomicLong();
+    private final AtomicLong interrupts = new AtomicLong();
+    private final AtomicLong ttcHardResets = new AtomicLong();
+
+    public LV0AutomatorSimulator() {
+    }
+
+    LV0AutomatorSimulator(long latency, long jitter, double failureRate, long phaseDuration,
+                          LV0AutomatorStatusMonitor statusMonitor) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.failureRate = failureRate;
+        this.phaseDuration = phaseDuration;
+        this.statusMonitor = statusMonitor;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        logger.info("Level zero FM is simulated, latency " + latency + "+" + jitter + " ms, failure rate "
+                            + failureRate + ", recovery phase " + phaseDuration + " ms");
+        phases = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "lv0a-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        phases.shutdownNow();
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Build controller of the simulated LV0 automator
+     */
+    LV0AutomatorController automatorController(String senderURI) throws LV0AutomatorControlException {
+        return new SimulatedLV0AutomatorController(senderURI, this);
+    }
+
+    /**
+     * Build controller of the simulated level zero FM
+     */
+    L0Controller l0Controller(String senderURI) throws LV0AutomatorControlException, CommandServiceException {
+        return new SimulatedL0Controller(senderURI, this);
+    }
+
+    void startRecovery() throws LV0AutomatorControlException {
+        call("startRecovery");
+        long started;
+        synchronized (this) {
+            started = ++generation;
+            recoveries.incrementAndGet();
+            subsystemRecoveryActions.clear();
+            changeAction(true, ACTION_STOPPING);
+        }
+        phases.schedule(() -> recoverSubsystems(started), phaseDuration, TimeUnit.MILLISECONDS);
+    }
+
+    void interruptRecovery() throws LV0AutomatorControlException {
+        call("interruptRecovery");
+        synchronized (this) {
+            generation++;
+            interrupts.incrementAndGet();
+            subsystemRecoveryActions.clear();
+            if (recoveryOngoing) {
+                changeAction(false, ACTION_NONE);
+            }
+        }
+    }
+
+    void setSchedules(Map<String, String> schedules) throws LV0AutomatorControlException {
+        call("setSchedules");
+        synchronized (this) {
+            this.schedules.putAll(schedules);
+        }
+    }
+
+    void setFaults(Map<String, Boolean> faults) throws LV0AutomatorControlException {
+        call("setFaults");
+        synchronized (this) {
+            this.faults.putAll(faults);
+        }
+    }
+
+    Map<String, String> getSchedules() throws LV0AutomatorControlException {
+        call("getSchedule");
+        synchronized (this) {
+            return new HashMap<>(schedules);
+        }
+    }
+
+    Map<String, Boolean> getFaults() throws LV0AutomatorControlException {
+        call("getFaults");
+        synchronized (this) {
+            return new HashMap<>(faults);
+        }
+    }
+
+    boolean isRecoveryOngoing() throws LV0AutomatorControlException {
+        call("isRecoveryOngoing");
+        synchronized (this) {
+            return recoveryOngoing;
+        }
+    }
+
+    String getRecoveryAction() throws LV0AutomatorControlException {
+        call("getRecoveryAction");
+        synchronized (this) {
+            return recoveryAction;
+        }
+    }
+
+    Map<String, String> getSubsystemRecoveryActions() throws LV0AutomatorControlException {
+        call("getSubsystemRecoveryActions");
+        synchronized (this) {
+            return new HashMap<>(subsystemRecoveryActions);
+        }
+    }
+
+    /**
+     * @return false if the command failed
+     */
+    boolean sendTTCHardReset() {
+        try {
+            call("TTCHardReset");
+        } catch (LV0AutomatorControlException e) {
+            return false;
+        }
+        ttcHardResets.incrementAndGet();
+        return true;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getRecoveries() {
+        return recoveries.get();
+    }
+
+    public long getInterrupts() {
+        return interrupts.get();
+    }
+
+    public long getTtcHardResets() {
+        return ttcHardResets.get();
+    }
+
+    private void recoverSubsystems(long recovery) {
+        synchronized (this) {
+            if (recovery != generation) {
+                return;
+            }
+            schedules.forEach((subsystem, schedule) -> {
+                if (!LV0AutomatorController.SUBSYSTEM_SCHEDULE_NONE.equals(schedule)) {
+                    subsystemRecoveryActions.put(subsystem, schedule);
+                }
+            });
+            changeAction(true, ACTION_RECOVERING);
+        }
+        phases.schedule(() -> startRun(recovery), phaseDuration, TimeUnit.MILLISECONDS);
+    }
+
+    private void startRun(long recovery) {
+        synchronized (this) {
+            if (recovery != generation) {
+                return;
+            }
+            subsystemRecoveryActions.clear();
+            changeAction(true, ACTION_STARTING);
+        }
+        phases.schedule(() -> finish(recovery), phaseDuration, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish(long recovery) {
+        synchronized (this) {
+            if (recovery != generation) {
+                return;
+            }
+            // executed schedules and faults are consumed
+            schedules.replaceAll((subsystem, schedule) -> LV0AutomatorController.SUBSYSTEM_SCHEDULE_NONE);
+            faults.clear();
+            changeAction(false, ACTION_NONE);
+        }
+    }
+
+    /**
+     * Must be called holding the lock of the simulator so that the notifications are pushed in order of changes
+     */
+    private void changeAction(boolean ongoing, String action) {
+        recoveryOngoing = ongoing;
+        recoveryAction = action;
+        logger.debug("Simulated recovery " + (ongoing ? "ongoing: " : "not ongoing: ") + action);
+        if (statusMonitor != null) {
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put(LV0AutomatorStatusMonitor.RECOVERY_ONGOING, Boolean.toString(ongoing));
+            parameters.put(LV0AutomatorStatusMonitor.RECOVERY_ACTION, action);
+            statusMonitor.onParameterNotification(parameters);
+        }
+    }
+
+    /**
+     * Simulate the latency and failures of the remote call
+     */
+    private void call(String name) throws LV0AutomatorControlException {
+        calls.incrementAndGet();
+        long delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LV0AutomatorControlException("Interrupted during simulated " + name, e);
+            }
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            failures.incrementAndGet();
+            throw new LV0AutomatorControlException("Simulated failure of " + name);
+        }
+    }
+}
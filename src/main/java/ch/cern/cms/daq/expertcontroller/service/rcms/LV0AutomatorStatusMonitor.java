@@ -0,0 +1,154 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Watches the LV0 automator while the recovery is ongoing.
+ * <p>
+ * Parameter changes pushed by the LV0 automator (see {@link #onParameterNotification(Map)}) wake up the waiting
+ * thread immediately and are used instead of remote calls. Pushed end of the recovery is only trusted once the
+ * recovery has been seen ongoing, otherwise it may be a late notification of the interrupt that preceded the start and
+ * it is confirmed by a remote call.
+ * <p>
+ * Between the notifications the parameters are polled. Until the LV0 automator has pushed anything the period is the
+ * maximum, the load on the FM is the same as with fixed polling. Once it pushes, the polling uses adaptive backoff: the
+ * period starts at minimum and doubles up to maximum while the recovery action stays the same.
+ */
+@Component
+public class LV0AutomatorStatusMonitor {
+
+    public static final String RECOVERY_ONGOING = "RECOVERY_ONGOING";
+    public static final String RECOVERY_ACTION = "RECOVERY_ACTION";
+
+    private static Logger logger = Logger.getLogger(LV0AutomatorStatusMonitor.class);
+
+    /**
+     * Initial polling period in milliseconds
+     */
+    @Value("${rcms.poll.min:50}")
+    private long minPollPeriod;
+
+    /**
+     * Maximum polling period in milliseconds
+     */
+    @Value("${rcms.poll.max:1000}")
+    private long maxPollPeriod;
+
+    /**
+     * Latest parameter values pushed by the LV0 automator, not yet consumed by the waiting thread
+     */
+    private final Map<String, String> pushedParameters = new HashMap<>();
+
+    /**
+     * LV0 automator has pushed its parameters at least once
+     */
+    private volatile boolean pushing;
+
+    public LV0AutomatorStatusMonitor() {
+    }
+
+    public LV0AutomatorStatusMonitor(long minPollPeriod, long maxPollPeriod) {
+        this.minPollPeriod = minPollPeriod;
+        this.maxPollPeriod = maxPollPeriod;
+    }
+
+    /**
+     * Called when the LV0 automator notifies about changed parameters.
+     *
+     * @param parameters changed parameters, name to value
+     */
+    public void onParameterNotification(Map<String, String> parameters) {
+        logger.debug("LV0A parameters pushed: " + parameters);
+        pushing = true;
+        synchronized (pushedParameters) {
+            pushedParameters.putAll(parameters);
+            pushedParameters.notifyAll();
+        }
+    }
+
+    /**
+     * Forget the parameters pushed so far. Called before the recovery is started, the notifications pushed afterwards
+     * belong to the new recovery.
+     */
+    public void expectRecovery() {
+        synchronized (pushedParameters) {
+            pushedParameters.clear();
+        }
+    }
+
+    /**
+     * Blocks until the LV0 automator reports that recovery is no longer ongoing. The recovery is started after
+     * {@link #expectRecovery()}.
+     *
+     * @param automator      source of the automator parameters
+     * @param statusConsumer consumer of the new recovery actions, may be null
+     * @throws InterruptedException when waiting thread has been interrupted
+     */
+    public void awaitRecoveryEnd(ILV0AutomatorStatus automator, Consumer<String> statusConsumer)
+            throws LV0AutomatorControlException, InterruptedException {
+
+        long period = pushing ? minPollPeriod : maxPollPeriod;
+        String lastRecoveryAction = null;
+        boolean seenOngoing = false;
+
+        while (true) {
+            Map<String, String> pushed = takePushedParameters();
+
+            boolean recoveryOngoing;
+            if (!pushed.containsKey(RECOVERY_ONGOING)) {
+                recoveryOngoing = automator.isRecoveryOngoing();
+            } else if (Boolean.parseBoolean(pushed.get(RECOVERY_ONGOING)) || seenOngoing) {
+                recoveryOngoing = Boolean.parseBoolean(pushed.get(RECOVERY_ONGOING));
+            } else {
+                logger.debug("Pushed end of recovery before its start, confirming");
+                recoveryOngoing = automator.isRecoveryOngoing();
+            }
+
+            if (!recoveryOngoing) {
+                return;
+            }
+            seenOngoing = true;
+
+            String recoveryAction = pushed.containsKey(RECOVERY_ACTION)
+                    ? pushed.get(RECOVERY_ACTION)
+                    : automator.getRecoveryAction();
+
+            logger.trace(recoveryAction);
+            if (logger.isTraceEnabled()) {
+                logger.trace(automator.getSubsystemRecoveryActions());
+            }
+
+            if (!Objects.equals(lastRecoveryAction, recoveryAction)) {
+                if (statusConsumer != null) {
+                    logger.info("New L0A status: " + recoveryAction);
+                    statusConsumer.accept(recoveryAction);
+                }
+                period = pushing ? minPollPeriod : maxPollPeriod;
+            } else {
+                period = Math.min(period * 2, maxPollPeriod);
+            }
+            lastRecoveryAction = recoveryAction;
+
+            synchronized (pushedParameters) {
+                if (pushedParameters.isEmpty()) {
+                    pushedParameters.wait(period);
+                }
+            }
+        }
+    }
+
+    private Map<String, String> takePushedParameters() {
+        synchronized (pushedParameters) {
+            Map<String, String> pushed = new HashMap<>(pushedParameters);
+            pushedParameters.clear();
+            return pushed;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import rcms.fm.fw.parameter.bean.FunctionManagerParameterBean;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used GUI_COMMAND beans by their command map. Recoveries repeat the same schedules and faults, so
+ * the beans are built once and then shared like the constant command beans of the controllers.
+ * <p>
+ * Command maps are used as keys and must not be modified after the call.
+ */
+class ParameterBeanCache {
+
+    private final Map<Map<String, ?>, FunctionManagerParameterBean[]> beans;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    ParameterBeanCache(int capacity) {
+        this.beans = new LinkedHashMap<Map<String, ?>, FunctionManagerParameterBean[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Map<String, ?>, FunctionManagerParameterBean[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return beans of the command, built if not cached
+     */
+    FunctionManagerParameterBean[] get(Map<String, ?> command) {
+        synchronized (beans) {
+            FunctionManagerParameterBean[] cached = beans.get(command);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        // serialization is done outside of the lock, concurrent misses of one command build it twice
+        misses.incrementAndGet();
+        FunctionManagerParameterBean[] built = {FMController.mapToBean(command)};
+        synchronized (beans) {
+            FunctionManagerParameterBean[] cached = beans.putIfAbsent(command, built);
+            return cached != null ? cached : built;
+        }
+    }
+
+    int size() {
+        synchronized (beans) {
+            return beans.size();
+        }
+    }
+
+    /**
+     * @return ratio of commands served by cached beans
+     */
+    double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
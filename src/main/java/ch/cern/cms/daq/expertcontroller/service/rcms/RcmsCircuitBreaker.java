@@ -0,0 +1,207 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker and bulkhead in front of the calls to the level zero FM.
+ * <p>
+ * When the FM is slow or down every call blocks for the full network timeout. After given number of consecutive
+ * failures the circuit opens and calls fail immediately with {@link RcmsUnavailableException}. When the open
+ * duration passes, one call is let through as a probe (half open): its success closes the circuit, its failure opens
+ * it again.
+ * <p>
+ * Bulkhead limits the number of calls in progress. Call that does not get a place within the maximum wait fails
+ * without being made, so that blocked calls do not pile up on the request threads.
+ */
+@Component
+public class RcmsCircuitBreaker implements PublicMetrics {
+
+    private static Logger logger = Logger.getLogger(RcmsCircuitBreaker.class);
+
+    public enum State {
+        Closed, Open, HalfOpen
+    }
+
+    /**
+     * Call to the level zero FM
+     */
+    @FunctionalInterface
+    public interface RcmsCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Number of consecutive failures that opens the circuit
+     */
+    @Value("${rcms.circuit.failure-threshold:3}")
+    private int failureThreshold;
+
+    /**
+     * Time in milliseconds the circuit stays open before the probe call
+     */
+    @Value("${rcms.circuit.open-duration:10000}")
+    private long openDuration;
+
+    /**
+     * Maximum number of calls in progress
+     */
+    @Value("${rcms.bulkhead.max-calls:8}")
+    private int maxCalls;
+
+    /**
+     * Maximum time in milliseconds the call waits for a place in the bulkhead
+     */
+    @Value("${rcms.bulkhead.max-wait:100}")
+    private long maxWait;
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private Semaphore bulkhead;
+
+    private State state = State.Closed;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    public RcmsCircuitBreaker() {
+    }
+
+    RcmsCircuitBreaker(int failureThreshold, long openDuration, int maxCalls, long maxWait, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.maxCalls = maxCalls;
+        this.maxWait = maxWait;
+        this.clock = clock;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        bulkhead = new Semaphore(maxCalls, true);
+    }
+
+    /**
+     * Make the call unless the circuit is open or the bulkhead is full
+     *
+     * @param name name of the call, for the log
+     * @return result of the call
+     * @throws RcmsUnavailableException if the call was not made
+     * @throws E                        if the call failed
+     */
+    public <T, E extends Exception> T call(String name, RcmsCall<T, E> call) throws E, RcmsUnavailableException {
+        boolean probe = permit(name);
+
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.incrementAndGet();
+            if (probe) {
+                abandonProbe();
+            }
+            throw new RcmsUnavailableException("Too many calls to level zero FM in progress, " + name + " not made");
+        }
+
+        try {
+            T result = call.call();
+            onSuccess();
+            return result;
+        } catch (Exception e) {
+            onFailure(name, e);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.Open && clock.getAsLong() - openedAt >= openDuration) {
+            // next call will be the probe
+            return State.HalfOpen;
+        }
+        return state;
+    }
+
+    /**
+     * @return whether the call is the half open probe
+     * @throws RcmsUnavailableException if the circuit is open or the probe is in progress
+     */
+    private synchronized boolean permit(String name) throws RcmsUnavailableException {
+        switch (state) {
+            case Closed:
+                return false;
+            case Open:
+                if (clock.getAsLong() - openedAt >= openDuration) {
+                    logger.info("Circuit to level zero FM half open, probing with " + name);
+                    state = State.HalfOpen;
+                    return true;
+                }
+                break;
+            case HalfOpen:
+                break;
+        }
+        rejected.incrementAndGet();
+        throw new RcmsUnavailableException("Circuit to level zero FM is " + state + ", " + name + " not made");
+    }
+
+    private synchronized void abandonProbe() {
+        if (state == State.HalfOpen) {
+            // let the next call probe
+            state = State.Open;
+            openedAt = clock.getAsLong() - openDuration;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.Closed) {
+            logger.info("Level zero FM responds, circuit closed");
+        }
+        state = State.Closed;
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure(String name, Exception e) {
+        failures.incrementAndGet();
+        consecutiveFailures++;
+        if (state == State.HalfOpen || (state == State.Closed && consecutiveFailures >= failureThreshold)) {
+            logger.warn("Circuit to level zero FM opened for " + openDuration + " ms after " + consecutiveFailures
+                                + " failures, last " + name + ": " + e.getMessage());
+            state = State.Open;
+            openedAt = clock.getAsLong();
+            opened.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("rcms.circuit.state", getState().ordinal()));
+        metrics.add(new Metric<>("rcms.circuit.opened", opened.get()));
+        metrics.add(new Metric<>("rcms.circuit.failures", failures.get()));
+        metrics.add(new Metric<>("rcms.circuit.rejected", rejected.get()));
+        metrics.add(new Metric<>("rcms.bulkhead.available", bulkhead.availablePermits()));
+        return metrics;
+    }
+}
@@ -1,14 +1,22 @@
 package ch.cern.cms.daq.expertcontroller.service.rcms;
 
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.service.LatencyMetrics;
 import lombok.Setter;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import rcms.fm.fw.service.command.CommandServiceException;
 
+import javax.annotation.PreDestroy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 
@@ -17,6 +25,11 @@ public class RcmsController {
 
     private static Logger logger = Logger.getLogger(RcmsController.class);
 
+    /**
+     * Sender URI used for the status checks and interrupts
+     */
+    private static final String LOCAL_SENDER_URI = "lv0a-controller.local";
+
     @Value("${rcms.uri}")
     private String AUTOMATOR_URI;
 
@@ -33,6 +46,45 @@ public class RcmsController {
     @Setter
     private Consumer<String> rcmsStatusConsumer;
 
+    @Autowired
+    private LV0AutomatorStatusMonitor statusMonitor;
+
+    @Autowired
+    private FMControllerPool controllerPool;
+
+    @Autowired
+    private LatencyMetrics latencyMetrics;
+
+    @Autowired(required = false)
+    private RcmsCircuitBreaker circuitBreaker;
+
+    /**
+     * Whether faults of the job are sent at the same time as its schedules, over other controller. Both are written to
+     * the GUI command parameter of the LV0 automator, off by default: faults are sent before schedules
+     */
+    @Value("${rcms.parallel-commands:false}")
+    private boolean parallelCommands;
+
+    /**
+     * Sends the commands that are independent of the ones sent by the recovering thread
+     */
+    private final ExecutorService commandSender = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "rcms-command");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * LV0 automator executes one recovery at a time. Jobs of procedures running in parallel are executed one after
+     * another.
+     */
+    private final ReentrantLock recoveryLock = new ReentrantLock(true);
+
+    /**
+     * Owner of the job lastly executed by the LV0 automator, null if it is not known
+     */
+    private volatile Object recoveryOwner;
+
 
     public RcmsController() {
         logger.info("RCMS controller will use following automator URI: " + AUTOMATOR_URI);
@@ -41,19 +93,60 @@ public class RcmsController {
 
 
     public void execute(RecoveryJob recoveryJob) throws LV0AutomatorControlException, CommandServiceException {
+        execute(recoveryJob, null, null);
+    }
+
+    /**
+     * Execute the job on behalf of given owner. Waits if LV0 automator executes job of other owner.
+     *
+     * @param owner          owner of the job, e.g. executor of the partition
+     * @param statusConsumer consumer of the RCMS status changes of this job, default one is used if null
+     */
+    public void execute(RecoveryJob recoveryJob, Object owner, Consumer<String> statusConsumer)
+            throws LV0AutomatorControlException, CommandServiceException {
+        execute(recoveryJob, owner, statusConsumer, null);
+    }
+
+    /**
+     * @param startConsumer called when the job gets the LV0 automator and starts to be executed, may be null
+     * @see #execute(RecoveryJob, Object, Consumer)
+     */
+    public void execute(RecoveryJob recoveryJob, Object owner, Consumer<String> statusConsumer,
+                        Runnable startConsumer) throws LV0AutomatorControlException, CommandServiceException {
 
         logger.info("Recovery job submitted to RCMS controller: " + recoveryJob.toCompactString());
-        // check if this is a ttchr request
-        if (isTTCHardResetOnlyRequest(recoveryJob)) {
-            logger.debug("Request generates TTC Hard Reset");
-            sendTTCHardReset();
-        }
-        // TODO: check if this should be executed
-        if (isLongRecovery(recoveryJob)) {
-            logger.debug("Request generates recover & wait");
-            recoverAndWait(recoveryJob);
+        long submitted = System.nanoTime();
+        try {
+            recoveryLock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LV0AutomatorControlException("Interrupted while waiting for LV0 automator", e);
         }
+        record("lock-wait", submitted);
 
+        try {
+            recoveryOwner = owner;
+            if (startConsumer != null) {
+                startConsumer.run();
+            }
+            // check if this is a ttchr request
+            if (isTTCHardResetOnlyRequest(recoveryJob)) {
+                logger.debug("Request generates TTC Hard Reset");
+                sendTTCHardReset();
+            }
+            // TODO: check if this should be executed
+            if (isLongRecovery(recoveryJob)) {
+                logger.debug("Request generates recover & wait");
+                if (statusConsumer == null) {
+                    recoverAndWait(recoveryJob);
+                } else {
+                    recoverAndWait(recoveryJob, statusConsumer);
+                }
+            }
+        } finally {
+            recoveryLock.unlock();
+            record("execute", submitted);
+        }
     }
 
     private boolean isTTCHardResetOnlyRequest(RecoveryJob recoveryJob) {
@@ -89,19 +182,48 @@ public class RcmsController {
     // TODO: change to private/protected
     public void sendTTCHardReset() throws CommandServiceException, LV0AutomatorControlException {
         logger.info("Issuing TTCHardReset");
-        L0Controller controller = new L0Controller(senderURI);
-        controller.addURI(L0_URI);
-        controller.sendTTCHardReset();
+        L0Controller controller = controllerPool.borrowL0Controller(senderURI, L0_URI);
+        boolean healthy = false;
+        long start = System.nanoTime();
+        try {
+            guarded("ttc-hard-reset", () -> {
+                controller.sendTTCHardReset();
+                return null;
+            });
+            healthy = true;
+        } finally {
+            record("ttc-hard-reset", start);
+            controllerPool.release(controller, healthy);
+        }
         logger.info("TTCHardReset executed");
     }
 
     protected void recoverAndWait(RecoveryJob recoveryJob) throws LV0AutomatorControlException {
+        recoverAndWait(recoveryJob, rcmsStatusConsumer);
+    }
 
-        LV0AutomatorController controller = new LV0AutomatorController(senderURI);
+    protected void recoverAndWait(RecoveryJob recoveryJob, Consumer<String> statusConsumer)
+            throws LV0AutomatorControlException {
 
-        controller.addURI(AUTOMATOR_URI);
+        LV0AutomatorController controller = controllerPool.borrowAutomatorController(senderURI, AUTOMATOR_URI);
+        boolean healthy = false;
+        try {
+            recover(recoveryJob, controller, statusConsumer);
+            healthy = true;
+        } finally {
+            controllerPool.release(controller, healthy);
+        }
+    }
 
-        controller.interruptRecovery();
+    private void recover(RecoveryJob recoveryJob, LV0AutomatorController controller, Consumer<String> statusConsumer)
+            throws LV0AutomatorControlException {
+
+        long start = System.nanoTime();
+        guarded("interrupt-recovery", () -> {
+            controller.interruptRecovery();
+            return null;
+        });
+        record("interrupt-recovery", start);
 
         logger.debug("Setting the schedule for " + recoveryJob.toCompactString());
 
@@ -121,64 +243,207 @@ public class RcmsController {
             schedules.put(subsystem, LV0AutomatorController.SUBSYSTEM_SCHEDULE_NONE);
         }
 
+        Map<String, Boolean> faults = new HashMap<>();
         for (String subsystem : recoveryJob.getFault()) {
             logger.debug("Setting at-fault for: " + subsystem);
-            controller.setFault(subsystem, true);
+            faults.put(subsystem, true);
         }
 
+        setSchedulesAndFaults(controller, schedules, faults);
 
-        controller.setSchedules(schedules);
-        controller.startRecovery();
-
-        String lastRecoveryAction = null;
+        // notifications of the interrupt above must not be taken for the end of the new recovery
+        statusMonitor.expectRecovery();
+        start = System.nanoTime();
+        guarded("start-recovery", () -> {
+            controller.startRecovery();
+            return null;
+        });
+        record("start-recovery", start);
 
-        while (controller.isRecoveryOngoing()) {
-            String recoveryAction = controller.getRecoveryAction();
-            Map<String, String> subsytemRecoveryActions = controller.getSubsystemRecoveryActions();
+        start = System.nanoTime();
+        try {
+            statusMonitor.awaitRecoveryEnd(controller, statusConsumer);
+        } catch (InterruptedException intEx) {
+            logger.info("Waiting for the end of recovery has been interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            record("await-recovery-end", start);
+        }
+    }
 
-            logger.trace(recoveryAction);
-            logger.trace(subsytemRecoveryActions);
+    /**
+     * Faults are sent before schedules, each in one call. With parallel commands enabled faults are sent over other
+     * controller at the same time as schedules, LV0 automator is ready to start the recovery after one round-trip. Only
+     * for the LV0 automator that keeps concurrent writes of its GUI command parameter.
+     */
+    private void setSchedulesAndFaults(LV0AutomatorController controller, Map<String, String> schedules,
+                                       Map<String, Boolean> faults) throws LV0AutomatorControlException {
+
+        if (faults.isEmpty()) {
+            setSchedules(controller, schedules);
+            return;
+        }
+        if (!parallelCommands) {
+            setFaults(controller, faults);
+            setSchedules(controller, schedules);
+            return;
+        }
 
-            if(lastRecoveryAction != recoveryAction){
-                if (rcmsStatusConsumer != null) {
-                    logger.info("New L0A status: " + recoveryAction);
-                    rcmsStatusConsumer.accept(recoveryAction);
-                }
-            }
-            lastRecoveryAction = recoveryAction;
+        Future<Void> faultsSent = commandSender.submit(() -> {
+            LV0AutomatorController faultsController = controllerPool.borrowAutomatorController(senderURI,
+                                                                                               AUTOMATOR_URI);
+            boolean healthy = false;
             try {
-                Thread.sleep(1000);
-            } catch (InterruptedException intEx) {
-                intEx.printStackTrace();
-                break;
+                setFaults(faultsController, faults);
+                healthy = true;
+            } finally {
+                controllerPool.release(faultsController, healthy);
+            }
+            return null;
+        });
+
+        LV0AutomatorControlException failure = null;
+        try {
+            setSchedules(controller, schedules);
+        } catch (LV0AutomatorControlException e) {
+            failure = e;
+        }
+
+        try {
+            faultsSent.get();
+        } catch (InterruptedException e) {
+            faultsSent.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LV0AutomatorControlException("Interrupted while setting the faults", e);
+        } catch (ExecutionException e) {
+            if (failure == null) {
+                failure = e.getCause() instanceof LV0AutomatorControlException
+                        ? (LV0AutomatorControlException) e.getCause()
+                        : new LV0AutomatorControlException("Setting the faults failed", e.getCause());
             }
         }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void setSchedules(LV0AutomatorController controller, Map<String, String> schedules)
+            throws LV0AutomatorControlException {
+        long start = System.nanoTime();
+        try {
+            guarded("set-schedules", () -> {
+                controller.setSchedules(schedules);
+                return null;
+            });
+        } finally {
+            record("set-schedules", start);
+        }
     }
 
+    private void setFaults(LV0AutomatorController controller, Map<String, Boolean> faults)
+            throws LV0AutomatorControlException {
+        long start = System.nanoTime();
+        try {
+            guarded("set-faults", () -> {
+                controller.setFaults(faults);
+                return null;
+            });
+        } finally {
+            record("set-faults", start);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        commandSender.shutdownNow();
+    }
+
+    /**
+     * @return whether LV0 automator executes a recovery, null if it is not known. Fails fast when the circuit to the
+     * level zero FM is open.
+     */
     public Boolean isRecoveryOngoing() {
 
-        LV0AutomatorController controller = null;
+        long start = System.nanoTime();
         try {
-            controller = new LV0AutomatorController("lv0a-controller.local");
-            controller.addURI(AUTOMATOR_URI);
-            return controller.isRecoveryOngoing();
+            return guarded("is-recovery-ongoing", () -> {
+                LV0AutomatorController controller = controllerPool.borrowAutomatorController(LOCAL_SENDER_URI,
+                                                                                             AUTOMATOR_URI);
+                boolean healthy = false;
+                try {
+                    Boolean recoveryOngoing = controller.isRecoveryOngoing();
+                    healthy = true;
+                    return recoveryOngoing;
+                } finally {
+                    controllerPool.release(controller, healthy);
+                }
+            });
+        } catch (RcmsUnavailableException e) {
+            logger.warn(e.getMessage());
+            return null;
         } catch (LV0AutomatorControlException e) {
             e.printStackTrace();
             return null;
+        } finally {
+            record("is-recovery-ongoing", start);
         }
     }
 
+    /**
+     * Interrupt the LV0 automator recovery only if its job was executed on behalf of given owner. Prevents one partition
+     * from interrupting the recovery of the other.
+     */
+    public void interrupt(Object owner) {
+        if (recoveryOwner != owner) {
+            logger.info("LV0 automator executes job of other owner, not interrupting");
+            return;
+        }
+        interrupt();
+    }
+
     public void interrupt() {
 
-        LV0AutomatorController controller = null;
+        long start = System.nanoTime();
         try {
-            controller = new LV0AutomatorController("lv0a-controller.local");
-            controller.addURI(AUTOMATOR_URI);
-            controller.interruptRecovery();
+            guarded("interrupt", () -> {
+                LV0AutomatorController controller = controllerPool.borrowAutomatorController(LOCAL_SENDER_URI,
+                                                                                             AUTOMATOR_URI);
+                boolean healthy = false;
+                try {
+                    controller.interruptRecovery();
+                    healthy = true;
+                    return null;
+                } finally {
+                    controllerPool.release(controller, healthy);
+                }
+            });
+        } catch (RcmsUnavailableException e) {
+            logger.warn(e.getMessage());
         } catch (LV0AutomatorControlException e) {
             e.printStackTrace();
+        } finally {
+            record("interrupt", start);
         }
     }
 
+    /**
+     * Make the call to the level zero FM through the circuit breaker, see {@link RcmsCircuitBreaker}
+     */
+    private <T, E extends Exception> T guarded(String name, RcmsCircuitBreaker.RcmsCall<T, E> call)
+            throws E, RcmsUnavailableException {
+        if (circuitBreaker == null) {
+            return call.call();
+        }
+        return circuitBreaker.call(name, call);
+    }
 
+    /**
+     * Record duration of the RCMS call, see {@link LatencyMetrics}
+     */
+    private void record(String call, long startNanos) {
+        if (latencyMetrics != null) {
+            latencyMetrics.recordSince("rcms." + call, startNanos);
+        }
+    }
 }
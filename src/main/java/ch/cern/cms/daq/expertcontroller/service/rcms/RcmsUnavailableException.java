@@ -0,0 +1,13 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+/**
+ * Call to the level zero FM was not made, the circuit is open or too many calls are in progress
+ */
+public class RcmsUnavailableException extends LV0AutomatorControlException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RcmsUnavailableException(String message) {
+		super(message);
+	}
+}
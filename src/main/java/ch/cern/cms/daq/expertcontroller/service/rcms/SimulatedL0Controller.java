@@ -0,0 +1,24 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import rcms.fm.fw.service.command.CommandServiceException;
+
+/**
+ * Level zero controller sending the commands to the {@link LV0AutomatorSimulator} instead of the remote FM
+ */
+class SimulatedL0Controller extends L0Controller {
+
+    private final LV0AutomatorSimulator simulator;
+
+    SimulatedL0Controller(String senderURI, LV0AutomatorSimulator simulator)
+            throws LV0AutomatorControlException, CommandServiceException {
+        super(senderURI);
+        this.simulator = simulator;
+    }
+
+    @Override
+    public void sendTTCHardReset() throws CommandServiceException {
+        if (!simulator.sendTTCHardReset()) {
+            throw new CommandServiceException();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * LV0 automator controller acting on the {@link LV0AutomatorSimulator} instead of the remote FM
+ */
+class SimulatedLV0AutomatorController extends LV0AutomatorController {
+
+    private final LV0AutomatorSimulator simulator;
+
+    SimulatedLV0AutomatorController(String senderURI, LV0AutomatorSimulator simulator)
+            throws LV0AutomatorControlException {
+        super(senderURI);
+        this.simulator = simulator;
+    }
+
+    @Override
+    public void startRecovery() throws LV0AutomatorControlException {
+        simulator.startRecovery();
+    }
+
+    @Override
+    public void startRun() throws LV0AutomatorControlException {
+        throw new LV0AutomatorControlException("Starting the run is not simulated");
+    }
+
+    @Override
+    public void interruptRecovery() throws LV0AutomatorControlException {
+        simulator.interruptRecovery();
+    }
+
+    @Override
+    public void setSchedule(String subsystemName, String schedule) throws LV0AutomatorControlException {
+        simulator.setSchedules(Collections.singletonMap(subsystemName, schedule));
+    }
+
+    @Override
+    public void setSchedules(Map<String, String> schedules) throws LV0AutomatorControlException {
+        simulator.setSchedules(schedules);
+    }
+
+    @Override
+    public void setFault(String subsystemName, boolean atFault) throws LV0AutomatorControlException {
+        simulator.setFaults(Collections.singletonMap(subsystemName, atFault));
+    }
+
+    @Override
+    public void setFaults(Map<String, Boolean> faults) throws LV0AutomatorControlException {
+        simulator.setFaults(faults);
+    }
+
+    @Override
+    public Map<String, String> getSchedule() throws LV0AutomatorControlException {
+        return simulator.getSchedules();
+    }
+
+    @Override
+    public Map<String, Boolean> getFaults() throws LV0AutomatorControlException {
+        return simulator.getFaults();
+    }
+
+    @Override
+    public String getRecoveryAction() throws LV0AutomatorControlException {
+        return simulator.getRecoveryAction();
+    }
+
+    @Override
+    public Map<String, String> getSubsystemRecoveryActions() throws LV0AutomatorControlException {
+        return simulator.getSubsystemRecoveryActions();
+    }
+
+    @Override
+    public boolean isRecoveryOngoing() throws LV0AutomatorControlException {
+        return simulator.isRecoveryOngoing();
+    }
+}
@@ -0,0 +1,132 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
+
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Approvals awaited from the operators, one per job (procedure id, step index). Executor registers the approval
+ * before asking for it and continues when the returned future completes, no thread waits for the operator.
+ * <p>
+ * Approval completes exactly once: with the first decision, with {@link FSMEvent#Timeout} when the timeout passes
+ * or by cancellation when the executor moves on by itself (finished, interrupt). Decisions arriving later are
+ * ignored.
+ */
+public class ApprovalBroker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApprovalBroker.class);
+
+    private final ConcurrentMap<Key, CompletableFuture<FSMEvent>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Scheduler of the timeouts, may be shared
+     */
+    private final ScheduledExecutorService timeoutScheduler;
+
+    /**
+     * Time in milliseconds given to the operator to decide
+     */
+    private volatile long timeout;
+
+    public ApprovalBroker(ScheduledExecutorService timeoutScheduler, long timeout) {
+        this.timeoutScheduler = timeoutScheduler;
+        this.timeout = timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Register approval of the job. Approval registered before for the same job is cancelled.
+     *
+     * @return approval, completed with the decided event or Timeout
+     */
+    public CompletableFuture<FSMEvent> register(Long procedureId, Integer stepIndex) {
+        Key key = new Key(procedureId, stepIndex);
+        CompletableFuture<FSMEvent> approval = new CompletableFuture<>();
+
+        CompletableFuture<FSMEvent> superseded = pending.put(key, approval);
+        if (superseded != null) {
+            superseded.cancel(false);
+        }
+
+        ScheduledFuture<?> timer = timeoutScheduler.schedule(() -> {
+            if (approval.complete(FSMEvent.Timeout)) {
+                logger.info("Approval of " + key + " timed out after " + timeout + " ms");
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+
+        approval.whenComplete((event, e) -> {
+            timer.cancel(false);
+            pending.remove(key, approval);
+        });
+        return approval;
+    }
+
+    /**
+     * @return whether approval of the job is awaited
+     */
+    public boolean isPending(Long procedureId, Integer stepIndex) {
+        return pending.containsKey(new Key(procedureId, stepIndex));
+    }
+
+    /**
+     * Complete the approval of the job with the decision
+     *
+     * @return false if the approval is not awaited: never registered, already decided, timed out or cancelled
+     */
+    public boolean decide(Long procedureId, Integer stepIndex, FSMEvent decision) {
+        CompletableFuture<FSMEvent> approval = pending.get(new Key(procedureId, stepIndex));
+        return approval != null && approval.complete(decision);
+    }
+
+    /**
+     * @return number of awaited approvals
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private static class Key {
+
+        private final Long procedureId;
+
+        private final Integer stepIndex;
+
+        Key(Long procedureId, Integer stepIndex) {
+            this.procedureId = procedureId;
+            this.stepIndex = stepIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(procedureId, other.procedureId) && Objects.equals(stepIndex, other.stepIndex);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(procedureId, stepIndex);
+        }
+
+        @Override
+        public String toString() {
+            return "procedure " + procedureId + " step " + stepIndex;
+        }
+    }
+}
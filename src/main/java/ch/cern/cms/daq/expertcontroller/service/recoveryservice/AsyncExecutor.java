@@ -0,0 +1,520 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.ApprovalResponse;
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSM;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.IFSMListener;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Executor that never parks a thread waiting for a consumer. Consumers are submitted to the (shared) thread pool and
+ * the FSM transition is triggered from their completion. Timeouts are enforced by the (shared) scheduler. Many
+ * executors can therefore share a few threads.
+ * <p>
+ * Calls to consumers of one executor are run in order of submission, e.g. RCMS interrupt never overtakes the job
+ * that it interrupts. Results of the stages that are no longer awaited (interrupted, timed out, finished) are
+ * ignored.
+ *
+ * @see Executor synchronous counterpart
+ */
+@Builder
+public class AsyncExecutor implements IExecutor {
+
+    /**
+     * FSM of recovery procedure. Makes sure that the recovery procedure follows defined transition model.
+     */
+    protected FSM fsm;
+
+    /**
+     * Listener of the FSM. Collects FSM transition events.
+     */
+    protected IFSMListener listener;
+
+    /**
+     * Consumer of the recovery job. Called when there is job to execute.
+     */
+    protected Function<RecoveryJob, FSMEvent> jobConsumer;
+
+    /**
+     * Consumer of the approval request. Called when job needs approval.
+     */
+    protected Function<RecoveryJob, FSMEvent> jobApprovalConsumer;
+
+    /**
+     * Consumer of system observation. Called when system needs to be observed.
+     */
+    protected Supplier<FSMEvent> observationConsumer;
+
+    /**
+     * Observation window in milliseconds after given job, used when there is no observation consumer. Observation
+     * ends with NoEffect when the window passes, earlier on finished signal or on the same problem reported again.
+     */
+    protected Function<RecoveryJob, Integer> observationWindow;
+
+    /**
+     * Consumer of recovery report. Called when recovery procedure is finished or is updated.
+     */
+    protected BiConsumer<RecoveryProcedure, List<Event>> statusReportConsumer;
+
+    protected Runnable interruptConsumer;
+
+    /**
+     * Check if underlying job consumer is busy. In RCMS case that might be the manual recovery.
+     */
+    protected Supplier<Boolean> isBusyConsumer;
+
+    /**
+     * Thread pool that runs the consumers. May be shared between executors.
+     */
+    protected ExecutorService executorService;
+
+    /**
+     * Scheduler of the timeouts. May be shared between executors.
+     */
+    protected ScheduledExecutorService timeoutScheduler;
+
+    /**
+     * Timeout period to approve the recovery job. In seconds.
+     */
+    protected Integer approvalTimeout;
+
+    /**
+     * Timeout period for recovery job execution. In seconds.
+     */
+    protected Integer executionTimeout;
+
+    /**
+     * Approvals awaited from the operators, optional. Without broker approval response transitions FSM directly.
+     */
+    protected ApprovalBroker approvalBroker;
+
+    @Getter
+    protected RecoveryProcedure executedProcedure;
+
+    /**
+     * Last published snapshot, read without locking
+     */
+    private volatile ExecutorStatus status;
+
+    @Getter
+    @Setter
+    private boolean forceAccept;
+
+    private static Logger logger = LoggerFactory.getLogger(AsyncExecutor.class);
+
+    /**
+     * Guards FSM transitions, they may be triggered from consumer completion, timeout and external signals
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Stage currently awaited by the FSM
+     */
+    private Stage stage;
+
+    /**
+     * Completion of the last submitted consumer call, next call is chained after it
+     */
+    private CompletableFuture<Void> lane;
+
+    /**
+     * Completed when the currently executed procedure is reported
+     */
+    private CompletableFuture<List<Event>> completion;
+
+    /**
+     * Approval of the current job awaited from the operator
+     */
+    private CompletableFuture<FSMEvent> approval;
+
+    @Override
+    public List<Event> start(RecoveryProcedure recoveryProcedure) {
+        return start(recoveryProcedure, false);
+    }
+
+    @Override
+    public List<Event> start(RecoveryProcedure recoveryProcedure, boolean wait) {
+        CompletableFuture<List<Event>> procedureCompletion = new CompletableFuture<>();
+
+        synchronized (lock) {
+            executedProcedure = recoveryProcedure;
+            executedProcedure.getProcedure().stream().forEach(j -> j.setProcedureId(executedProcedure.getId()));
+            completion = procedureCompletion;
+
+            listener.setCurrentProcedure(recoveryProcedure);
+            publishStatus();
+            fsm.transition(FSMEvent.RecoveryStarts);
+        }
+
+        if (wait) {
+            try {
+                procedureCompletion.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.warn("Procedure finished with exception", e.getCause());
+            }
+        }
+        return listener.getSummary();
+    }
+
+    @Override
+    public void approveRecovery(ApprovalResponse approvalResponse) {
+
+        synchronized (lock) {
+            if (executedProcedure == null) {
+                throw new IllegalStateException("Received approval response when executor is in Idle state");
+            }
+
+            if (listener.getCurrentJob() == null) {
+                throw new IllegalStateException("Received approval when executor has no current job");
+            }
+
+            Integer awaitedStep = listener.getCurrentJob().getStepIndex();
+            if (approvalBroker != null && !approvalBroker.isPending(executedProcedure.getId(), awaitedStep)) {
+                logger.info("No approval awaited for current job, response ignored: " + approvalResponse);
+                return;
+            }
+
+            FSMEvent event = Executor.decideOnApproval(approvalResponse, executedProcedure, listener, this);
+            if (event == null) {
+                return;
+            }
+            if (approvalBroker == null) {
+                cancelStage();
+                fsm.transition(event);
+            } else if (!approvalBroker.decide(executedProcedure.getId(), awaitedStep, event)) {
+                logger.info("Approval has already been completed, decision " + event + " ignored");
+            }
+        }
+    }
+
+    @Override
+    public FSMEvent forceSelectJob(int stepIndex) {
+        RecoveryJob recoveryJob = executedProcedure.outOfSequenceJob(stepIndex);
+        if (recoveryJob == null) {
+            listener.onApprovedJobNotExist();
+            return null;
+        } else {
+            listener.setCurrentJob(recoveryJob);
+            return FSMEvent.OtherJobAccepted;
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return isBusyConsumer.get();
+    }
+
+    @Override
+    public void interrupt() {
+        synchronized (lock) {
+            if (fsm.getState() == State.Idle) {
+                logger.info("Executor is idle, interrupt ignored");
+                return;
+            }
+            cancelApproval();
+            callInterruptConsumer();
+            // stage completed but not yet handled is ignored as well
+            cancelStage();
+            fsm.transition(FSMEvent.Interrupt);
+        }
+    }
+
+    @Override
+    public boolean finished() {
+        synchronized (lock) {
+            State state = fsm.getState();
+            if (state == State.Observe) {
+                logger.info("Cancelling observation job on finished");
+                cancelStage();
+                fsm.transition(FSMEvent.Finished);
+            } else if (state == State.Recovering) {
+                return false;
+            } else if (state == State.AwaitingApproval || state == State.SelectingJob) {
+                cancelStage();
+                fsm.transition(FSMEvent.FinishedByItself);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public ExecutorStatus getStatus() {
+        ExecutorStatus current = status;
+        // FSM may have moved on without listener publishing, e.g. right after initialization
+        if (current == null || current.getState() != fsm.getState()) {
+            publishStatus();
+            current = status;
+        }
+        return current;
+    }
+
+    @Override
+    public void publishStatus() {
+        // procedure is copied, not while the FSM updates it
+        synchronized (lock) {
+            status = ExecutorStatus.snapshot(fsm.getState(), listener.getSummary(), executedProcedure);
+        }
+    }
+
+    /**
+     * Approval is registered in the broker before the consumer asks for it. When the consumer decides by itself
+     * (e.g. procedure accepted), the approval is cancelled.
+     */
+    @Override
+    public FSMEvent callApprovalRequestConsumer(RecoveryJob recoveryJob) {
+        synchronized (lock) {
+            CompletableFuture<FSMEvent> registered = awaitApproval(recoveryJob);
+            submit(() -> {
+                FSMEvent event = jobApprovalConsumer.apply(recoveryJob);
+                if (event != null && registered != null && !registered.cancel(false)) {
+                    // operator has already decided, FSM continues from the decision
+                    return null;
+                }
+                return event;
+            }, approvalTimeout, FSMEvent.Exception);
+        }
+        return null;
+    }
+
+    @Override
+    public FSMEvent callRecoveryExecutionConsumer(RecoveryJob recoveryJob) {
+        submit(() -> jobConsumer.apply(recoveryJob), executionTimeout, FSMEvent.JobException);
+        return null;
+    }
+
+    /**
+     * Reschedules the timeout of the executed job, so that it counts from now
+     */
+    @Override
+    public void jobStarted() {
+        synchronized (lock) {
+            Stage executed = stage;
+            if (fsm.getState() == State.Recovering && executed != null && executed.timer != null
+                    && executed.timer.cancel(false)) {
+                executed.timer = timeoutScheduler.schedule(
+                        () -> onTimeout(executed), executionTimeout, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Override
+    public FSMEvent callObservationConsumer() {
+        if (observationConsumer == null) {
+            observe(Executor.observationWindow(observationWindow, listener.getCurrentJob()));
+        } else {
+            submit(observationConsumer, null, FSMEvent.Exception);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean noEffect() {
+        synchronized (lock) {
+            if (observationConsumer == null && fsm.getState() == State.Observe && stage != null) {
+                logger.info("Ending observation with no effect");
+                cancelStage();
+                fsm.transition(FSMEvent.NoEffect);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void callInterruptConsumer() {
+        synchronized (lock) {
+            if (stage != null && !stage.isDone()) {
+                logger.info("Interrupting last job");
+                cancelStage();
+                if (interruptConsumer != null) {
+                    chain(interruptConsumer);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void callStatusReportConsumer(RecoveryProcedure recoveryProcedure, List<Event> report) {
+        recoveryProcedure.setEnd(OffsetDateTime.now());
+        statusReportConsumer.accept(recoveryProcedure, report);
+        if (completion != null) {
+            completion.complete(report);
+        }
+    }
+
+    @Override
+    public void rcmsStatusUpdate(String status) {
+        listener.onNewRcmsStatus(status);
+    }
+
+    /**
+     * Submit the consumer call as the stage awaited by FSM
+     *
+     * @param consumer         consumer to call
+     * @param timeout          timeout in seconds, null for no timeout
+     * @param onExceptionEvent event to transition with when consumer throws exception
+     */
+    private void submit(Supplier<FSMEvent> consumer, Integer timeout, FSMEvent onExceptionEvent) {
+        synchronized (lock) {
+            Stage submitted = new Stage(consumer, onExceptionEvent);
+            stage = submitted;
+            if (timeout != null) {
+                submitted.timer = timeoutScheduler.schedule(() -> onTimeout(submitted), timeout, TimeUnit.SECONDS);
+            }
+            chain(submitted);
+        }
+    }
+
+    /**
+     * Await the end of observation without occupying a thread of the pool. The stage is run by the scheduler when
+     * the window passes, finished signal, interrupt or {@link #noEffect()} cancel it before.
+     *
+     * @param window observation window in milliseconds
+     */
+    private void observe(long window) {
+        synchronized (lock) {
+            Stage observation = new Stage(() -> {
+                logger.info("Observation window of " + window + " ms passed");
+                return FSMEvent.NoEffect;
+            }, FSMEvent.Exception);
+            stage = observation;
+            observation.timer = timeoutScheduler.schedule(observation, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void chain(Runnable runnable) {
+        CompletableFuture<Void> previous = lane != null ? lane : CompletableFuture.completedFuture(null);
+        lane = previous.exceptionally(e -> null).thenRunAsync(runnable, executorService);
+    }
+
+    private void cancelStage() {
+        Stage cancelled = stage;
+        stage = null;
+        if (cancelled != null) {
+            cancelled.cancel(true);
+        }
+        cancelApproval();
+    }
+
+    /**
+     * Register approval of the job in the broker, FSM continues when the approval completes
+     *
+     * @return registered approval, null if there is no broker
+     */
+    private CompletableFuture<FSMEvent> awaitApproval(RecoveryJob recoveryJob) {
+        if (approvalBroker == null) {
+            return null;
+        }
+        CompletableFuture<FSMEvent> registered =
+                approvalBroker.register(executedProcedure.getId(), recoveryJob.getStepIndex());
+        approval = registered;
+        registered.whenComplete((event, e) -> {
+            if (event == null) {
+                return;
+            }
+            synchronized (lock) {
+                if (approval != registered || fsm.getState() != State.AwaitingApproval) {
+                    return;
+                }
+                approval = null;
+                cancelStage();
+                try {
+                    fsm.transition(event);
+                } catch (RuntimeException ex) {
+                    logger.error("Transition after approval failed", ex);
+                }
+            }
+        });
+        return registered;
+    }
+
+    private void cancelApproval() {
+        CompletableFuture<FSMEvent> awaited = approval;
+        approval = null;
+        if (awaited != null) {
+            awaited.cancel(false);
+        }
+    }
+
+    private void onTimeout(Stage timedOut) {
+        synchronized (lock) {
+            if (stage != timedOut) {
+                return;
+            }
+            logger.info("Stage timeouts");
+            cancelStage();
+            fsm.transition(FSMEvent.Timeout);
+        }
+    }
+
+    private void onCompletion(Stage completed) {
+        synchronized (lock) {
+            if (stage != completed) {
+                // stage has been cancelled, timed out or superseded. FSM event handled elsewhere.
+                return;
+            }
+            stage = null;
+
+            FSMEvent event;
+            try {
+                event = completed.get();
+            } catch (ExecutionException e) {
+                logger.info("Consumer finished with exception", e.getCause());
+                event = completed.onExceptionEvent;
+            } catch (InterruptedException | CancellationException e) {
+                return;
+            }
+
+            if (event != null) {
+                fsm.transition(event);
+            }
+        }
+    }
+
+    /**
+     * Consumer call awaited by FSM
+     */
+    private class Stage extends FutureTask<FSMEvent> {
+
+        private final FSMEvent onExceptionEvent;
+
+        private ScheduledFuture<?> timer;
+
+        Stage(Supplier<FSMEvent> consumer, FSMEvent onExceptionEvent) {
+            super(consumer::get);
+            this.onExceptionEvent = onExceptionEvent;
+        }
+
+        @Override
+        protected void done() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                onCompletion(this);
+            } catch (RuntimeException e) {
+                logger.error("Transition after consumer completion failed", e);
+            }
+        }
+    }
+}
@@ -19,10 +19,16 @@ import java.util.List;
 import java.util.concurrent.*;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 /**
  * Responsible for executing recovery jobs. Holds FSM. Defines what actions are taken on given FSM states.
+ * <p>
+ * FSM is transitioned only under the executor lock: by the thread of the procedure, on approval completion and on
+ * external signals (finished, interrupt, no effect, approval response). The lock is released while the transition
+ * waits for a consumer, so signals arriving meanwhile are handled at once and the waiting thread ignores the result
+ * of the call that was cancelled or superseded.
  */
 @Builder
 public class Executor implements IExecutor {
@@ -55,6 +61,12 @@ public class Executor implements IExecutor {
      */
     protected Supplier<FSMEvent> observationConsumer;
 
+    /**
+     * Observation window in milliseconds after given job, used when there is no observation consumer. Observation
+     * ends with NoEffect when the window passes, earlier on finished signal or on the same problem reported again.
+     */
+    protected Function<RecoveryJob, Integer> observationWindow;
+
     /**
      * Consumer of recovery report. Called when recovery procedure is finished or is updated.
      */
@@ -82,16 +94,51 @@ public class Executor implements IExecutor {
      */
     protected Integer executionTimeout;
 
+    /**
+     * Deadline of the executed job in nanoseconds of {@link System#nanoTime()}, restarted by {@link #jobStarted()}
+     */
+    private volatile long executionDeadline;
+
+    /**
+     * Approvals awaited from the operators, optional. Without broker approval response transitions FSM directly.
+     */
+    protected ApprovalBroker approvalBroker;
+
     @Getter
     protected RecoveryProcedure executedProcedure;
 
+    /**
+     * Last published snapshot, read without locking
+     */
+    private volatile ExecutorStatus status;
+
     private static Logger logger = LoggerFactory.getLogger(Executor.class);
 
     /**
-     * Future of the last thread handled by executor.
+     * Observation window in milliseconds when none is defined for the job
+     */
+    static final int DEFAULT_OBSERVATION_WINDOW = 10000;
+
+    /**
+     * Guards FSM transitions, see {@link #await(Future, long)} for the waits that release it
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Whether started procedure waits for its thread to take the lock, the executor is not idle anymore
+     */
+    private boolean starting;
+
+    /**
+     * Future of the last thread handled by executor. Consumer call awaited by FSM, replaced or cancelled under the lock.
      */
     private Future<FSMEvent> future;
 
+    /**
+     * Approval of the current job awaited from the operator
+     */
+    private volatile CompletableFuture<FSMEvent> approval;
+
     @Getter @Setter
     private boolean forceAccept;
 
@@ -100,20 +147,43 @@ public class Executor implements IExecutor {
         return start(recoveryProcedure, false);
     }
 
+    /**
+     * Returns once the thread of the procedure first releases the lock, i.e. FSM is not idle until the procedure ends.
+     * Signals sent after that apply to the started procedure.
+     */
     @Override
     public List<Event> start(RecoveryProcedure recoveryProcedure, boolean wait) {
-        executedProcedure = recoveryProcedure;
-        executedProcedure.getProcedure().stream().forEach(j->j.setProcedureId(executedProcedure.getId()));
+        synchronized (lock) {
+            if (fsm.getState() != State.Idle || starting) {
+                throw new IllegalStateException("Cannot start procedure when executor is in " + fsm.getState() + " state");
+            }
+            starting = true;
+            executedProcedure = recoveryProcedure;
+            executedProcedure.getProcedure().stream().forEach(j -> j.setProcedureId(executedProcedure.getId()));
+
+            listener.setCurrentProcedure(recoveryProcedure);
+            publishStatus();
+        }
 
-        listener.setCurrentProcedure(recoveryProcedure);
-        Thread thread = new Thread(() -> fsm.transition(FSMEvent.RecoveryStarts));
+        CountDownLatch started = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            synchronized (lock) {
+                starting = false;
+                started.countDown();
+                fsm.transition(FSMEvent.RecoveryStarts);
+            }
+        });
         thread.start();
-        if (wait) {
-            try {
+        try {
+            started.await();
+            synchronized (lock) {
+                // thread of the procedure waits for a consumer or has ended, FSM is not idle before its end
+            }
+            if (wait) {
                 thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         return listener.getSummary();
     }
@@ -121,13 +191,42 @@ public class Executor implements IExecutor {
     @Override
     public void approveRecovery(ApprovalResponse approvalResponse) {
 
-        if (executedProcedure == null) {
-            throw new IllegalStateException("Received approval response when executor is in Idle state");
-        }
+        synchronized (lock) {
+            if (executedProcedure == null) {
+                throw new IllegalStateException("Received approval response when executor is in Idle state");
+            }
+
+            if (listener.getCurrentJob() == null) {
+                throw new IllegalStateException("Received approval when executor has no current job");
+            }
+
+            Integer awaitedStep = listener.getCurrentJob().getStepIndex();
+            if (approvalBroker != null && !approvalBroker.isPending(executedProcedure.getId(), awaitedStep)) {
+                logger.info("No approval awaited for current job, response ignored: " + approvalResponse);
+                return;
+            }
 
-        if (listener.getCurrentJob() == null) {
-            throw new IllegalStateException("Received approval when executor has no current job");
+            FSMEvent event = decideOnApproval(approvalResponse, executedProcedure, listener, this);
+            if (event == null) {
+                return;
+            }
+            if (approvalBroker == null) {
+                cancelCall();
+                fsm.transition(event);
+            } else if (!approvalBroker.decide(executedProcedure.getId(), awaitedStep, event)) {
+                // approval completion transitions FSM on this thread, the lock is reentrant
+                logger.info("Approval has already been completed, decision " + event + " ignored");
+            }
         }
+    }
+
+    /**
+     * Decides which FSM event results from given approval response
+     *
+     * @return event to transition with, null if approval response has no effect
+     */
+    static FSMEvent decideOnApproval(ApprovalResponse approvalResponse, RecoveryProcedure executedProcedure,
+                                     IFSMListener listener, IExecutor executor) {
 
         Long defaultProcedureId = executedProcedure.getId();
         Integer defaultStepIndex = listener.getCurrentJob().getStepIndex();
@@ -141,7 +240,7 @@ public class Executor implements IExecutor {
 
             if(defaultProcedureContext){
                 logger.info("Accept all jobs in the procedure");
-                fsm.transition(FSMEvent.ProcedureAccepted);
+                return FSMEvent.ProcedureAccepted;
 
             } else{
                 logger.info(
@@ -162,21 +261,21 @@ public class Executor implements IExecutor {
 
             /* default job accepted */
             if (defaultJobContext && approvalResponse.getApproved()) {
-                fsm.transition(FSMEvent.JobAccepted);
+                return FSMEvent.JobAccepted;
             }
 
             /* default job rejected */
             else if (defaultJobContext && !approvalResponse.getApproved()) {
-                fsm.transition(FSMEvent.JobRejected);
+                return FSMEvent.JobRejected;
             }
 
             /* other job accepted */
             else if (!defaultJobContext && approvalResponse.getApproved()) {
-                FSMEvent event = forceSelectJob(approvalResponse.getStep());
+                FSMEvent event = executor.forceSelectJob(approvalResponse.getStep());
                 if (event != null) {
                     logger.info("Force selecting job resulted in event: " + event);
-                    fsm.transition(event);
                 }
+                return event;
             }
 
             /* other job rejected */
@@ -184,6 +283,7 @@ public class Executor implements IExecutor {
                 // don't do anything
             }
         }
+        return null;
     }
 
     public FSMEvent forceSelectJob(int stepIndex){
@@ -206,56 +306,156 @@ public class Executor implements IExecutor {
 
     @Override
     public void interrupt() {
-        callInterruptConsumer();
-        if (fsm.getState() == State.Observe) {
-            logger.info("Cancelling observation job on interrupt");
-            future.cancel(true);
+        synchronized (lock) {
+            if (fsm.getState() == State.Idle) {
+                logger.info("Executor is idle, interrupt ignored");
+                return;
+            }
+            cancelApproval();
+            callInterruptConsumer();
+            if (fsm.getState() == State.Idle) {
+                // procedure ended while RCMS job was being interrupted
+                return;
+            }
+            if (fsm.getState() == State.Observe) {
+                logger.info("Cancelling observation job on interrupt");
+            }
+            cancelCall();
+            fsm.transition(FSMEvent.Interrupt);
         }
-        fsm.transition(FSMEvent.Interrupt);
     }
 
     @Override
     public boolean finished() {
-        if (fsm.getState() == State.Observe) {
-            logger.info("Cancelling observation job on finished");
-            future.cancel(true);
-            fsm.transition(FSMEvent.Finished);
-        } else if (fsm.getState() == State.Recovering) {
-            return false;
-        } else if (fsm.getState() == State.AwaitingApproval || fsm.getState() == State.SelectingJob) {
-            fsm.transition(FSMEvent.FinishedByItself);
+        synchronized (lock) {
+            State state = fsm.getState();
+            if (state == State.Observe) {
+                logger.info("Cancelling observation job on finished");
+                cancelCall();
+                fsm.transition(FSMEvent.Finished);
+            } else if (state == State.Recovering) {
+                return false;
+            } else if (state == State.AwaitingApproval || state == State.SelectingJob) {
+                cancelCall();
+                cancelApproval();
+                fsm.transition(FSMEvent.FinishedByItself);
+            }
+            return true;
         }
-        return true;
     }
 
     @Override
     public ExecutorStatus getStatus() {
-        State currentState = fsm.getState();
-        List<Event> actionSummary = listener.getSummary();
-        return ExecutorStatus.builder().actionSummary(actionSummary).state(currentState).build();
+        ExecutorStatus current = status;
+        // FSM may have moved on without listener publishing, e.g. right after initialization
+        if (current == null || current.getState() != fsm.getState()) {
+            publishStatus();
+            current = status;
+        }
+        return current;
+    }
+
+    @Override
+    public void publishStatus() {
+        // procedure is copied, not while the FSM updates it
+        synchronized (lock) {
+            status = ExecutorStatus.snapshot(fsm.getState(), listener.getSummary(), executedProcedure);
+        }
     }
 
 
+    /**
+     * Approval is registered in the broker before the consumer asks for it. When the consumer decides by itself
+     * (e.g. procedure accepted), the approval is cancelled.
+     */
     @Override
     public FSMEvent callApprovalRequestConsumer(RecoveryJob recoveryJob) {
 
-        future = executorService.submit(() -> jobApprovalConsumer.apply(recoveryJob));
+        CompletableFuture<FSMEvent> registered = awaitApproval(recoveryJob);
+
+        FSMEvent event;
+        Future<FSMEvent> call = submit(() -> jobApprovalConsumer.apply(recoveryJob));
         try {
-            return future.get(approvalTimeout, TimeUnit.SECONDS);
+            event = await(call, TimeUnit.SECONDS.toMillis(approvalTimeout));
         } catch (InterruptedException e) {
-            return FSMEvent.Interrupt;
+            event = FSMEvent.Interrupt;
         } catch (ExecutionException e) {
-            return FSMEvent.Exception;
+            event = FSMEvent.Exception;
         } catch (TimeoutException e) {
-            return FSMEvent.Timeout;
+            event = FSMEvent.Timeout;
+        } catch (CancellationException e) {
+            // FSM moved on by a signal
+            return null;
+        }
+
+        if (call != future) {
+            // FSM moved on by the approval while the request was being sent
+            return null;
+        }
+        if (event != null && registered != null && !registered.cancel(false)) {
+            // operator has already decided, FSM continues from the decision
+            return null;
+        }
+        return event;
+    }
+
+    /**
+     * Register approval of the job in the broker, FSM continues when the approval completes
+     *
+     * @return registered approval, null if there is no broker
+     */
+    private CompletableFuture<FSMEvent> awaitApproval(RecoveryJob recoveryJob) {
+        if (approvalBroker == null) {
+            return null;
+        }
+        CompletableFuture<FSMEvent> registered =
+                approvalBroker.register(executedProcedure.getId(), recoveryJob.getStepIndex());
+        approval = registered;
+        registered.whenComplete((event, e) -> {
+            if (event == null) {
+                return;
+            }
+            synchronized (lock) {
+                if (approval != registered || fsm.getState() != State.AwaitingApproval) {
+                    return;
+                }
+                approval = null;
+                cancelCall();
+                try {
+                    fsm.transition(event);
+                } catch (RuntimeException ex) {
+                    logger.error("Transition after approval failed", ex);
+                }
+            }
+        });
+        return registered;
+    }
+
+    /**
+     * Cancel the call awaited by FSM. The result of the call is ignored even if it is already done, FSM has moved on.
+     */
+    private void cancelCall() {
+        if (future != null) {
+            future.cancel(true);
+            future = null;
+        }
+    }
+
+    private void cancelApproval() {
+        CompletableFuture<FSMEvent> awaited = approval;
+        approval = null;
+        if (awaited != null) {
+            awaited.cancel(false);
         }
     }
 
     @Override
     public FSMEvent callRecoveryExecutionConsumer(RecoveryJob recoveryJob) {
         try {
-            future = executorService.submit(() -> jobConsumer.apply(recoveryJob));
-            return future.get(executionTimeout, TimeUnit.SECONDS);
+            executionDeadline = executionDeadline();
+            Future<FSMEvent> call = submit(() -> jobConsumer.apply(recoveryJob));
+            FSMEvent event = await(call, () -> executionDeadline);
+            return call == future ? event : null;
         }
         // exception will be thrown only on external interrupt
         catch (InterruptedException e) {
@@ -274,11 +474,56 @@ public class Executor implements IExecutor {
         }
     }
 
+    /**
+     * Restarts the execution timeout and wakes up the thread awaiting the job, so that it waits until the new deadline
+     */
+    @Override
+    public void jobStarted() {
+        synchronized (lock) {
+            if (fsm.getState() == State.Recovering) {
+                executionDeadline = executionDeadline();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private long executionDeadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(executionTimeout);
+    }
+
+    @Override
+    public boolean noEffect() {
+        synchronized (lock) {
+            Future<FSMEvent> observation = future;
+            if (observationConsumer == null && fsm.getState() == State.Observe
+                    && observation instanceof CompletableFuture) {
+                logger.info("Ending observation with no effect");
+                return ((CompletableFuture<FSMEvent>) observation).complete(FSMEvent.NoEffect);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Resolves observation window of the job
+     *
+     * @param observationWindow window of the job, may be null or return null
+     * @return window in milliseconds
+     */
+    static long observationWindow(Function<RecoveryJob, Integer> observationWindow, RecoveryJob recoveryJob) {
+        Integer window = observationWindow != null ? observationWindow.apply(recoveryJob) : null;
+        return window != null ? window : DEFAULT_OBSERVATION_WINDOW;
+    }
+
     @Override
     public FSMEvent callObservationConsumer() {
-        future = executorService.submit(() -> observationConsumer.get());
+        if (observationConsumer == null) {
+            return awaitObservationEnd();
+        }
+        Future<FSMEvent> call = submit(() -> observationConsumer.get());
         try {
-            return future.get();
+            FSMEvent event = await(call);
+            return call == future ? event : null;
         }
         // exception will be thrown whenever external interrupt comes or finish signal arrives on observation period
         catch (InterruptedException e) {
@@ -290,7 +535,33 @@ public class Executor implements IExecutor {
             else
                 return null;
         } catch (ExecutionException e) {
-            e.printStackTrace();
+            logger.warn("Observer finished with exception", e.getCause());
+            return FSMEvent.Exception;
+        } catch (CancellationException e) {
+            logger.info("Observation cancelled by Executor");
+            // Cancellation happens on finish and interrupt. FSM event handled elsewhere.
+            return null;
+        }
+    }
+
+    /**
+     * Wait for the signal ending the observation, completed by {@link #noEffect()} or cancelled on finished and
+     * interrupt. No thread of the pool is used, but the executor thread is blocked until the observation ends, see
+     * {@link AsyncExecutor} for the executor that does not block.
+     */
+    private FSMEvent awaitObservationEnd() {
+        long window = observationWindow(observationWindow, listener.getCurrentJob());
+        CompletableFuture<FSMEvent> observation = new CompletableFuture<>();
+        observation.whenComplete((event, e) -> wakeUp());
+        future = observation;
+        try {
+            return await(observation, window);
+        } catch (TimeoutException e) {
+            logger.info("Observation window of " + window + " ms passed");
+            return FSMEvent.NoEffect;
+        } catch (InterruptedException e) {
+            return fsm.getState() == State.Observe ? FSMEvent.Interrupt : null;
+        } catch (ExecutionException e) {
             return FSMEvent.Exception;
         } catch (CancellationException e) {
             logger.info("Observation cancelled by Executor");
@@ -302,18 +573,27 @@ public class Executor implements IExecutor {
     @Override
     public void callInterruptConsumer() {
 
-        if (future != null && !future.isDone()) {
-            logger.info("Interrupting last job");
+        synchronized (lock) {
+            if (future != null && !future.isDone()) {
+                logger.info("Interrupting last job");
 
-            future.cancel(true);
-            Future future = executorService.submit(() -> interruptConsumer.run());
-            try {
-                future.get();
-                logger.info("Interruption completed");
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            } catch (ExecutionException e) {
-                e.printStackTrace();
+                future.cancel(true);
+                if (interruptConsumer == null) {
+                    return;
+                }
+                FutureTask<FSMEvent> interruption = newCall(() -> {
+                    interruptConsumer.run();
+                    return null;
+                });
+                executorService.execute(interruption);
+                try {
+                    await(interruption);
+                    logger.info("Interruption completed");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logger.warn("Interruption failed", e);
+                }
             }
         }
     }
@@ -324,10 +604,85 @@ public class Executor implements IExecutor {
         statusReportConsumer.accept(recoveryProcedure, report);
     }
 
+    /**
+     * Not guarded by the lock, updates come from the RCMS job running on the consumer thread, which may be awaited by
+     * the interrupt holding the lock.
+     */
     @Override
     public void rcmsStatusUpdate(String status) {
         listener.onNewRcmsStatus(status);
 
     }
 
+    /**
+     * Submit the consumer call, it becomes the call awaited by FSM
+     */
+    private Future<FSMEvent> submit(Callable<FSMEvent> consumer) {
+        FutureTask<FSMEvent> call = newCall(consumer);
+        future = call;
+        executorService.execute(call);
+        return call;
+    }
+
+    /**
+     * @return call waking up the threads waiting in {@link #await(Future, long)} when it is done or cancelled
+     */
+    private FutureTask<FSMEvent> newCall(Callable<FSMEvent> consumer) {
+        return new FutureTask<FSMEvent>(consumer) {
+            @Override
+            protected void done() {
+                wakeUp();
+            }
+        };
+    }
+
+    /**
+     * Wait for the call releasing the lock, so that signals are handled meanwhile. Calls must wake the waiting thread
+     * up when done, see {@link #newCall(Callable)}.
+     *
+     * @param timeout timeout in milliseconds
+     * @throws CancellationException if the call was cancelled
+     */
+    private <T> T await(Future<T> call, long timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        return await(call, () -> deadline);
+    }
+
+    /**
+     * @param deadline deadline in nanoseconds of {@link System#nanoTime()}, read again after every wake up
+     * @see #await(Future, long)
+     */
+    private <T> T await(Future<T> call, LongSupplier deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        synchronized (lock) {
+            while (!call.isDone()) {
+                long remaining = deadline.getAsLong() - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        }
+        return call.get();
+    }
+
+    /**
+     * @see #await(Future, long)
+     */
+    private <T> T await(Future<T> call) throws InterruptedException, ExecutionException {
+        synchronized (lock) {
+            while (!call.isDone()) {
+                lock.wait();
+            }
+        }
+        return call.get();
+    }
+
+    private void wakeUp() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
 }
@@ -6,21 +6,32 @@ import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
 import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
 import ch.cern.cms.daq.expertcontroller.service.IRecoveryService;
+import ch.cern.cms.daq.expertcontroller.service.LatencyMetrics;
+import ch.cern.cms.daq.expertcontroller.service.RecoveryProcedurePersister;
+import ch.cern.cms.daq.expertcontroller.service.StepEffectivenessStatistics;
 import ch.cern.cms.daq.expertcontroller.service.rcms.LV0AutomatorControlException;
 import ch.cern.cms.daq.expertcontroller.service.rcms.RcmsController;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSM;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMListener;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.IFSMListener;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.IStateDurationConsumer;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import rcms.fm.fw.service.command.CommandServiceException;
 
 import javax.annotation.PostConstruct;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -41,10 +52,35 @@ public class ExecutorFactory {
     @Autowired
     IExecutor executor;
 
+    @Autowired
+    RecoveryProcedurePersister recoveryProcedurePersister;
+
+    @Autowired
+    LatencyMetrics latencyMetrics;
+
+    @Autowired(required = false)
+    StepEffectivenessStatistics stepEffectivenessStatistics;
+
+    /**
+     * Default observation window in milliseconds
+     */
+    @Value("${observe.period:10000}")
+    Integer observePeriod;
+
+    /**
+     * Time in milliseconds given to the operator to approve the job
+     */
+    @Value("${approval.timeout:300000}")
+    long approvalTimeout;
+
     protected static RcmsController srcmsController;
     protected static RecoveryProcedureRepository srecoveryProcedureRepository;
     protected static IRecoveryService srecoveryService;
     protected static IExecutor sexecutor;
+    protected static RecoveryProcedurePersister srecoveryProcedurePersister;
+    protected static LatencyMetrics slatencyMetrics;
+    protected static StepEffectivenessStatistics sstepEffectivenessStatistics;
+    protected static Integer sobservePeriod;
 
 
     @PostConstruct
@@ -53,12 +89,33 @@ public class ExecutorFactory {
         ExecutorFactory.srecoveryProcedureRepository = recoveryProcedureRepository;
         ExecutorFactory.srecoveryService = recoveryService;
         ExecutorFactory.sexecutor = executor;
+        ExecutorFactory.srecoveryProcedurePersister = recoveryProcedurePersister;
+        ExecutorFactory.slatencyMetrics = latencyMetrics;
+        ExecutorFactory.sstepEffectivenessStatistics = stepEffectivenessStatistics;
+        ExecutorFactory.sobservePeriod = observePeriod;
+        approvalBroker.setTimeout(approvalTimeout);
 
         rcmsController.setRcmsStatusConsumer(rcmsStatusChangeConsumer);
     }
 
     private static Logger logger = LoggerFactory.getLogger(ExecutorFactory.class);
 
+    /**
+     * Thread pool shared by the consumers of all asynchronous executors
+     */
+    private static final ExecutorService sharedConsumerPool = Executors.newCachedThreadPool(daemonThreads("consumer"));
+
+    /**
+     * Scheduler of the timeouts shared by all asynchronous executors
+     */
+    private static final ScheduledExecutorService sharedTimeoutScheduler =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("timeout"));
+
+    /**
+     * Approvals awaited by all executors, timeouts share the scheduler of the asynchronous executors
+     */
+    public static final ApprovalBroker approvalBroker = new ApprovalBroker(sharedTimeoutScheduler, 300000);
+
     public static IExecutor build(
             Function<RecoveryJob, FSMEvent> approvalConsumer,
             Function<RecoveryJob, FSMEvent> recoveryJobConsumer,
@@ -71,13 +128,9 @@ public class ExecutorFactory {
             Supplier<Boolean> availabilityConsumer,
             Runnable interruptConsumer) {
 
-        IFSMListener listener = FSMListener.builder()
-                .persistResultsConsumer(persistConsumer)
-                .onUpdateConsumer(onUpdateConsumer)
-                .build();
+        IFSMListener listener = buildListener(persistConsumer, onUpdateConsumer);
 
-
-        FSM fsm = FSM.builder().listener(listener).build().initialize();
+        FSM fsm = FSM.builder().listener(listener).stateDurationConsumer(stateDurationConsumer).build().initialize();
         IExecutor executor = Executor.builder()
                 .fsm(fsm)
                 .listener(listener)
@@ -86,17 +139,105 @@ public class ExecutorFactory {
                 .jobConsumer(recoveryJobConsumer)
                 .statusReportConsumer(report)
                 .observationConsumer(observer)
+                .observationWindow(observationWindow)
+                .approvalTimeout(approvalTimeout)
+                .executionTimeout(executionTimeout)
+                .approvalBroker(approvalBroker)
+                .interruptConsumer(interruptConsumer)
+                .isBusyConsumer(availabilityConsumer)
+                .build();
+        ((FSMListener) listener).setExecutor(executor);
+
+
+        return executor;
+    }
+
+    /**
+     * Build executor that does not block threads while waiting for consumers. Consumers of all such executors share
+     * one thread pool.
+     *
+     * @see AsyncExecutor
+     */
+    public static IExecutor buildAsync(
+            Function<RecoveryJob, FSMEvent> approvalConsumer,
+            Function<RecoveryJob, FSMEvent> recoveryJobConsumer,
+            BiConsumer<RecoveryProcedure, List<Event>> report,
+            Supplier<FSMEvent> observer,
+            Integer approvalTimeout,
+            Integer executionTimeout,
+            Consumer<RecoveryProcedure> persistConsumer,
+            Consumer<RecoveryProcedure> onUpdateConsumer,
+            Supplier<Boolean> availabilityConsumer,
+            Runnable interruptConsumer) {
+
+        IFSMListener listener = buildListener(persistConsumer, onUpdateConsumer);
+
+        FSM fsm = FSM.builder().listener(listener).stateDurationConsumer(stateDurationConsumer).build().initialize();
+        IExecutor executor = AsyncExecutor.builder()
+                .fsm(fsm)
+                .listener(listener)
+                .executorService(sharedConsumerPool)
+                .timeoutScheduler(sharedTimeoutScheduler)
+                .jobApprovalConsumer(approvalConsumer)
+                .jobConsumer(recoveryJobConsumer)
+                .statusReportConsumer(report)
+                .observationConsumer(observer)
+                .observationWindow(observationWindow)
                 .approvalTimeout(approvalTimeout)
                 .executionTimeout(executionTimeout)
+                .approvalBroker(approvalBroker)
                 .interruptConsumer(interruptConsumer)
                 .isBusyConsumer(availabilityConsumer)
                 .build();
         ((FSMListener) listener).setExecutor(executor);
 
+        return executor;
+    }
 
+    /**
+     * Build executor of one of the partitions executed in parallel. RCMS job, interrupt, approval and status updates
+     * are bound to the built executor so that its interrupt does not stop LV0 automator recovery of other partition.
+     * Primary executor is built the same way, it is the first partition.
+     *
+     * @param async whether to build executor that does not block threads while waiting for consumers
+     * @see ExecutorPartitions
+     */
+    public static IExecutor buildPartitionExecutor(boolean async) {
+
+        AtomicReference<IExecutor> self = new AtomicReference<>();
+
+        IExecutor executor;
+        if (async) {
+            executor = buildAsync(manualApprovalConsumer(self::get), recoveryJobConsumer(self::get), report, null, 2,
+                                  600, persistResultsConsumer, onProcedureUpdateConsumer, isAvailableSupplier,
+                                  interruptConsumer(self::get));
+        } else {
+            executor = build(manualApprovalConsumer(self::get), recoveryJobConsumer(self::get), report, null, 2, 600,
+                             persistResultsConsumer, onProcedureUpdateConsumer, isAvailableSupplier,
+                             interruptConsumer(self::get));
+        }
+        self.set(executor);
         return executor;
     }
 
+    private static IFSMListener buildListener(Consumer<RecoveryProcedure> persistConsumer,
+                                              Consumer<RecoveryProcedure> onUpdateConsumer) {
+        return FSMListener.builder()
+                .persistResultsConsumer(persistConsumer)
+                .onUpdateConsumer(onUpdateConsumer)
+                .firstJobConsumer(firstJobConsumer)
+                .build();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "executor-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     public static Function<RecoveryJob, FSMEvent> automaticApprovalConsumer = recoveryJob -> {
 
         try {
@@ -109,55 +250,53 @@ public class ExecutorFactory {
 
     };
 
-    public static Function<RecoveryJob, FSMEvent> manualApprovalConsumer = recoveryJob -> {
-
-        ApprovalRequest approvalRequest = ApprovalRequest.builder()
-                .recoveryProcedureId(recoveryJob.getProcedureId())
-                .defaultStepIndex(recoveryJob.getStepIndex())
-                .build();
-
-        srecoveryService.onApprovalRequest(approvalRequest);
-        if(sexecutor.isForceAccept()){
-            return FSMEvent.JobAccepted;
-        }
+    /**
+     * Approval asked from the operator, accepted at once when the owning executor is forced to accept
+     */
+    public static Function<RecoveryJob, FSMEvent> manualApprovalConsumer(Supplier<IExecutor> owner) {
+        return recoveryJob -> {
 
-        return null;
+            ApprovalRequest approvalRequest = ApprovalRequest.builder()
+                    .recoveryProcedureId(recoveryJob.getProcedureId())
+                    .defaultStepIndex(recoveryJob.getStepIndex())
+                    .build();
 
-    };
-
-    public static Function<RecoveryJob, FSMEvent> recoveryJobConsumer = recoveryJob -> {
-        try {
-            logger.debug("Passing the recovery job: " + recoveryJob.toCompactString() + " to RCMS controller");
-            srcmsController.execute(recoveryJob);
-            return FSMEvent.JobCompleted;
-        } catch (CommandServiceException | LV0AutomatorControlException e) {
-            logger.warn("Job failed due to RCMS exception: " + e.getMessage());
-            return FSMEvent.JobException;
-        }
-    };
+            srecoveryService.onApprovalRequest(approvalRequest);
+            if (owner.get().isForceAccept()) {
+                return FSMEvent.JobAccepted;
+            }
 
+            return null;
 
-    public static Supplier<FSMEvent> fixedDelayObserver = () -> {
+        };
+    }
 
-        logger.info("Observing the system");
-//        try {
-//            Thread.sleep(1000);
-//        } catch (InterruptedException e) {
-//            e.printStackTrace();
-//        }
-//        if (Math.random() < 0.3) {
-//            logger.info("Received finished signal");
-//            return FSMEvent.Finished;
-//        }
+    /**
+     * RCMS job executed on behalf of the owning executor, RCMS status updates of the job go to its FSM
+     */
+    public static Function<RecoveryJob, FSMEvent> recoveryJobConsumer(Supplier<IExecutor> owner) {
+        return recoveryJob -> {
+            try {
+                logger.debug("Passing the recovery job: " + recoveryJob.toCompactString() + " to RCMS controller");
+                // execution timeout does not count the wait for the job of other partition
+                srcmsController.execute(recoveryJob, owner.get(), status -> owner.get().rcmsStatusUpdate(status),
+                                        () -> owner.get().jobStarted());
+                return FSMEvent.JobCompleted;
+            } catch (CommandServiceException | LV0AutomatorControlException e) {
+                logger.warn("Job failed due to RCMS exception: " + e.getMessage());
+                return FSMEvent.JobException;
+            }
+        };
+    }
 
-        try {
-            Thread.sleep(10000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * Observation window of the job: its own period if requested, observe.period otherwise
+     */
+    public static Function<RecoveryJob, Integer> observationWindow = recoveryJob -> {
+        if (recoveryJob != null && recoveryJob.getObservationPeriod() != null) {
+            return recoveryJob.getObservationPeriod();
         }
-        logger.info("Timeout of observation");
-        return FSMEvent.NoEffect;
-
+        return sobservePeriod;
     };
 
     public static Consumer<String> rcmsStatusChangeConsumer = status ->{
@@ -169,7 +308,38 @@ public class ExecutorFactory {
     public static Consumer<RecoveryProcedure> persistResultsConsumer = recoveryProcedure -> {
 
         logger.info("Updating recovery procedure " + recoveryProcedure.getId());
-        srecoveryProcedureRepository.save(recoveryProcedure);
+        long start = System.nanoTime();
+        srecoveryProcedurePersister.persist(recoveryProcedure);
+        if (slatencyMetrics != null) {
+            slatencyMetrics.recordSince("persistence.persist", start);
+        }
+        if (sstepEffectivenessStatistics != null) {
+            sstepEffectivenessStatistics.record(recoveryProcedure);
+        }
+    };
+
+    /**
+     * Time spent in the FSM states, in total and by the event that ended the state. Time in AwaitingApproval is the
+     * approval wait.
+     */
+    public static IStateDurationConsumer stateDurationConsumer = (state, exitEvent, nanos) -> {
+        if (slatencyMetrics != null) {
+            slatencyMetrics.record("fsm.state." + state, nanos);
+            slatencyMetrics.record("fsm.transition." + state + "." + exitEvent, nanos);
+            if (state == State.AwaitingApproval) {
+                slatencyMetrics.record("recovery.approval-wait", nanos);
+            }
+        }
+    };
+
+    /**
+     * Time from the receipt of the request to the first job of its procedure passed to RCMS, so that waiting for
+     * admission is included
+     */
+    public static Consumer<RecoveryProcedure> firstJobConsumer = recoveryProcedure -> {
+        if (slatencyMetrics != null && recoveryProcedure.getReceived() != null) {
+            slatencyMetrics.recordSince("recovery.first-job", recoveryProcedure.getReceived());
+        }
     };
 
     public static Consumer<RecoveryProcedure> onProcedureUpdateConsumer = recoveryProcedure -> {
@@ -177,11 +347,15 @@ public class ExecutorFactory {
         srecoveryService.onRecoveryProcedureStateUpdate();
     };
 
-    public static Runnable interruptConsumer = () -> {
-        logger.info("Interrupting rcms job");
-        srcmsController.interrupt();
-
-    };
+    /**
+     * Interrupts LV0 automator recovery only if it executes the job of the owning executor
+     */
+    public static Runnable interruptConsumer(Supplier<IExecutor> owner) {
+        return () -> {
+            logger.info("Interrupting rcms job");
+            srcmsController.interrupt(owner.get());
+        };
+    }
 
     public static Supplier<Boolean> isAvailableSupplier = () ->{
         Boolean recoveryOngoing = srcmsController.isRecoveryOngoing();
@@ -199,19 +373,9 @@ public class ExecutorFactory {
         rp.setEventSummary(s);
     };
 
-    public static IExecutor DEFAULT_EXECUTOR = build(
-            manualApprovalConsumer,
-            recoveryJobConsumer,
-            report,
-            fixedDelayObserver,
-            2,
-            600,
-            persistResultsConsumer,
-            onProcedureUpdateConsumer,
-            isAvailableSupplier,
-            interruptConsumer
-
-    );
+    public static IExecutor DEFAULT_EXECUTOR = buildPartitionExecutor(false);
+
+    public static IExecutor ASYNC_EXECUTOR = buildPartitionExecutor(true);
 
 
 }
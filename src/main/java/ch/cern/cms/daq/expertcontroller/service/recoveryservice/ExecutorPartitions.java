@@ -0,0 +1,198 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequestStep;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Executors of recovery procedures that run in parallel, one per DAQ partition.
+ * <p>
+ * Partition of the procedure is the set of subsystems touched by its steps (red recycle, green recycle, reset and
+ * fault). Procedures with disjoint partitions are independent and may be executed by different executors at the same
+ * time. Empty partition stands for whole DAQ (e.g. TTC hard reset or step without subsystems) and conflicts with every
+ * other partition.
+ * <p>
+ * The primary executor is always the first one. Additional executors are built on demand up to the maximum and are
+ * reused when they become idle.
+ */
+public class ExecutorPartitions {
+
+    private static Logger logger = LoggerFactory.getLogger(ExecutorPartitions.class);
+
+    private final Supplier<IExecutor> executorSupplier;
+
+    private final int maxPartitions;
+
+    private final List<IExecutor> executors = new ArrayList<>();
+
+    /**
+     * Partition of the procedure last started on each executor
+     */
+    private final Map<IExecutor, Set<String>> partitions = new IdentityHashMap<>();
+
+    /**
+     * Executor that started procedure most recently
+     */
+    private volatile IExecutor latest;
+
+    /**
+     * @param primary          executor used when there is no parallel recovery
+     * @param executorSupplier builds additional executors
+     * @param maxPartitions    maximum number of executors, including the primary one
+     */
+    public ExecutorPartitions(IExecutor primary, Supplier<IExecutor> executorSupplier, int maxPartitions) {
+        this.executorSupplier = executorSupplier;
+        this.maxPartitions = maxPartitions;
+        this.executors.add(primary);
+        this.latest = primary;
+    }
+
+    /**
+     * @return subsystems touched by the request, empty set if request affects whole DAQ
+     */
+    public static Set<String> partitionOf(RecoveryRequest request) {
+        Set<String> partition = new HashSet<>();
+        for (RecoveryRequestStep step : request.getRecoveryRequestSteps()) {
+            if (step.getIssueTTCHardReset() != null && step.getIssueTTCHardReset()) {
+                return Collections.emptySet();
+            }
+            addAll(partition, step.getRedRecycle());
+            addAll(partition, step.getGreenRecycle());
+            addAll(partition, step.getReset());
+            addAll(partition, step.getFault());
+        }
+        return partition;
+    }
+
+    /**
+     * @return true if procedures of given partitions can not run in parallel
+     */
+    public static boolean overlaps(Set<String> partition, Set<String> other) {
+        if (partition.isEmpty() || other.isEmpty()) {
+            return true;
+        }
+        return !Collections.disjoint(partition, other);
+    }
+
+    /**
+     * @return executors running procedures that conflict with given partition, primary executor first
+     */
+    public synchronized List<IExecutor> getConflicting(Set<String> partition) {
+        List<IExecutor> conflicting = new ArrayList<>();
+        for (IExecutor executor : executors) {
+            Set<String> executed = partitions.get(executor);
+            if (executed != null && !isIdle(executor) && overlaps(partition, executed)) {
+                conflicting.add(executor);
+            }
+        }
+        return conflicting;
+    }
+
+    /**
+     * @return idle executor, new one is built if all are busy and maximum has not been reached. Null if none available
+     */
+    public synchronized IExecutor getIdle() {
+        for (IExecutor executor : executors) {
+            if (isIdle(executor)) {
+                return executor;
+            }
+        }
+        if (executors.size() < maxPartitions) {
+            IExecutor executor = executorSupplier.get();
+            executors.add(executor);
+            logger.info("Built executor for partition #" + executors.size());
+            return executor;
+        }
+        return null;
+    }
+
+    /**
+     * Record that the executor starts procedure of given partition
+     */
+    public synchronized void assign(IExecutor executor, Set<String> partition) {
+        partitions.put(executor, partition);
+        latest = executor;
+    }
+
+    /**
+     * @return executors that are not idle
+     */
+    public synchronized List<IExecutor> getBusy() {
+        List<IExecutor> busy = new ArrayList<>();
+        for (IExecutor executor : executors) {
+            if (!isIdle(executor)) {
+                busy.add(executor);
+            }
+        }
+        return busy;
+    }
+
+    /**
+     * @return busy executor whose procedure handles given problem, null if there is none
+     */
+    public synchronized IExecutor getByProblemId(Long problemId) {
+        for (IExecutor executor : getBusy()) {
+            RecoveryProcedure procedure = executor.getExecutedProcedure();
+            if (procedure != null && procedure.getProblemIds() != null
+                    && procedure.getProblemIds().contains(problemId)) {
+                return executor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return executor that executes (or lastly executed) given procedure, null if there is none
+     */
+    public synchronized IExecutor getByProcedureId(Long procedureId) {
+        for (IExecutor executor : executors) {
+            RecoveryProcedure procedure = executor.getExecutedProcedure();
+            if (procedure != null && Objects.equals(procedure.getId(), procedureId)) {
+                return executor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return executor that started procedure most recently
+     */
+    public IExecutor getLatest() {
+        return latest;
+    }
+
+    public synchronized int size() {
+        return executors.size();
+    }
+
+    /**
+     * Executor is idle when FSM is idle and the last procedure has been reported. The FSM leaves the idle state
+     * asynchronously after the procedure starts.
+     */
+    public static boolean isIdle(IExecutor executor) {
+        RecoveryProcedure procedure = executor.getExecutedProcedure();
+        if (procedure != null && procedure.getEnd() == null) {
+            return false;
+        }
+        return executor.getStatus().getState() == State.Idle;
+    }
+
+    private static void addAll(Set<String> partition, Set<String> subsystems) {
+        if (subsystems != null) {
+            partition.addAll(subsystems);
+        }
+    }
+}
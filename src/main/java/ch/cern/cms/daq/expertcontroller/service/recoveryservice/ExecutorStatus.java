@@ -1,20 +1,110 @@
 package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
 
 import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
 import lombok.Builder;
-import lombok.Data;
+import lombok.Value;
 
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-@Data
-@Builder
 /**
- * TODO: decide if this should include information about currently executed procedure (I think no, this should be kept simple POJO)
+ * Snapshot of the executor. Published by the executor on FSM transitions and procedure updates, never modified
+ * afterwards, so that it can be read from any thread without locking. New snapshot means that the executor has changed.
  */
+@Value
+@Builder
 public class ExecutorStatus {
 
     private State state;
 
+    /**
+     * Copy of the action summary at the time of the snapshot
+     */
     private List<Event> actionSummary;
+
+    /**
+     * Procedure executed at the time of the snapshot, copied. Null if no procedure has been executed yet.
+     */
+    private ExecutedProcedure executedProcedure;
+
+    /**
+     * Taken with the executor lock held, while the FSM does not update the procedure
+     *
+     * @param actionSummary     summary appended by the FSM, copied
+     * @param executedProcedure procedure updated by the FSM, copied
+     */
+    static ExecutorStatus snapshot(State state, List<Event> actionSummary, RecoveryProcedure executedProcedure) {
+        return ExecutorStatus.builder()
+                .state(state)
+                .actionSummary(copyOf(actionSummary))
+                .executedProcedure(executedProcedure != null ? ExecutedProcedure.of(executedProcedure) : null)
+                .build();
+    }
+
+    private static <T> List<T> copyOf(List<T> list) {
+        return list != null ? Collections.unmodifiableList(new ArrayList<>(list)) : null;
+    }
+
+    private static List<RecoveryJob> copyOfJobs(List<RecoveryJob> jobs) {
+        if (jobs == null) {
+            return null;
+        }
+        List<RecoveryJob> copies = new ArrayList<>(jobs.size());
+        jobs.forEach(job -> copies.add(job.copy()));
+        return Collections.unmodifiableList(copies);
+    }
+
+    /**
+     * Values of the executed procedure at the time of the snapshot
+     */
+    @Value
+    @Builder
+    public static class ExecutedProcedure {
+
+        private Long id;
+
+        private String problemTitle;
+
+        private List<Long> problemIds;
+
+        private OffsetDateTime start;
+
+        private OffsetDateTime end;
+
+        /**
+         * State recorded in the procedure, the final one once the procedure has finished
+         */
+        private String state;
+
+        private List<Event> eventSummary;
+
+        /**
+         * Steps of the procedure with their statuses
+         */
+        private List<RecoveryJob> steps;
+
+        /**
+         * Jobs executed so far
+         */
+        private List<RecoveryJob> executedJobs;
+
+        static ExecutedProcedure of(RecoveryProcedure procedure) {
+            return ExecutedProcedure.builder()
+                    .id(procedure.getId())
+                    .problemTitle(procedure.getProblemTitle())
+                    .problemIds(copyOf(procedure.getProblemIds()))
+                    .start(procedure.getStart())
+                    .end(procedure.getEnd())
+                    .state(procedure.getState())
+                    .eventSummary(copyOf(procedure.getEventSummary()))
+                    .steps(copyOfJobs(procedure.getProcedure()))
+                    .executedJobs(copyOfJobs(procedure.getExecutedJobs()))
+                    .build();
+        }
+    }
 }
@@ -52,9 +52,17 @@ public interface IExecutor {
 
     /**
      * Get current recovery acceptanceDecision
+     *
+     * @return last published snapshot, see {@link #publishStatus()}
      */
     ExecutorStatus getStatus();
 
+    /**
+     * Publish snapshot of the current state, summary and procedure. Called by the FSM listener on each transition and
+     * procedure update.
+     */
+    void publishStatus();
+
     /**
      * Get last recovery procedure.
      *
@@ -72,6 +80,12 @@ public interface IExecutor {
      */
     FSMEvent callRecoveryExecutionConsumer(RecoveryJob recoveryJob);
 
+    /**
+     * Called by the recovery job consumer when the job starts to be executed, e.g. after waiting for the LV0 automator
+     * executing job of other partition. Execution timeout counts from this moment.
+     */
+    void jobStarted();
+
     /**
      * Call recovery job approval consumer
      *
@@ -88,6 +102,14 @@ public interface IExecutor {
     FSMEvent callObservationConsumer();
 
 
+    /**
+     * End the observation with NoEffect, e.g. the same problem has been reported again after the job
+     *
+     * @return whether observation has been ended, false if executor is not observing or observation is done by the
+     * observation consumer
+     */
+    boolean noEffect();
+
     /**
      * Call interruption consumer
      */
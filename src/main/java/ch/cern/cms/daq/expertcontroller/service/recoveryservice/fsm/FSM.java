@@ -11,168 +11,112 @@ public class FSM {
 
     private final IFSMListener listener;
 
+    /**
+     * Consumer of the time spent in the states, optional
+     */
+    private final IStateDurationConsumer stateDurationConsumer;
+
+    /**
+     * When the current state was entered, see {@link System#nanoTime()}
+     */
+    private long stateEntered;
+
+    /**
+     * Table of transitions state + event = new state, optional
+     */
+    private TransitionTable transitions;
+
     public State getState() {
         return this.state;
     }
 
     private static final Logger logger = LoggerFactory.getLogger(FSM.class);
 
-    public void transition(FSMEvent fsmEvent) {
+    /**
+     * Listener handlers indexed by event ordinal, events without handler only change the state
+     */
+    private static final Handler[] HANDLERS = new Handler[FSMEvent.values().length];
+
+    static {
+        handle(FSMEvent.RecoveryStarts, IFSMListener::onStart);
+        handle(FSMEvent.JobAccepted, IFSMListener::onJobAccepted);
+        handle(FSMEvent.ProcedureAccepted, listener -> {
+            listener.onProcedureAccepted();
+            return listener.onJobAccepted();
+        });
+        handle(FSMEvent.OtherJobAccepted, IFSMListener::onOtherJobAccepted);
+        handle(FSMEvent.JobCompleted, IFSMListener::onJobCompleted);
+        handle(FSMEvent.NoEffect, IFSMListener::onJobNoEffect);
+        handle(FSMEvent.RecoveryFailed, IFSMListener::onRecoveryFailed);
+        handle(FSMEvent.ReportStatus, IFSMListener::onReportStatus);
+        handle(FSMEvent.NextJobNotFound, IFSMListener::onNextJobNotFound);
+        handle(FSMEvent.NextJobFound, IFSMListener::onNextJobFound);
+        handle(FSMEvent.Timeout, IFSMListener::onTimeout);
+        handle(FSMEvent.Exception, IFSMListener::onException);
+        handle(FSMEvent.JobException, IFSMListener::onJobException);
+        handle(FSMEvent.Finished, IFSMListener::onFinished);
+        handle(FSMEvent.Interrupt, IFSMListener::onInterrupted);
+        handle(FSMEvent.FinishedByItself, IFSMListener::onCancelled);
+    }
 
-        logger.info("Transition " + state + " + " + fsmEvent);
+    /**
+     * Applies the event and all events returned by the listener handlers after it. Handlers are called in a loop, so
+     * long chains (e.g. repeated NoEffect - SelectingJob) do not grow the stack.
+     */
+    public void transition(FSMEvent fsmEvent) {
 
         if (fsmEvent == null) {
             throw new IllegalArgumentException();
         }
 
-        int stateId = this.state.ordinal();
-        int eventId = fsmEvent.ordinal();
+        FSMEvent event = fsmEvent;
+        while (event != null) {
 
-        if (stateId >= State.values().length) {
-            throw new IllegalStateException();
-        }
-        if (eventId >= fsmEvent.values().length) {
-            throw new IllegalStateException();
-        }
+            logger.info("Transition {} + {}", state, event);
+
+            State next = transitions.next(state, event);
 
-        State next = transition[stateId][eventId];
+            if (next == null) {
+                throw new IllegalStateException("Illegal state transition: " + event + " on state: " + this.state);
+            }
 
-        if (next != null) {
+            long now = System.nanoTime();
+            if (stateDurationConsumer != null) {
+                stateDurationConsumer.accept(this.state, event, now - stateEntered);
+            }
             this.state = next;
+            this.stateEntered = now;
 
-            if (listener != null) {
-                handleEvent(fsmEvent);
+            if (listener == null) {
+                return;
             }
+            listener.onStateChange(next);
 
-            return;
-        } else {
-            throw new IllegalStateException("Illegal state transition: " + fsmEvent  + " on state: " + this.state);
+            Handler handler = HANDLERS[event.ordinal()];
+            event = handler != null ? handler.handle(listener) : null;
         }
-
     }
 
-
+    /**
+     * Sets the initial state, transitions default to {@link TransitionTable#defaults()}
+     */
     public FSM initialize() {
 
         this.state = State.Idle;
+        this.stateEntered = System.nanoTime();
 
-        int stateCount = State.values().length;
-        int eventCount = FSMEvent.values().length;
-
-        this.transition = new State[stateCount][eventCount];
-
-
-        addToArray(State.Idle, FSMEvent.RecoveryStarts, State.SelectingJob);
-
-        addToArray(State.SelectingJob, FSMEvent.NextJobNotFound, State.Failed);
-        addToArray(State.SelectingJob, FSMEvent.NextJobFound, State.AwaitingApproval);
-        addToArray(State.SelectingJob, FSMEvent.FinishedByItself, State.Cancelled);
-
-        addToArray(State.AwaitingApproval, FSMEvent.JobAccepted, State.Recovering);
-        addToArray(State.AwaitingApproval, FSMEvent.OtherJobAccepted, State.Recovering);
-        addToArray(State.AwaitingApproval, FSMEvent.ProcedureAccepted, State.Recovering);
-        addToArray(State.AwaitingApproval, FSMEvent.Timeout, State.Cancelled);
-        addToArray(State.AwaitingApproval, FSMEvent.FinishedByItself, State.Cancelled);
-
-        addToArray(State.Recovering, FSMEvent.JobCompleted, State.Observe);
-        addToArray(State.Recovering, FSMEvent.Timeout, State.Failed);
-        addToArray(State.Recovering, FSMEvent.Exception, State.Failed);
-        addToArray(State.Recovering, FSMEvent.JobException, State.SelectingJob);
-
-        addToArray(State.Observe, FSMEvent.NoEffect, State.SelectingJob);
-        addToArray(State.Observe, FSMEvent.Finished, State.Completed);
-
-        addToArray(State.Failed, FSMEvent.ReportStatus, State.Idle);
-        addToArray(State.Cancelled, FSMEvent.ReportStatus, State.Idle);
-        addToArray(State.Completed, FSMEvent.ReportStatus, State.Idle);
-
-        /* From every state - instead of Idle, interrupt will bring FSM to Cancelled */
-        for (State state : State.values()) {
-            if (state != State.Idle)
-                addToArray(state, FSMEvent.Interrupt, State.Cancelled);
+        if (this.transitions == null) {
+            this.transitions = TransitionTable.defaults();
         }
         return this;
-
     }
 
-
-    /**
-     * TODO: Refactor this: right now this handlers are both based on event and on state. Make it based on
-     * state(initing-event)
-     *
-     * @param FSMEvent
-     */
-    private void handleEvent(FSMEvent FSMEvent) {
-
-        FSMEvent result = null;
-
-        switch (FSMEvent) {
-            case RecoveryStarts:
-                result = listener.onStart();
-                break;
-            case JobAccepted:
-                result = listener.onJobAccepted();
-                break;
-            case ProcedureAccepted:
-                listener.onProcedureAccepted();
-                result = listener.onJobAccepted();
-                break;
-            case OtherJobAccepted:
-                result = listener.onOtherJobAccepted();
-                break;
-            case JobCompleted:
-                result = listener.onJobCompleted();
-                break;
-            case NoEffect:
-                result = listener.onJobNoEffect();
-                break;
-            case RecoveryFailed:
-                result = listener.onRecoveryFailed();
-                break;
-            case ReportStatus:
-                result = listener.onReportStatus();
-                break;
-            case NextJobNotFound:
-                result = listener.onNextJobNotFound();
-                break;
-            case NextJobFound:
-                result = listener.onNextJobFound();
-                break;
-            case Timeout:
-                result = listener.onTimeout();
-                break;
-            case Exception:
-                result = listener.onException();
-                break;
-            case JobException:
-                result = listener.onJobException();
-                break;
-            case Finished:
-                result = listener.onFinished();
-                break;
-            case Interrupt:
-                result = listener.onInterrupted();
-                break;
-            case FinishedByItself:
-                result = listener.onCancelled();
-
-        }
-
-        if (result != null) {
-            transition(result);
-        }
+    private static void handle(FSMEvent event, Handler handler) {
+        HANDLERS[event.ordinal()] = handler;
     }
 
-    private void addToArray(State onState, FSMEvent FSMEvent, State targetState) {
-
-        transition[onState.ordinal()][FSMEvent.ordinal()] = targetState;
+    @FunctionalInterface
+    private interface Handler {
+        FSMEvent handle(IFSMListener listener);
     }
-
-    /**
-     * Table of transitions state + signal = new state
-     */
-    private State transition[][];
-
-
 }
-
@@ -38,6 +38,11 @@ public class FSMListener implements IFSMListener {
 
     private Consumer<RecoveryProcedure> onUpdateConsumer;
 
+    /**
+     * Called when the first job of the procedure is passed for execution, optional
+     */
+    private Consumer<RecoveryProcedure> firstJobConsumer;
+
     private static Logger logger = LoggerFactory.getLogger(FSMListener.class);
 
     public void setExecutor(IExecutor executor) {
@@ -111,6 +116,7 @@ public class FSMListener implements IFSMListener {
                                 .type("processing")
                                 .build());
 
+        notifyFirstJob();
         currentProcedure.getExecutedJobs().add(currentJob);
         currentJob.setStart(OffsetDateTime.now());
 
@@ -141,6 +147,7 @@ public class FSMListener implements IFSMListener {
                                 .date(OffsetDateTime.now())
                                 .type("processing")
                                 .build());
+        notifyFirstJob();
         currentProcedure.getExecutedJobs().add(currentJob);
         currentJob.setStart(OffsetDateTime.now());
 
@@ -202,8 +209,7 @@ public class FSMListener implements IFSMListener {
 
         executor.callStatusReportConsumer(currentProcedure, reportSteps);
 
-        if (onUpdateConsumer != null)
-            onUpdateConsumer.accept(currentProcedure);
+        notifyUpdate();
 
         executor.setForceAccept(false);
 
@@ -227,8 +233,7 @@ public class FSMListener implements IFSMListener {
     public FSMEvent onNextJobFound() {
         logger.info("Next job found: " + currentJob.getJob() + " Passing to approval request consumer");
 
-        if (onUpdateConsumer != null)
-            onUpdateConsumer.accept(currentProcedure);
+        notifyUpdate();
 
         return executor.callApprovalRequestConsumer(currentJob);
     }
@@ -335,9 +340,33 @@ public class FSMListener implements IFSMListener {
     @Override
     public void onNewRcmsStatus(String status) {
         currentJob.setRcmsStatus(status);
-        if (onUpdateConsumer != null)
+        notifyUpdate();
+
+    }
+
+    @Override
+    public void onStateChange(State state) {
+        if (executor != null) {
+            executor.publishStatus();
+        }
+    }
+
+    /**
+     * Publish status of the executor and notify about the update. Called once the procedure update is complete.
+     */
+    private void notifyUpdate() {
+        if (executor != null) {
+            executor.publishStatus();
+        }
+        if (onUpdateConsumer != null) {
             onUpdateConsumer.accept(currentProcedure);
+        }
+    }
 
+    private void notifyFirstJob() {
+        if (firstJobConsumer != null && currentProcedure.getExecutedJobs().isEmpty()) {
+            firstJobConsumer.accept(currentProcedure);
+        }
     }
 
     private void onFinishProcedure() {
@@ -347,8 +376,7 @@ public class FSMListener implements IFSMListener {
         if (persistResultsConsumer != null)
             persistResultsConsumer.accept(currentProcedure);
 
-        if (onUpdateConsumer != null)
-            onUpdateConsumer.accept(currentProcedure);
+        notifyUpdate();
 
     }
 
@@ -359,8 +387,7 @@ public class FSMListener implements IFSMListener {
         if (persistResultsConsumer != null)
             persistResultsConsumer.accept(currentProcedure);
 
-        if (onUpdateConsumer != null)
-            onUpdateConsumer.accept(currentProcedure);
+        notifyUpdate();
 
 
     }
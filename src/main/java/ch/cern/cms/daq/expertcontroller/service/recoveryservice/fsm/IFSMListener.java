@@ -57,4 +57,10 @@ public interface IFSMListener {
 
     void onNewRcmsStatus(String status);
 
+    /**
+     * Called on every transition, after the state is set and before the event is handled
+     */
+    default void onStateChange(State state) {
+    }
+
 }
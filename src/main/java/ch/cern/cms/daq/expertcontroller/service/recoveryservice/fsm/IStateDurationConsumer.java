@@ -0,0 +1,17 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm;
+
+/**
+ * Consumer of the time spent in the FSM states
+ */
+@FunctionalInterface
+public interface IStateDurationConsumer {
+
+    /**
+     * Called when the state is left
+     *
+     * @param state     state that was left
+     * @param exitEvent event that caused the transition
+     * @param nanos     time spent in the state
+     */
+    void accept(State state, FSMEvent exitEvent, long nanos);
+}
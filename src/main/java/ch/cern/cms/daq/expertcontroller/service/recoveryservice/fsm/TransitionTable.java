@@ -0,0 +1,95 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Table of transitions state + event = new state, indexed by ordinals. Immutable once built, one table is shared by
+ * all FSMs using it.
+ * <p>
+ * Definitions are loaded from a classpath properties resource, one transition per entry:
+ * <pre>
+ * Observe.NoEffect=SelectingJob
+ * </pre>
+ */
+public class TransitionTable {
+
+    /**
+     * Transitions of the recovery procedure
+     */
+    public static final String DEFAULT_RESOURCE = "fsm-transitions.properties";
+
+    private static final State[] STATES = State.values();
+
+    private static final FSMEvent[] EVENTS = FSMEvent.values();
+
+    private static volatile TransitionTable defaultTable;
+
+    private final State[][] transitions = new State[STATES.length][EVENTS.length];
+
+    private TransitionTable() {
+    }
+
+    /**
+     * @return table of the recovery procedure, loaded once from {@link #DEFAULT_RESOURCE}
+     */
+    public static TransitionTable defaults() {
+        TransitionTable table = defaultTable;
+        if (table == null) {
+            table = load(DEFAULT_RESOURCE);
+            defaultTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * @param resource classpath resource with the transition definitions
+     * @throws IllegalArgumentException if the resource does not exist or refers to unknown states or events
+     */
+    public static TransitionTable load(String resource) {
+        Properties definitions = new Properties();
+        try (InputStream input = TransitionTable.class.getClassLoader().getResourceAsStream(resource)) {
+            if (input == null) {
+                throw new IllegalArgumentException("Transition definitions not found: " + resource);
+            }
+            definitions.load(input);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read transition definitions: " + resource, e);
+        }
+        return of(definitions);
+    }
+
+    /**
+     * @param definitions entries of form state.event=target
+     */
+    public static TransitionTable of(Properties definitions) {
+        TransitionTable table = new TransitionTable();
+        for (String key : definitions.stringPropertyNames()) {
+            int separator = key.indexOf('.');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Transition definition must be state.event: " + key);
+            }
+            State state = parse(State.class, key.substring(0, separator));
+            FSMEvent event = parse(FSMEvent.class, key.substring(separator + 1));
+            State target = parse(State.class, definitions.getProperty(key));
+            table.transitions[state.ordinal()][event.ordinal()] = target;
+        }
+        return table;
+    }
+
+    /**
+     * @return target state, null if the event is not allowed in given state
+     */
+    public State next(State state, FSMEvent event) {
+        return transitions[state.ordinal()][event.ordinal()];
+    }
+
+    private static <T extends Enum<T>> T parse(Class<T> type, String name) {
+        try {
+            return Enum.valueOf(type, name.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + type.getSimpleName() + " in transition definitions: " + name);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import ch.cern.cms.daq.expertcontroller.datatransfer.ApprovalResponse;
 import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
 import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequestStep;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
 import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
 import ch.cern.cms.daq.expertcontroller.service.IRecoveryService;
 import ch.cern.cms.daq.expertcontroller.service.rcms.LV0AutomatorControlException;
@@ -111,6 +112,30 @@ public class ExpertControllerApplicationTests {
 
     }
 
+    @Test
+    public void procedureResourceWithJobsTest() {
+        RecoveryProcedure procedure = recoveryProcedureRepository.save(RecoveryProcedure.builder()
+                .problemTitle("Exported")
+                .start(OffsetDateTime.now())
+                .executedJobs(Arrays.asList(RecoveryJob.builder()
+                                                    .job("Red recycle ECAL")
+                                                    .redRecycle(new HashSet<>(Arrays.asList("ECAL")))
+                                                    .greenRecycle(new HashSet<>())
+                                                    .fault(new HashSet<>(Arrays.asList("ES")))
+                                                    .reset(new HashSet<>())
+                                                    .build()))
+                .build());
+
+        given().get("/recoveryProcedures/" + procedure.getId())
+                .then().assertThat()
+                .statusCode(equalTo(HttpStatus.OK.value()))
+                .body("problemTitle", equalTo("Exported"),
+                      "executedJobs[0].redRecycle", equalTo(Arrays.asList("ECAL")),
+                      "executedJobs[0].fault", equalTo(Arrays.asList("ES")));
+
+        recoveryProcedureRepository.deleteAll();
+    }
+
     @Test
     public void unsupportedMediaType() {
         post("/recover").then().assertThat().statusCode(equalTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value()));
@@ -502,6 +527,37 @@ public class ExpertControllerApplicationTests {
                 );
     }
 
+    /**
+     * Test that the retried request is not processed again
+     */
+    @Test
+    public void retriedRequestTest() {
+        RecoveryRequest r = RecoveryRequest.builder()
+                .problemId(101L)
+                .problemTitle("Problem T1")
+                .recoveryRequestSteps(Arrays.asList(
+                        RecoveryRequestStep.builder()
+                                .humanReadable("J1")
+                                .stepIndex(0)
+                                .build()))
+                .build();
+
+        Header key = new Header("Idempotency-Key", "r1");
+        Integer id = given().header(jsonHeader).header(key).body(r).post("/recover").then().assertThat()
+                .statusCode(equalTo(HttpStatus.CREATED.value()))
+                .body("acceptanceDecision", equalTo("accepted"))
+                .extract().path("recoveryProcedureId");
+
+        // retry is answered with the original response instead of the rejection
+        given().header(jsonHeader).header(key).body(r).post("/recover").then().assertThat()
+                .statusCode(equalTo(HttpStatus.CREATED.value()))
+                .body(
+                        "acceptanceDecision", equalTo("accepted"),
+                        "recoveryProcedureId", equalTo(id));
+
+        Assert.assertEquals(1, recoveryProcedureRepository.findAll().size());
+    }
+
     /**
      * Test the preemption behaviour
      */
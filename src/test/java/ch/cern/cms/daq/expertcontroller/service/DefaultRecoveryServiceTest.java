@@ -5,6 +5,7 @@ import ch.cern.cms.daq.expertcontroller.controller.DashboardController;
 import ch.cern.cms.daq.expertcontroller.datatransfer.*;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
 import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import ch.cern.cms.daq.expertcontroller.service.rcms.RcmsCircuitBreaker;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.IExecutor;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.TestExecutorFactory;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
@@ -12,6 +13,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
@@ -19,14 +21,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 
 import static org.mockito.BDDMockito.any;
@@ -43,6 +51,9 @@ public class DefaultRecoveryServiceTest {
     @MockBean
     private RecoveryProcedureRepository recoveryProcedureRepository;
 
+    @SpyBean
+    private RcmsCircuitBreaker rcmsCircuitBreaker;
+
 
     @Autowired
     private DefaultRecoveryService recoveryService;
@@ -74,6 +85,18 @@ public class DefaultRecoveryServiceTest {
         Assert.assertNull(recoveryService.getRecoveryServiceStatus().getLastProcedureStatus());
     }
 
+    @Test
+    public void circuitStateIsReadOnEveryCallTest() {
+        RecoveryServiceStatus closed = recoveryService.getRecoveryServiceStatus();
+        Mockito.doReturn(RcmsCircuitBreaker.State.Open).when(rcmsCircuitBreaker).getState();
+        RecoveryServiceStatus open = recoveryService.getRecoveryServiceStatus();
+
+        Assert.assertEquals("Closed", closed.getRcmsCircuitState());
+        Assert.assertEquals("Open", open.getRcmsCircuitState());
+        // executor has not changed
+        Assert.assertEquals(closed.getExecutorState(), open.getExecutorState());
+    }
+
     @Test
     public void simpleProcedureTest() throws InterruptedException {
 
@@ -201,6 +224,77 @@ public class DefaultRecoveryServiceTest {
 
     }
 
+    @Test
+    public void postponedRequestIsDispatchedWhenExecutorBecomesIdleTest() throws InterruptedException {
+
+        RecoveryRequest first = RecoveryRequest.builder()
+                .problemId(1L)
+                .problemTitle("First problem")
+                .recoveryRequestSteps(Arrays.asList(
+                        RecoveryRequestStep.builder().humanReadable("Test 1").stepIndex(0).build())).build();
+
+        RecoveryRequest second = RecoveryRequest.builder()
+                .problemId(2L)
+                .problemTitle("Second problem")
+                .withPostponement(true)
+                .recoveryRequestSteps(Arrays.asList(
+                        RecoveryRequestStep.builder().humanReadable("Test 2").stepIndex(0).build())).build();
+
+        Assert.assertEquals("accepted", recoveryService.submitRecoveryRequest(first).getAcceptanceDecision());
+        Thread.sleep(500);
+        Assert.assertEquals("acceptedToPostpone", recoveryService.submitRecoveryRequest(second).getAcceptanceDecision());
+
+        recoveryService.finished(1L);
+        Assert.assertEquals("Idle", recoveryService.getRecoveryServiceStatus().getExecutorState());
+
+        // called by the executor on each update, here the update consumer only prints
+        recoveryService.onRecoveryProcedureStateUpdate();
+        Thread.sleep(500);
+
+        RecoveryServiceStatus status = recoveryService.getRecoveryServiceStatus();
+        Assert.assertEquals("AwaitingApproval", status.getExecutorState());
+        Assert.assertEquals(Arrays.asList(2L), status.getLastProcedureStatus().getConditionIds());
+
+        recoveryService.interrupt();
+    }
+
+    @Test
+    @DirtiesContext
+    public void concurrentRequestsStartOneProcedureTest() throws InterruptedException {
+
+        List<String> decisions = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> submitters = new ArrayList<>();
+        for (long problemId = 1; problemId <= 8; problemId++) {
+            RecoveryRequest request = RecoveryRequest.builder()
+                    .problemId(problemId)
+                    .problemTitle("Problem " + problemId)
+                    .recoveryRequestSteps(Arrays.asList(
+                            RecoveryRequestStep.builder().humanReadable("Test").stepIndex(0).build())).build();
+            Thread submitter = new Thread(() -> {
+                try {
+                    go.await();
+                    decisions.add(recoveryService.submitRecoveryRequest(request).getAcceptanceDecision());
+                } catch (InterruptedException | RuntimeException e) {
+                    errors.add(e);
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        go.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        Assert.assertEquals(Collections.emptyList(), errors);
+        Assert.assertEquals(1, decisions.stream().filter("accepted"::equals).count());
+        Assert.assertEquals(7, decisions.stream().filter("rejected"::equals).count());
+
+        recoveryService.interrupt();
+    }
+
 }
 
 @Import(ExpertControllerServletApplication.class)
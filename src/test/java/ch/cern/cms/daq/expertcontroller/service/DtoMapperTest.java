@@ -0,0 +1,70 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJobStatus;
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class DtoMapperTest {
+
+    private final DtoMapper dtoMapper = new DtoMapper();
+
+    @Test
+    public void procedureIsMappedToTypedDtoTest() {
+        OffsetDateTime start = OffsetDateTime.now();
+        RecoveryProcedure procedure = RecoveryProcedure.builder()
+                .id(5L)
+                .problemTitle("Problem")
+                .problemIds(Arrays.asList(1L, 2L))
+                .start(start)
+                .executedJobs(Collections.singletonList(
+                        RecoveryJob.builder().id(7L).stepIndex(0).redRecycle(new HashSet<>(Arrays.asList("ECAL")))
+                                .build()))
+                .eventSummary(Arrays.asList(event("first"), event("second")))
+                .build();
+
+        List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> dtos =
+                dtoMapper.toProcedures(Collections.singletonList(procedure));
+
+        ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure dto = dtos.get(0);
+        Assert.assertEquals(Long.valueOf(5L), dto.getId());
+        Assert.assertEquals(start, dto.getStart());
+        Assert.assertEquals(Arrays.asList(1L, 2L), dto.getProblemIds());
+        Assert.assertEquals(Long.valueOf(7L), dto.getExecutedJobs().get(0).getId());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("ECAL")), dto.getExecutedJobs().get(0).getRedRecycle());
+        Assert.assertEquals("second", dto.getEventSummary().get(1).getContent());
+    }
+
+    @Test
+    public void jobStatusCountsFinishedExecutionsOfTheStepTest() {
+        OffsetDateTime now = OffsetDateTime.now();
+        RecoveryJob job = RecoveryJob.builder().stepIndex(1).start(now).status("recovering").build();
+        List<RecoveryJob> executed = Arrays.asList(
+                RecoveryJob.builder().stepIndex(1).end(now).build(),
+                RecoveryJob.builder().stepIndex(1).end(now).build(),
+                RecoveryJob.builder().stepIndex(1).build(),
+                RecoveryJob.builder().stepIndex(0).end(now).build());
+
+        RecoveryJobStatus status = dtoMapper.toJobStatus(job, executed);
+
+        Assert.assertEquals(Integer.valueOf(2), status.getTimesExecuted());
+        Assert.assertEquals(Integer.valueOf(1), status.getStepIndex());
+        Assert.assertEquals("recovering", status.getStatus());
+        Assert.assertNotNull(status.getStarted());
+        Assert.assertNull(status.getFinished());
+        Assert.assertEquals(Integer.valueOf(0), dtoMapper.toJobStatus(job, null).getTimesExecuted());
+        Assert.assertNull(dtoMapper.toEvents(null));
+    }
+
+    private static Event event(String content) {
+        return Event.builder().content(content).date(OffsetDateTime.now()).stepIndex(0).build();
+    }
+}
@@ -0,0 +1,152 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.EventRepository;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = {MockServicesProvider.class})
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class EventJournalTest {
+
+    @Autowired
+    private RecoveryProcedureRepository recoveryProcedureRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private RecoveryRecordService recoveryRecordService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+
+    @Before
+    public void prepare() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void eventsAreOnlyInsertedTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(
+                recoveryProcedureRepository, eventRepository, transactionManager, 0);
+
+        RecoveryProcedure procedure = RecoveryProcedure.builder()
+                .problemTitle("Journal")
+                .start(OffsetDateTime.now())
+                .build();
+        recoveryProcedureRepository.save(procedure);
+
+        List<Event> summary = new ArrayList<>();
+        procedure.setEventSummary(summary);
+        for (int i = 0; i < 20; i++) {
+            summary.add(Event.builder().content("event " + i).date(OffsetDateTime.now()).build());
+            persister.persist(procedure);
+        }
+
+        Assert.assertEquals(20, statistics.getEntityStatistics(Event.class.getName()).getInsertCount());
+        Assert.assertEquals(0, statistics.getEntityStatistics(Event.class.getName()).getUpdateCount());
+
+        List<String> expected = contents(summary);
+        Assert.assertEquals(expected, contents(eventRepository.findByProcedureIdOrderBySequence(procedure.getId())));
+
+        // summary is not mapped, it is rebuilt from the journal
+        Assert.assertNull(recoveryProcedureRepository.findById(procedure.getId()).get().getEventSummary());
+        List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> procedures =
+                recoveryRecordService.getProcedures(OffsetDateTime.now().minusHours(1), OffsetDateTime.now().plusHours(1));
+        Assert.assertEquals(1, procedures.size());
+        Assert.assertEquals(expected, procedures.get(0).getEventSummary().stream()
+                .map(ch.cern.cms.daq.expertcontroller.datatransfer.Event::getContent)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void jobsAreInsertedOnceTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(
+                recoveryProcedureRepository, eventRepository, transactionManager, 0);
+
+        RecoveryProcedure procedure = RecoveryProcedure.builder()
+                .problemTitle("Jobs")
+                .start(OffsetDateTime.now().minusDays(1))
+                .executedJobs(new ArrayList<>())
+                .build();
+        recoveryProcedureRepository.save(procedure);
+
+        RecoveryJob job = RecoveryJob.builder().job("J1").status("Recovering").build();
+        procedure.getExecutedJobs().add(job);
+        persister.persist(procedure);
+        job.setStatus("Finished");
+        persister.persist(procedure);
+        procedure.getExecutedJobs().add(RecoveryJob.builder().job("J2").status("Recovering").build());
+        procedure.setEnd(procedure.getStart().plusMinutes(1));
+        persister.persist(procedure);
+
+        Assert.assertEquals(2, statistics.getEntityStatistics(RecoveryJob.class.getName()).getInsertCount());
+        RecoveryProcedure saved = recoveryProcedureRepository.findById(procedure.getId()).get();
+        Assert.assertEquals(Arrays.asList("Finished", "Recovering"),
+                            saved.getExecutedJobs().stream().map(RecoveryJob::getStatus).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void finishedProcedurePersistedAgainIsNotInsertedAgainTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(
+                recoveryProcedureRepository, eventRepository, transactionManager, 0);
+
+        RecoveryProcedure procedure = RecoveryProcedure.builder()
+                .problemTitle("Preempted")
+                .start(OffsetDateTime.now().minusDays(2))
+                .executedJobs(new ArrayList<>())
+                .eventSummary(new ArrayList<>())
+                .build();
+        recoveryProcedureRepository.save(procedure);
+
+        procedure.getExecutedJobs().add(RecoveryJob.builder().job("J1").status("Cancelled").build());
+        procedure.getEventSummary().add(Event.builder().content("started").date(OffsetDateTime.now()).build());
+        procedure.getEventSummary().add(Event.builder().content("interrupted").date(OffsetDateTime.now()).build());
+        procedure.setEnd(procedure.getStart().plusMinutes(1));
+        persister.persist(procedure);
+
+        long jobs = statistics.getEntityStatistics(RecoveryJob.class.getName()).getInsertCount();
+        long events = statistics.getEntityStatistics(Event.class.getName()).getInsertCount();
+        Assert.assertEquals(1, jobs);
+        Assert.assertEquals(2, events);
+
+        // e.g. saved by the executor on interrupt and again by its caller
+        persister.persist(procedure);
+
+        Assert.assertEquals(jobs, statistics.getEntityStatistics(RecoveryJob.class.getName()).getInsertCount());
+        Assert.assertEquals(events, statistics.getEntityStatistics(Event.class.getName()).getInsertCount());
+        Assert.assertEquals(2, eventRepository.findByProcedureIdOrderBySequence(procedure.getId()).size());
+        Assert.assertEquals(1, recoveryProcedureRepository.findById(procedure.getId()).get().getExecutedJobs().size());
+    }
+
+    private static List<String> contents(List<Event> events) {
+        return events.stream().map(Event::getContent).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,65 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.ExecutorFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyMetricsTest {
+
+    @Test
+    public void durationsAreSummarizedInHistogramTest() {
+        LatencyMetrics latencyMetrics = new LatencyMetrics();
+        latencyMetrics.record("rcms.start-recovery", TimeUnit.MILLISECONDS.toNanos(5));
+        latencyMetrics.record("rcms.start-recovery", TimeUnit.MILLISECONDS.toNanos(80));
+        latencyMetrics.record("rcms.start-recovery", TimeUnit.MILLISECONDS.toNanos(2000));
+        latencyMetrics.record("rcms.start-recovery", TimeUnit.MINUTES.toNanos(20));
+
+        Map<String, Number> metrics = new HashMap<>();
+        for (Metric<?> metric : latencyMetrics.metrics()) {
+            metrics.put(metric.getName(), metric.getValue());
+        }
+
+        Assert.assertEquals(4L, metrics.get("timer.rcms.start-recovery.count"));
+        Assert.assertEquals(1200000.0, metrics.get("timer.rcms.start-recovery.max").doubleValue(), 0.001);
+        Assert.assertEquals((5 + 80 + 2000 + 1200000) / 4.0,
+                            metrics.get("timer.rcms.start-recovery.mean").doubleValue(), 0.001);
+
+        // cumulative, the longest is only counted
+        Assert.assertEquals(1L, metrics.get("timer.rcms.start-recovery.le.10"));
+        Assert.assertEquals(2L, metrics.get("timer.rcms.start-recovery.le.100"));
+        Assert.assertEquals(2L, metrics.get("timer.rcms.start-recovery.le.1000"));
+        Assert.assertEquals(3L, metrics.get("timer.rcms.start-recovery.le.5000"));
+        Assert.assertEquals(3L, metrics.get("timer.rcms.start-recovery.le.600000"));
+
+        Assert.assertNull(latencyMetrics.getTimer("rcms.interrupt"));
+    }
+
+    @Test
+    public void firstJobIsMeasuredFromReceiptOfRequestTest() {
+        LatencyMetrics latencyMetrics = new LatencyMetrics();
+        Object previous = ReflectionTestUtils.getField(ExecutorFactory.class, "slatencyMetrics");
+        ReflectionTestUtils.setField(ExecutorFactory.class, "slatencyMetrics", latencyMetrics);
+        try {
+            // request waited 2 s for admission, procedure has just started
+            ExecutorFactory.firstJobConsumer.accept(RecoveryProcedure.builder()
+                                                            .received(System.nanoTime() - TimeUnit.SECONDS.toNanos(2))
+                                                            .start(OffsetDateTime.now())
+                                                            .build());
+            ExecutorFactory.firstJobConsumer.accept(RecoveryProcedure.builder().start(OffsetDateTime.now()).build());
+        } finally {
+            ReflectionTestUtils.setField(ExecutorFactory.class, "slatencyMetrics", previous);
+        }
+
+        LatencyMetrics.Timer timer = latencyMetrics.getTimer("recovery.first-job");
+        Assert.assertEquals(1, timer.getCount());
+        Assert.assertTrue(timer.getMaxMillis() >= 2000);
+    }
+}
@@ -0,0 +1,193 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.controller.DashboardController;
+import ch.cern.cms.daq.expertcontroller.datatransfer.ApprovalResponse;
+import ch.cern.cms.daq.expertcontroller.datatransfer.PartitionStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryServiceStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequestStep;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryResponse;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.AutomaticRecoveryService;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.ExecutorPartitions;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.IExecutor;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.TestExecutorFactory;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.mockito.Matchers.any;
+
+public class PartitionedRecoveryServiceTest {
+
+    private DefaultRecoveryService recoveryService;
+
+    private ExecutorPartitions executorPartitions;
+
+    private final AtomicLong ids = new AtomicLong(100);
+
+    @Before
+    public void prepare() {
+
+        RecoveryProcedureRepository repository = Mockito.mock(RecoveryProcedureRepository.class);
+        Mockito.when(repository.save(any(RecoveryProcedure.class))).thenAnswer(invocation -> {
+            RecoveryProcedure recoveryProcedure = invocation.getArgumentAt(0, RecoveryProcedure.class);
+            if (recoveryProcedure.getId() == null) {
+                recoveryProcedure.setId(ids.incrementAndGet());
+            }
+            return recoveryProcedure;
+        });
+
+        IExecutor primary = buildExecutor();
+        executorPartitions = new ExecutorPartitions(primary, PartitionedRecoveryServiceTest::buildExecutor, 3);
+
+        recoveryService = new AutomaticRecoveryService();
+        ReflectionTestUtils.setField(recoveryService, "dashboardController", Mockito.mock(DashboardController.class));
+        ReflectionTestUtils.setField(recoveryService, "dtoMapper", new DtoMapper());
+        ReflectionTestUtils.setField(recoveryService, "recoveryProcedureRepository", repository);
+        ReflectionTestUtils.setField(recoveryService, "recoveryProcedureExecutor", primary);
+        ReflectionTestUtils.setField(recoveryService, "executorPartitions", executorPartitions);
+        ReflectionTestUtils.setField(recoveryService, "partitioned", true);
+        ReflectionTestUtils.setField(recoveryService, "pendingRequests", new PendingRequestQueue(16, 10000, 120000));
+    }
+
+    @Test
+    public void partitionOfRequestTest() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList("ECAL", "HCAL", "TRACKER")),
+                            ExecutorPartitions.partitionOf(request(1L, "ECAL", "HCAL", "TRACKER")));
+        Assert.assertEquals(Collections.emptySet(), ExecutorPartitions.partitionOf(request(1L)));
+
+        RecoveryRequest ttcHardReset = request(1L, "ECAL");
+        ttcHardReset.getRecoveryRequestSteps().get(0).setIssueTTCHardReset(true);
+        Assert.assertEquals(Collections.emptySet(), ExecutorPartitions.partitionOf(ttcHardReset));
+
+        Assert.assertFalse(ExecutorPartitions.overlaps(set("ECAL"), set("HCAL")));
+        Assert.assertTrue(ExecutorPartitions.overlaps(set("ECAL", "HCAL"), set("HCAL")));
+        Assert.assertTrue(ExecutorPartitions.overlaps(set("ECAL"), set()));
+    }
+
+    @Test
+    public void disjointProceduresRunInParallelTest() throws InterruptedException {
+
+        RecoveryResponse ecal = recoveryService.submitRecoveryRequest(request(1L, "ECAL"));
+        RecoveryResponse hcal = recoveryService.submitRecoveryRequest(request(2L, "HCAL"));
+
+        Assert.assertEquals("accepted", ecal.getAcceptanceDecision());
+        Assert.assertEquals("accepted", hcal.getAcceptanceDecision());
+        Assert.assertNotEquals(ecal.getRecoveryProcedureId(), hcal.getRecoveryProcedureId());
+        Assert.assertEquals(2, executorPartitions.getBusy().size());
+
+        // the last started procedure is reported
+        Thread.sleep(200);
+        Assert.assertEquals("AwaitingApproval", recoveryService.getRecoveryServiceStatus().getExecutorState());
+        Assert.assertEquals(hcal.getRecoveryProcedureId(),
+                            recoveryService.getRecoveryServiceStatus().getLastProcedureStatus().getId());
+
+        // along with all busy partitions
+        RecoveryServiceStatus status = recoveryService.getRecoveryServiceStatus();
+        Assert.assertEquals(new HashSet<>(Arrays.asList(ecal.getRecoveryProcedureId(), hcal.getRecoveryProcedureId())),
+                            status.getPartitionStatuses().stream()
+                                    .map(p -> p.getLastProcedureStatus().getId())
+                                    .collect(Collectors.toSet()));
+        Assert.assertTrue(status.getPartitionStatuses().stream()
+                                  .map(PartitionStatus::getExecutorState)
+                                  .allMatch("AwaitingApproval"::equals));
+    }
+
+    @Test
+    public void conflictingProceduresSerializeTest() throws InterruptedException {
+
+        Assert.assertEquals("accepted", recoveryService.submitRecoveryRequest(request(1L, "ECAL")).getAcceptanceDecision());
+
+        RecoveryResponse overlapping = recoveryService.submitRecoveryRequest(request(2L, "ECAL", "TRACKER"));
+        Assert.assertEquals("rejected", overlapping.getAcceptanceDecision());
+        Assert.assertEquals(Long.valueOf(1L), overlapping.getRejectedDueToConditionId());
+
+        RecoveryResponse wholeDaq = recoveryService.submitRecoveryRequest(request(3L));
+        Assert.assertEquals("rejected", wholeDaq.getAcceptanceDecision());
+
+        // allow FSM to do transition - start is async
+        Thread.sleep(200);
+        RecoveryRequest preempting = request(4L, "TRACKER", "ECAL");
+        preempting.setWithInterrupt(true);
+        Assert.assertEquals("acceptedWithPreemption",
+                            recoveryService.submitRecoveryRequest(preempting).getAcceptanceDecision());
+        Assert.assertEquals(1, executorPartitions.getBusy().size());
+    }
+
+    @Test
+    public void signalsAreRoutedToExecutorOfTheProcedureTest() throws InterruptedException {
+
+        RecoveryResponse ecal = recoveryService.submitRecoveryRequest(request(1L, "ECAL"));
+        RecoveryResponse hcal = recoveryService.submitRecoveryRequest(request(2L, "HCAL"));
+        Thread.sleep(200);
+
+        IExecutor ecalExecutor = executorPartitions.getByProcedureId(ecal.getRecoveryProcedureId());
+        IExecutor hcalExecutor = executorPartitions.getByProcedureId(hcal.getRecoveryProcedureId());
+        Assert.assertNotSame(ecalExecutor, hcalExecutor);
+
+        recoveryService.finished(1L);
+        Thread.sleep(200);
+        Assert.assertEquals(State.Idle, ecalExecutor.getStatus().getState());
+        Assert.assertEquals(State.AwaitingApproval, hcalExecutor.getStatus().getState());
+
+        // freed executor is reused
+        RecoveryResponse pixel = recoveryService.submitRecoveryRequest(request(3L, "PIXEL"));
+        Assert.assertEquals("accepted", pixel.getAcceptanceDecision());
+        Assert.assertSame(ecalExecutor, executorPartitions.getByProcedureId(pixel.getRecoveryProcedureId()));
+
+        recoveryService.submitApprovalDecision(ApprovalResponse.builder()
+                                                       .approved(true)
+                                                       .recoveryProcedureId(hcal.getRecoveryProcedureId())
+                                                       .step(0)
+                                                       .build());
+        Thread.sleep(500);
+        Assert.assertEquals(State.Idle, hcalExecutor.getStatus().getState());
+        Assert.assertEquals(State.AwaitingApproval, ecalExecutor.getStatus().getState());
+
+        Assert.assertEquals("accepted", recoveryService.interrupt().getStatus());
+        Assert.assertTrue(executorPartitions.getBusy().isEmpty());
+        Assert.assertEquals(2, executorPartitions.size());
+    }
+
+    private static IExecutor buildExecutor() {
+        return TestExecutorFactory.build(
+                TestExecutorFactory.approvalConsumerThatNeverAccepts,
+                TestExecutorFactory.recoveryJobConsumerThatCompletesImmediately,
+                TestExecutorFactory.report,
+                TestExecutorFactory.observerThatTimeoutsImmediately,
+                10,
+                10,
+                TestExecutorFactory.printRecoveryProcedurePersistor,
+                TestExecutorFactory.printOnUpdateConsumer,
+                TestExecutorFactory.isAvailableSupplier,
+                TestExecutorFactory.interruptConsumer);
+    }
+
+    private static RecoveryRequest request(Long problemId, String... redRecycle) {
+        return RecoveryRequest.builder()
+                .problemId(problemId)
+                .problemTitle("Problem " + problemId)
+                .recoveryRequestSteps(Arrays.asList(
+                        RecoveryRequestStep.builder()
+                                .humanReadable("Recycle " + Arrays.toString(redRecycle))
+                                .redRecycle(set(redRecycle))
+                                .stepIndex(0)
+                                .build()))
+                .build();
+    }
+
+    private static HashSet<String> set(String... subsystems) {
+        return new HashSet<>(Arrays.asList(subsystems));
+    }
+}
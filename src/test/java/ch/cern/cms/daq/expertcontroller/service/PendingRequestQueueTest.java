@@ -0,0 +1,86 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PendingRequestQueueTest {
+
+    private final AtomicLong now = new AtomicLong(1000000);
+
+    private final PendingRequestQueue queue = new PendingRequestQueue(3, 1000, 10000, now::get);
+
+    @Test
+    public void higherPriorityFirstTest() {
+        queue.offer(request(1L, 0));
+        queue.offer(request(2L, 5));
+        queue.offer(request(3L, null));
+
+        Assert.assertEquals(Long.valueOf(2), queue.poll().getProblemId());
+        Assert.assertEquals(Long.valueOf(1), queue.poll().getProblemId());
+        Assert.assertEquals(Long.valueOf(3), queue.poll().getProblemId());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void waitingRequestGainsPriorityTest() {
+        queue.offer(request(1L, 0));
+        now.addAndGet(3000);
+        queue.offer(request(2L, 2));
+
+        // 3 s in the queue gives the first request priority 3
+        Assert.assertEquals(Long.valueOf(1), queue.poll().getProblemId());
+    }
+
+    @Test
+    public void requestOfQueuedProblemReplacesQueuedOneTest() {
+        queue.offer(request(1L, 0));
+        queue.offer(request(2L, 0));
+        RecoveryRequest resubmitted = request(1L, 0);
+        queue.offer(resubmitted);
+
+        Assert.assertEquals(2, queue.size());
+        Assert.assertSame(resubmitted, queue.poll());
+    }
+
+    @Test
+    public void staleRequestsAreDroppedTest() {
+        queue.offer(request(1L, 0));
+        queue.offer(request(2L, 0));
+        now.addAndGet(6000);
+        queue.offer(request(2L, 0));
+        now.addAndGet(6000);
+
+        Assert.assertEquals(Long.valueOf(2), queue.poll().getProblemId());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void lowestPriorityIsDroppedWhenFullTest() {
+        Assert.assertTrue(queue.offer(request(1L, 1)));
+        Assert.assertTrue(queue.offer(request(2L, 0)));
+        Assert.assertTrue(queue.offer(request(3L, 2)));
+
+        Assert.assertFalse(queue.offer(request(4L, 0)));
+        Assert.assertTrue(queue.offer(request(5L, 3)));
+
+        Assert.assertEquals(3, queue.size());
+        Assert.assertFalse(queue.remove(2L));
+        Assert.assertEquals(Long.valueOf(5), queue.poll().getProblemId());
+        Assert.assertEquals(Long.valueOf(3), queue.poll().getProblemId());
+        Assert.assertEquals(Long.valueOf(1), queue.poll().getProblemId());
+    }
+
+    @Test
+    public void finishedProblemIsRemovedTest() {
+        queue.offer(request(1L, 0));
+        Assert.assertTrue(queue.remove(1L));
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    private static RecoveryRequest request(Long problemId, Integer priority) {
+        return RecoveryRequest.builder().problemId(problemId).priority(priority).withPostponement(true).build();
+    }
+}
@@ -0,0 +1,275 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.entity.Event;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.EventRepository;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RecoveryProcedurePersisterTest {
+
+    private final RecoveryProcedureRepository repository = Mockito.mock(RecoveryProcedureRepository.class);
+
+    private final EventRepository eventRepository = Mockito.mock(EventRepository.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void repeatedUpdatesAreSavedOnceInBatchTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 100000);
+        persister.init();
+
+        RecoveryProcedure first = procedure(1L);
+        RecoveryProcedure second = procedure(2L);
+        persister.persist(first);
+        persister.persist(second);
+        persister.persist(first);
+
+        verify(repository, never()).save(any(RecoveryProcedure.class));
+        Assert.assertEquals(2, persister.getPending());
+
+        persister.flush();
+
+        ArgumentCaptor<List> batch = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(1)).save(batch.capture());
+        Assert.assertEquals(2, batch.getValue().size());
+        Assert.assertEquals(0, persister.getPending());
+
+        persister.shutdown();
+    }
+
+    @Test
+    public void finishedProcedureIsSavedImmediatelyTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 100000);
+        persister.init();
+
+        RecoveryProcedure procedure = procedure(1L);
+        persister.persist(procedure);
+        procedure.setEnd(OffsetDateTime.now());
+        persister.persist(procedure);
+
+        verify(repository, times(1)).save(procedure);
+        Assert.assertEquals(0, persister.getPending());
+
+        persister.shutdown();
+    }
+
+    @Test
+    public void pendingUpdatesAreFlushedPeriodicallyAndOnShutdownTest() throws InterruptedException {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 50);
+        persister.init();
+
+        persister.persist(procedure(1L));
+        Thread.sleep(300);
+        Assert.assertEquals(0, persister.getPending());
+
+        persister.persist(procedure(2L));
+        persister.shutdown();
+        Assert.assertEquals(0, persister.getPending());
+        verify(repository, times(2)).save(anyListOf(RecoveryProcedure.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failedFlushIsRetriedTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 100000);
+        persister.init();
+        Mockito.when(repository.save(any(List.class)))
+                .thenThrow(new IllegalStateException("DB down"))
+                .thenReturn(null);
+
+        persister.persist(procedure(1L));
+        persister.flush();
+        Assert.assertEquals(1, persister.getPending());
+
+        persister.flush();
+        Assert.assertEquals(0, persister.getPending());
+
+        persister.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void onlyNewEventsAreAppendedToJournalTest() {
+        AtomicLong ids = new AtomicLong();
+        List<Event> journal = new ArrayList<>();
+        Mockito.when(eventRepository.save(any(List.class))).thenAnswer(invocation -> {
+            List<Event> appended = invocation.getArgumentAt(0, List.class);
+            appended.forEach(event -> event.setId(ids.incrementAndGet()));
+            journal.addAll(appended);
+            return appended;
+        });
+
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 100000);
+        persister.init();
+
+        RecoveryProcedure procedure = procedure(7L);
+        procedure.setEventSummary(new ArrayList<>());
+        procedure.getEventSummary().add(event("started"));
+        procedure.getEventSummary().add(event("job 1"));
+        persister.persist(procedure);
+        persister.flush();
+
+        procedure.getEventSummary().add(event("job 2"));
+        persister.persist(procedure);
+        persister.flush();
+
+        // nothing new, nothing appended
+        persister.persist(procedure);
+        persister.flush();
+
+        verify(eventRepository, times(2)).save(anyListOf(Event.class));
+        Assert.assertEquals(3, journal.size());
+        for (int i = 0; i < journal.size(); i++) {
+            Assert.assertEquals(procedure.getEventSummary().get(i).getContent(), journal.get(i).getContent());
+            Assert.assertEquals(Integer.valueOf(i), journal.get(i).getSequence());
+            Assert.assertEquals(Long.valueOf(7L), journal.get(i).getProcedureId());
+        }
+
+        persister.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void eventsAreNotAppendedTwiceWhenSaveFailsTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 100000);
+        persister.init();
+        Mockito.when(repository.save(any(List.class)))
+                .thenThrow(new IllegalStateException("DB down"))
+                .thenReturn(null);
+        Mockito.when(eventRepository.save(any(List.class))).thenAnswer(invocation -> {
+            List<Event> appended = invocation.getArgumentAt(0, List.class);
+            appended.forEach(event -> event.setId(1L));
+            return appended;
+        });
+
+        RecoveryProcedure procedure = procedure(1L);
+        procedure.setEventSummary(new ArrayList<>());
+        procedure.getEventSummary().add(event("started"));
+        persister.persist(procedure);
+        persister.flush();
+        persister.flush();
+
+        verify(eventRepository, times(1)).save(anyListOf(Event.class));
+        Assert.assertEquals(0, persister.getPending());
+
+        persister.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void procedureIsSavedAsItWasWhenPersistedTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 100000);
+        persister.init();
+
+        RecoveryJob job = RecoveryJob.builder().job("J1").status("Recovering").build();
+        RecoveryProcedure procedure = procedure(1L);
+        procedure.setState("Recovering");
+        procedure.setExecutedJobs(new ArrayList<>(Collections.singletonList(job)));
+        persister.persist(procedure);
+
+        // updated by the FSM before the flush, without persisting
+        procedure.setState("Observe");
+        job.setStatus("Finished");
+        procedure.getExecutedJobs().add(RecoveryJob.builder().job("J2").build());
+
+        persister.flush();
+
+        ArgumentCaptor<List> batch = ArgumentCaptor.forClass(List.class);
+        verify(repository).save(batch.capture());
+        RecoveryProcedure saved = (RecoveryProcedure) batch.getValue().get(0);
+        Assert.assertNotSame(procedure, saved);
+        Assert.assertEquals("Recovering", saved.getState());
+        Assert.assertEquals(1, saved.getExecutedJobs().size());
+        Assert.assertEquals("Recovering", saved.getExecutedJobs().get(0).getStatus());
+
+        persister.shutdown();
+    }
+
+    @Test
+    public void generatedJobIdsAreGivenToLaterCopiesTest() {
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(repository, eventRepository, 0);
+        persister.init();
+        List<Long> savedJobIds = new ArrayList<>();
+        Mockito.when(repository.save(any(RecoveryProcedure.class))).thenAnswer(invocation -> {
+            RecoveryProcedure saved = RecoveryProcedurePersister.snapshot(
+                    invocation.getArgumentAt(0, RecoveryProcedure.class));
+            saved.getExecutedJobs().forEach(job -> {
+                savedJobIds.add(job.getId());
+                if (job.getId() == null) {
+                    job.setId(100L + savedJobIds.size());
+                }
+            });
+            return saved;
+        });
+
+        RecoveryProcedure procedure = procedure(1L);
+        procedure.setExecutedJobs(new ArrayList<>());
+        procedure.getExecutedJobs().add(RecoveryJob.builder().job("J1").build());
+        persister.persist(procedure);
+        procedure.getExecutedJobs().add(RecoveryJob.builder().job("J2").build());
+        persister.persist(procedure);
+
+        // J1 is saved with the id it got on the first save, J2 is new
+        Assert.assertEquals(Arrays.asList(null, 101L, null), savedJobIds);
+        Assert.assertNull(procedure.getExecutedJobs().get(0).getId());
+
+        persister.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void procedureAndEventsAreWrittenInOneTransactionTest() {
+        PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        TransactionStatus transaction = Mockito.mock(TransactionStatus.class);
+        Mockito.when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transaction);
+        Mockito.when(eventRepository.save(any(List.class))).thenThrow(new IllegalStateException("DB down"));
+
+        RecoveryProcedurePersister persister = new RecoveryProcedurePersister(
+                repository, eventRepository, transactionManager, 100000);
+        persister.init();
+
+        RecoveryProcedure procedure = procedure(1L);
+        procedure.setEventSummary(new ArrayList<>());
+        procedure.getEventSummary().add(event("started"));
+        persister.persist(procedure);
+        persister.flush();
+
+        // procedure saved, events failed: both rolled back and retried on next flush
+        verify(transactionManager, times(1)).getTransaction(any(TransactionDefinition.class));
+        verify(transactionManager).rollback(transaction);
+        verify(transactionManager, never()).commit(transaction);
+        Assert.assertEquals(1, persister.getPending());
+
+        persister.shutdown();
+    }
+
+    private static Event event(String content) {
+        return Event.builder().content(content).date(OffsetDateTime.now()).build();
+    }
+
+    private static RecoveryProcedure procedure(Long id) {
+        RecoveryProcedure procedure = RecoveryProcedure.builder().build();
+        procedure.setId(id);
+        return procedure;
+    }
+}
@@ -0,0 +1,225 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRecord;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = {MockServicesProvider.class})
+public class RecoveryRecordServiceTest {
+
+    @Autowired
+    private RecoveryProcedureRepository recoveryProcedureRepository;
+
+    @Autowired
+    private RecoveryRecordService recoveryRecordService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final OffsetDateTime now = OffsetDateTime.now();
+
+    private final List<Long> ids = new ArrayList<>();
+
+    @Before
+    public void prepare() {
+        recoveryProcedureRepository.deleteAll();
+
+        // two procedures with the same start, order is decided by id
+        for (int minutes : new int[]{50, 40, 40, 30, 20}) {
+            RecoveryProcedure procedure = RecoveryProcedure.builder()
+                    .problemTitle("Problem " + minutes)
+                    .problemIds(Arrays.asList((long) minutes, minutes + 1L))
+                    .start(now.minusMinutes(minutes))
+                    .end(now.minusMinutes(minutes - 5))
+                    .executedJobs(Arrays.asList(job("first"), job("second")))
+                    .build();
+            ids.add(recoveryProcedureRepository.save(procedure).getId());
+        }
+
+        // outside of the requested span
+        recoveryProcedureRepository.save(RecoveryProcedure.builder()
+                                                 .start(now.minusDays(2))
+                                                 .end(now.minusDays(2))
+                                                 .build());
+    }
+
+    @After
+    public void cleanup() {
+        recoveryProcedureRepository.deleteAll();
+    }
+
+    @Test
+    public void recordsArePagedByStartTest() {
+        List<Long> seen = new ArrayList<>();
+        Long after = null;
+        List<RecoveryRecord> page;
+        do {
+            page = recoveryRecordService.getRecords(now.minusHours(1), now, after, 2);
+            List<RecoveryRecord> procedures = page.stream()
+                    .filter(r -> r.getName().startsWith("Recovery procedure"))
+                    .collect(Collectors.toList());
+            Assert.assertTrue(procedures.size() <= 2);
+            // every procedure is followed by its jobs
+            Assert.assertEquals(procedures.size() * 3, page.size());
+            Assert.assertEquals("first", page.isEmpty() ? "first" : page.get(1).getDescription());
+
+            procedures.forEach(r -> seen.add(r.getId()));
+            after = procedures.isEmpty() ? null : procedures.get(procedures.size() - 1).getId();
+        } while (!page.isEmpty());
+
+        Assert.assertEquals(ids, seen);
+    }
+
+    @Test
+    public void proceduresArePagedLatestFirstTest() {
+        List<Long> seen = new ArrayList<>();
+        Long after = null;
+        List<ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure> page;
+        do {
+            page = recoveryRecordService.getProcedures(now.minusHours(1), now, after, 2);
+            Assert.assertTrue(page.size() <= 2);
+            page.forEach(p -> seen.add(p.getId()));
+            after = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+        } while (!page.isEmpty());
+
+        List<Long> expected = new ArrayList<>(ids);
+        expected.sort((a, b) -> Long.compare(b, a));
+        Assert.assertEquals(expected, seen);
+    }
+
+    @Test
+    public void pageSizeIsLimitedTest() {
+        Assert.assertEquals(15, recoveryRecordService.getRecords(now.minusHours(1), now, null, null).size());
+        Assert.assertEquals(3, recoveryRecordService.getRecords(now.minusHours(1), now, null, 1).size());
+        Assert.assertTrue(recoveryRecordService.getRecords(now.minusHours(1), now, -1L, 1).isEmpty());
+    }
+
+    @Test
+    public void requestWithoutLimitIsNotTruncatedTest() {
+        Object maxPageSize = ReflectionTestUtils.getField(recoveryRecordService, "maxPageSize");
+        ReflectionTestUtils.setField(recoveryRecordService, "maxPageSize", 2);
+        try {
+            Assert.assertEquals(15, recoveryRecordService.getRecords(now.minusHours(1), now, null, null).size());
+            Assert.assertEquals(5, recoveryRecordService.getProcedures(now.minusHours(1), now, null, null).size());
+            Assert.assertEquals(2, recoveryRecordService.getProcedures(now.minusHours(1), now, null, 3).size());
+            Assert.assertEquals(4, recoveryRecordService.getProcedures(now.minusHours(1), now, ids.get(4), null).size());
+        } finally {
+            ReflectionTestUtils.setField(recoveryRecordService, "maxPageSize", maxPageSize);
+        }
+    }
+
+    @Test
+    public void procedureStartedBeforeTimeSpanIsFoundWithinMaxDurationTest() {
+        RecoveryProcedure longProcedure = recoveryProcedureRepository.save(RecoveryProcedure.builder()
+                                                                                   .problemTitle("Long")
+                                                                                   .start(now.minusMinutes(70))
+                                                                                   .end(now.minusMinutes(55))
+                                                                                   .build());
+        Assert.assertTrue(recordIds(recoveryRecordService.getRecords(now.minusHours(1), now))
+                                  .contains(longProcedure.getId()));
+
+        Object maxProcedureDuration = ReflectionTestUtils.getField(recoveryRecordService, "maxProcedureDuration");
+        ReflectionTestUtils.setField(recoveryRecordService, "maxProcedureDuration", 5 * 60 * 1000L);
+        try {
+            Assert.assertFalse(recordIds(recoveryRecordService.getRecords(now.minusHours(1), now))
+                                       .contains(longProcedure.getId()));
+            Assert.assertEquals(ids, recordIds(recoveryRecordService.getRecords(now.minusHours(1), now)));
+        } finally {
+            ReflectionTestUtils.setField(recoveryRecordService, "maxProcedureDuration", maxProcedureDuration);
+        }
+    }
+
+    @Test
+    public void recordsAreExportedAsLinesTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recoveryRecordService.exportRecords(now.minusHours(1), now, out);
+
+        List<JsonNode> lines = lines(out);
+        Assert.assertEquals(15, lines.size());
+        Assert.assertEquals(ids.get(0).longValue(), lines.get(0).get("id").asLong());
+        Assert.assertEquals("first", lines.get(1).get("description").asText());
+        Assert.assertEquals(ids.get(4).longValue(), lines.get(12).get("id").asLong());
+    }
+
+    @Test
+    public void proceduresAreExportedAsLinesTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recoveryRecordService.exportProcedures(now.minusHours(1), now, out);
+
+        List<JsonNode> lines = lines(out);
+        List<Long> exported = lines.stream().map(l -> l.get("id").asLong()).collect(Collectors.toList());
+        Assert.assertEquals(ids, exported);
+
+        // same representation as /procedures
+        Map<Long, JsonNode> served = new HashMap<>();
+        for (ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedure procedure :
+                recoveryRecordService.getProcedures(now.minusHours(1), now)) {
+            served.put(procedure.getId(), objectMapper.readTree(objectMapper.writeValueAsString(procedure)));
+        }
+        lines.forEach(line -> Assert.assertEquals(served.get(line.get("id").asLong()), line));
+    }
+
+    @Test
+    public void procedureDetailIsLoadedWithCollectionsTest() {
+        PersistenceUnitUtil persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+
+        RecoveryProcedure detail = recoveryProcedureRepository.findById(ids.get(0)).get();
+        Assert.assertTrue(persistenceUnitUtil.isLoaded(detail, "executedJobs"));
+        Assert.assertTrue(persistenceUnitUtil.isLoaded(detail, "problemIds"));
+        Assert.assertEquals(Arrays.asList("first", "second"),
+                            detail.getExecutedJobs().stream().map(RecoveryJob::getJob).collect(Collectors.toList()));
+        Assert.assertEquals(Arrays.asList(50L, 51L), detail.getProblemIds());
+
+        RecoveryProcedure listed = recoveryProcedureRepository.findTop20ByOrderByStartDesc().get(0);
+        Assert.assertFalse(persistenceUnitUtil.isLoaded(listed, "executedJobs"));
+    }
+
+    private List<JsonNode> lines(ByteArrayOutputStream out) throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString("UTF-8").split("\n")) {
+            Assert.assertEquals(line.trim(), line);
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private static List<Long> recordIds(List<RecoveryRecord> records) {
+        return records.stream()
+                .filter(r -> r.getName().startsWith("Recovery procedure"))
+                .map(RecoveryRecord::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static RecoveryJob job(String name) {
+        return RecoveryJob.builder().job(name).start(OffsetDateTime.now()).end(OffsetDateTime.now()).build();
+    }
+}
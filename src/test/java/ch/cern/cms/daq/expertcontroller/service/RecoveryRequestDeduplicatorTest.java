@@ -0,0 +1,219 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryResponse;
+import ch.cern.cms.daq.expertcontroller.entity.ProcessedRecoveryRequest;
+import ch.cern.cms.daq.expertcontroller.repository.ProcessedRecoveryRequestRepository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+
+public class RecoveryRequestDeduplicatorTest {
+
+    private final AtomicLong now = new AtomicLong(1000000);
+
+    private final ProcessedRecoveryRequestRepository repository = Mockito.mock(ProcessedRecoveryRequestRepository.class);
+
+    private final RecoveryRequestDeduplicator deduplicator = new RecoveryRequestDeduplicator(repository, 10000, 2, now::get);
+
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private final Function<RecoveryRequest, RecoveryResponse> processor = request -> RecoveryResponse.builder()
+            .acceptanceDecision("accepted")
+            .recoveryProcedureId((long) processed.incrementAndGet())
+            .build();
+
+    @Test
+    public void repeatedRequestIsAnsweredWithFirstResponseTest() {
+        RecoveryResponse first = deduplicator.process("a", request(1L), processor);
+        RecoveryResponse retry = deduplicator.process("a", request(1L), processor);
+        RecoveryResponse otherProblem = deduplicator.process("b", request(2L), processor);
+
+        Assert.assertSame(first, retry);
+        Assert.assertEquals(Long.valueOf(2), otherProblem.getRecoveryProcedureId());
+        Assert.assertEquals(2, processed.get());
+        verify(repository, Mockito.times(2)).save(any(ProcessedRecoveryRequest.class));
+    }
+
+    @Test
+    public void requestWithoutKeyIsAlwaysProcessedTest() {
+        deduplicator.process(null, request(1L), processor);
+        deduplicator.process(null, request(1L), processor);
+
+        Assert.assertEquals(2, processed.get());
+        Assert.assertEquals(0, deduplicator.size());
+        verify(repository, Mockito.never()).findOne(anyString());
+        verify(repository, Mockito.never()).save(any(ProcessedRecoveryRequest.class));
+    }
+
+    @Test
+    public void requestWithoutKeyRetriedWhileProcessedWaitsForFirstTest() throws Exception {
+        RecoveryRequestDeduplicator byContent = new RecoveryRequestDeduplicator(repository, 10000, 2, true, now::get);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<RecoveryRequest, RecoveryResponse> slowProcessor = request -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return processor.apply(request);
+        };
+
+        CompletableFuture<RecoveryResponse> first =
+                CompletableFuture.supplyAsync(() -> byContent.process(null, request(1L), slowProcessor));
+        Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<RecoveryResponse> retry =
+                CompletableFuture.supplyAsync(() -> byContent.process(null, request(1L), slowProcessor));
+        RecoveryResponse otherProblem = byContent.process(null, request(2L), processor);
+
+        release.countDown();
+        Assert.assertSame(first.get(5, TimeUnit.SECONDS), retry.get(5, TimeUnit.SECONDS));
+        Assert.assertNotEquals(first.get().getRecoveryProcedureId(), otherProblem.getRecoveryProcedureId());
+
+        // the same problem reported again once answered is processed
+        byContent.process(null, request(1L), processor);
+        Assert.assertEquals(3, processed.get());
+        verify(repository, Mockito.never()).findOne(anyString());
+        verify(repository, Mockito.never()).save(any(ProcessedRecoveryRequest.class));
+    }
+
+    @Test
+    public void idempotencyKeyIdentifiesRequestTest() {
+        RecoveryResponse first = deduplicator.process("a", request(1L), processor);
+        RecoveryResponse retry = deduplicator.process("a", request(2L), processor);
+        RecoveryResponse other = deduplicator.process("b", request(1L), processor);
+
+        Assert.assertSame(first, retry);
+        Assert.assertNotEquals(first.getRecoveryProcedureId(), other.getRecoveryProcedureId());
+    }
+
+    @Test
+    public void requestIsProcessedAgainAfterWindowTest() {
+        deduplicator.process("a", request(1L), processor);
+        now.addAndGet(10001);
+        deduplicator.process("a", request(1L), processor);
+
+        Assert.assertEquals(2, processed.get());
+    }
+
+    @Test
+    public void storedResponseIsReturnedAfterEvictionTest() {
+        Mockito.when(repository.findOne("key:a")).thenReturn(ProcessedRecoveryRequest.builder()
+                .requestKey("key:a")
+                .received(OffsetDateTime.ofInstant(Instant.ofEpochMilli(now.get() - 5000), ZoneId.systemDefault()))
+                .acceptanceDecision("rejected")
+                .rejectedDueToConditionId(7L)
+                .build());
+
+        RecoveryResponse response = deduplicator.process("a", request(1L), processor);
+
+        Assert.assertEquals("rejected", response.getAcceptanceDecision());
+        Assert.assertEquals(Long.valueOf(7), response.getRejectedDueToConditionId());
+        Assert.assertEquals(0, processed.get());
+    }
+
+    @Test
+    public void failedRequestIsNotRememberedTest() {
+        try {
+            deduplicator.process("a", request(1L), request -> {
+                throw new IllegalArgumentException("bad request");
+            });
+            Assert.fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        deduplicator.process("a", request(1L), processor);
+
+        Assert.assertEquals(1, processed.get());
+        Assert.assertEquals(1, deduplicator.size());
+    }
+
+    @Test
+    public void retryWaitsForFirstRequestTest() throws Exception {
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<RecoveryResponse> first = CompletableFuture.supplyAsync(
+                () -> deduplicator.process("a", request(1L), request -> {
+                    processing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return processor.apply(request);
+                }));
+        Assert.assertTrue(processing.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<RecoveryResponse> retry = CompletableFuture.supplyAsync(
+                () -> deduplicator.process("a", request(1L), processor));
+        Thread.sleep(50);
+        Assert.assertFalse(retry.isDone());
+
+        release.countDown();
+
+        Assert.assertSame(first.get(5, TimeUnit.SECONDS), retry.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, processed.get());
+    }
+
+    @Test
+    public void memoryIsBoundedByCapacityTest() {
+        deduplicator.process("a", request(1L), processor);
+        deduplicator.process("b", request(2L), processor);
+        deduplicator.process("c", request(3L), processor);
+
+        Assert.assertEquals(2, deduplicator.size());
+    }
+
+    @Test
+    public void purgeRemovesRequestsOutOfWindowTest() {
+        deduplicator.process("a", request(1L), processor);
+        now.addAndGet(10001);
+
+        deduplicator.purge();
+
+        Assert.assertEquals(0, deduplicator.size());
+        verify(repository).deleteReceivedBefore(any(OffsetDateTime.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLongKeyIsRejectedTest() {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < RecoveryRequestDeduplicator.MAX_KEY_LENGTH; i++) {
+            key.append('k');
+        }
+        deduplicator.process(key.toString(), request(1L), processor);
+    }
+
+    @Test
+    public void disabledWindowProcessesEveryRequestTest() {
+        RecoveryRequestDeduplicator disabled = new RecoveryRequestDeduplicator(repository, 0, 2, now::get);
+
+        disabled.process("a", request(1L), processor);
+        disabled.process("a", request(1L), processor);
+
+        Assert.assertEquals(2, processed.get());
+        verify(repository, Mockito.never()).findOne(anyString());
+    }
+
+    private static RecoveryRequest request(Long problemId) {
+        return RecoveryRequest.builder().problemId(problemId).problemTitle("Problem " + problemId).build();
+    }
+}
@@ -0,0 +1,177 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.Event;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryJobStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryProcedureStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryServiceStatus;
+import ch.cern.cms.daq.expertcontroller.datatransfer.RecoveryStatusDelta;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+public class RecoveryStatusBroadcasterTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void updatesWithinWindowAreMergedTest() throws InterruptedException {
+
+        AtomicInteger built = new AtomicInteger();
+        AtomicReference<RecoveryServiceStatus> current = new AtomicReference<>(status(1L, "Recovering", "a"));
+        List<RecoveryServiceStatus> sent = new ArrayList<>();
+        List<RecoveryStatusDelta> deltas = new ArrayList<>();
+
+        RecoveryStatusBroadcaster broadcaster = new RecoveryStatusBroadcaster(
+                50,
+                () -> {
+                    built.incrementAndGet();
+                    return current.get();
+                },
+                sent::add,
+                deltas::add,
+                scheduler);
+
+        for (int i = 0; i < 10; i++) {
+            broadcaster.requestUpdate();
+        }
+        current.set(status(1L, "Observe", "a", "b"));
+        Thread.sleep(200);
+
+        Assert.assertEquals(1, built.get());
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals("Observe", sent.get(0).getExecutorState());
+        Assert.assertEquals(1, deltas.size());
+
+        // status that did not change is not broadcast again
+        broadcaster.requestUpdate();
+        Thread.sleep(200);
+        Assert.assertEquals(2, built.get());
+        Assert.assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void fullStatusIsSentOnlyOnResetTest() {
+
+        AtomicReference<RecoveryServiceStatus> current = new AtomicReference<>(status(1L, "Recovering", "a"));
+        List<RecoveryServiceStatus> sent = new ArrayList<>();
+        List<RecoveryStatusDelta> deltas = new ArrayList<>();
+
+        RecoveryStatusBroadcaster broadcaster = new RecoveryStatusBroadcaster(
+                0, current::get, sent::add, deltas::add, scheduler);
+
+        broadcaster.requestUpdate();
+        current.set(status(1L, "Observe", "a", "b"));
+        broadcaster.requestUpdate();
+        current.set(status(2L, "SelectingJob", "x"));
+        broadcaster.requestUpdate();
+
+        Assert.assertEquals(3, deltas.size());
+        Assert.assertEquals(Arrays.asList("Recovering", "SelectingJob"),
+                            sent.stream().map(RecoveryServiceStatus::getExecutorState).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void fullStatusIsSentWithEveryDeltaWhenConfiguredTest() {
+
+        AtomicReference<RecoveryServiceStatus> current = new AtomicReference<>(status(1L, "Recovering", "a"));
+        List<RecoveryServiceStatus> sent = new ArrayList<>();
+        List<RecoveryStatusDelta> deltas = new ArrayList<>();
+
+        RecoveryStatusBroadcaster broadcaster = new RecoveryStatusBroadcaster(
+                0, current::get, sent::add, deltas::add, scheduler, true);
+
+        broadcaster.requestUpdate();
+        current.set(status(1L, "Observe", "a", "b"));
+        broadcaster.requestUpdate();
+
+        Assert.assertEquals(2, deltas.size());
+        Assert.assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void circuitStateChangeIsInDeltaTest() {
+
+        RecoveryServiceStatus previous = status(1L, "Observe", "a");
+        previous.setRcmsCircuitState("Closed");
+        RecoveryServiceStatus current = status(1L, "Observe", "a");
+        current.setRcmsCircuitState("Open");
+
+        RecoveryStatusDelta delta = RecoveryStatusBroadcaster.delta(previous, current);
+
+        Assert.assertFalse(delta.isReset());
+        Assert.assertEquals("Open", delta.getRcmsCircuitState());
+        Assert.assertTrue(delta.getNewEvents().isEmpty());
+        Assert.assertTrue(delta.getChangedJobStatuses().isEmpty());
+    }
+
+    @Test
+    public void deltaContainsOnlyChangesTest() {
+
+        RecoveryServiceStatus previous = status(1L, "Recovering", "a");
+        RecoveryServiceStatus current = status(1L, "Observe", "a", "b", "c");
+        current.getLastProcedureStatus().getJobStatuses().get(1).setStatus("Completed");
+
+        RecoveryStatusDelta delta = RecoveryStatusBroadcaster.delta(previous, current);
+
+        Assert.assertFalse(delta.isReset());
+        Assert.assertEquals("Observe", delta.getExecutorState());
+        Assert.assertEquals(Arrays.asList("b", "c"), contents(delta.getNewEvents()));
+        Assert.assertEquals(1, delta.getChangedJobStatuses().size());
+        Assert.assertEquals(Integer.valueOf(1), delta.getChangedJobStatuses().get(0).getStepIndex());
+    }
+
+    @Test
+    public void newProcedureResetsTheViewTest() {
+
+        RecoveryServiceStatus previous = status(1L, "Idle", "a", "b");
+        RecoveryServiceStatus current = status(2L, "SelectingJob", "x");
+
+        RecoveryStatusDelta delta = RecoveryStatusBroadcaster.delta(previous, current);
+
+        Assert.assertTrue(delta.isReset());
+        Assert.assertEquals(Long.valueOf(2), delta.getProcedureId());
+        Assert.assertEquals(Arrays.asList("x"), contents(delta.getNewEvents()));
+        Assert.assertEquals(2, delta.getChangedJobStatuses().size());
+
+        Assert.assertTrue(RecoveryStatusBroadcaster.delta(null, current).isReset());
+    }
+
+    private static RecoveryServiceStatus status(Long procedureId, String state, String... events) {
+        List<Event> actionSummary = Arrays.stream(events).map(c -> {
+            Event event = new Event();
+            event.setContent(c);
+            return event;
+        }).collect(Collectors.toList());
+
+        List<RecoveryJobStatus> jobStatuses = Arrays.asList(
+                RecoveryJobStatus.builder().stepIndex(0).status("Completed").build(),
+                RecoveryJobStatus.builder().stepIndex(1).status("Recovering").build());
+
+        return RecoveryServiceStatus.builder()
+                .executorState(state)
+                .lastProcedureStatus(RecoveryProcedureStatus.builder()
+                                             .id(procedureId)
+                                             .actionSummary(actionSummary)
+                                             .jobStatuses(jobStatuses)
+                                             .build())
+                .build();
+    }
+
+    private static List<String> contents(List<Event> events) {
+        return events.stream().map(Event::getContent).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,202 @@
+package ch.cern.cms.daq.expertcontroller.service;
+
+import ch.cern.cms.daq.expertcontroller.datatransfer.StepEffectiveness;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
+import ch.cern.cms.daq.expertcontroller.repository.RecoveryProcedureRepository;
+import ch.cern.cms.daq.expertcontroller.service.StepEffectivenessStatistics.Mode;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class StepEffectivenessStatisticsTest {
+
+    private static final String TITLE = "FED stuck";
+
+    private static final OffsetDateTime T0 = OffsetDateTime.parse("2018-03-01T10:00:00+01:00");
+
+    private long ids;
+
+    @Test
+    public void effectiveStepIsRankedFirstTest() {
+        StepEffectivenessStatistics statistics = new StepEffectivenessStatistics(Mode.Reorder, 3, 10);
+        for (int i = 0; i < 3; i++) {
+            // ECAL recycle has no effect, PIXEL recycle fixes the problem
+            statistics.record(procedure(State.Completed, 100, job(0, "ECAL"), 30, job(1, "PIXEL"), 30));
+        }
+
+        RecoveryProcedure procedure = newProcedure(job(0, "ECAL"), job(1, "PIXEL"));
+        statistics.apply(procedure);
+
+        Assert.assertEquals(Arrays.asList(1, 0), stepIndexes(procedure.getProcedure()));
+
+        List<StepEffectiveness> steps = statistics.getStatistics(TITLE);
+        Assert.assertEquals(2, steps.size());
+        Assert.assertEquals(StepEffectivenessStatistics.signature(job(1, "PIXEL")), steps.get(0).getSignature());
+        Assert.assertEquals(3, steps.get(0).getSuccesses());
+        Assert.assertEquals(30000, steps.get(0).getMeanDuration());
+        Assert.assertEquals(0, steps.get(1).getSuccesses());
+        Assert.assertEquals(3, steps.get(1).getAttempts());
+    }
+
+    @Test
+    public void fasterStepIsRankedFirstTest() {
+        StepEffectivenessStatistics statistics = new StepEffectivenessStatistics(Mode.Reorder, 2, 10);
+        for (int i = 0; i < 2; i++) {
+            // TRACKER fixes half of the problems in 10 s, DT fixes all in 60 s
+            statistics.record(procedure(State.Completed, 100, job(0, "TRACKER"), 10));
+            statistics.record(procedure(State.Completed, 100, job(0, "TRACKER"), 10, job(1, "DT"), 60));
+        }
+
+        List<RecoveryJob> ranked = statistics.rank(TITLE, Arrays.asList(job(0, "DT"), job(1, "TRACKER")));
+
+        Assert.assertEquals(Arrays.asList(1, 0), stepIndexes(ranked));
+    }
+
+    @Test
+    public void stepsWithoutEnoughAttemptsKeepPositionTest() {
+        StepEffectivenessStatistics statistics = new StepEffectivenessStatistics(Mode.Reorder, 2, 10);
+        for (int i = 0; i < 2; i++) {
+            statistics.record(procedure(State.Completed, 100, job(0, "ECAL"), 30, job(1, "PIXEL"), 30));
+        }
+        statistics.record(procedure(State.Completed, 100, job(0, "HCAL"), 30));
+
+        List<RecoveryJob> ranked = statistics.rank(TITLE, Arrays.asList(
+                job(0, "HCAL"), job(1, "ECAL"), job(2, "CSC"), job(3, "PIXEL")));
+
+        Assert.assertEquals(Arrays.asList(0, 3, 2, 1), stepIndexes(ranked));
+    }
+
+    @Test
+    public void outcomeOfCancelledStepIsNotCountedTest() {
+        StepEffectivenessStatistics statistics = new StepEffectivenessStatistics(Mode.Reorder, 1, 10);
+        RecoveryProcedure cancelled = procedure(State.Cancelled, 100, job(0, "ECAL"), 30, job(1, "PIXEL"), 5);
+
+        statistics.record(cancelled);
+        statistics.record(cancelled);
+
+        List<StepEffectiveness> steps = statistics.getStatistics(TITLE);
+        Assert.assertEquals(1, steps.size());
+        Assert.assertEquals(StepEffectivenessStatistics.signature(job(0, "ECAL")), steps.get(0).getSignature());
+        Assert.assertEquals(1, steps.get(0).getAttempts());
+        Assert.assertEquals(0, steps.get(0).getSuccesses());
+    }
+
+    @Test
+    public void proposeModeKeepsOrderTest() {
+        StepEffectivenessStatistics statistics = new StepEffectivenessStatistics(Mode.Propose, 1, 10);
+        statistics.record(procedure(State.Completed, 100, job(0, "ECAL"), 30, job(1, "PIXEL"), 30));
+
+        RecoveryProcedure procedure = newProcedure(job(0, "ECAL"), job(1, "PIXEL"));
+        statistics.apply(procedure);
+
+        Assert.assertEquals(Arrays.asList(0, 1), stepIndexes(procedure.getProcedure()));
+        Assert.assertEquals(Arrays.asList(1, 0), stepIndexes(statistics.rank(TITLE, procedure.getProcedure())));
+    }
+
+    @Test
+    public void outOfSequenceStepContinuesInRankedOrderTest() {
+        StepEffectivenessStatistics statistics = new StepEffectivenessStatistics(Mode.Reorder, 1, 10);
+        statistics.record(procedure(State.Completed, 100, job(0, "ECAL"), 30, job(1, "PIXEL"), 30));
+
+        RecoveryProcedure procedure = newProcedure(job(0, "ECAL"), job(1, "PIXEL"), job(2, "CSC"));
+        statistics.apply(procedure);
+        Assert.assertEquals(Arrays.asList(1, 0, 2), stepIndexes(procedure.getProcedure()));
+
+        // PIXEL is ranked before ECAL, it is skipped when ECAL is requested out of sequence
+        Assert.assertEquals(0, (int) procedure.outOfSequenceJob(0).getStepIndex());
+        Assert.assertEquals(2, (int) procedure.getNextJob().getStepIndex());
+        Assert.assertNull(procedure.getNextJob());
+    }
+
+    @Test
+    public void procedureInHistoryIsRecordedOnceTest() {
+        StepEffectivenessStatistics statistics = new StepEffectivenessStatistics(Mode.Reorder, 1, 10);
+        RecoveryProcedure recordedBefore = procedure(State.Completed, 100, job(0, "ECAL"), 30);
+        RecoveryProcedure recordedAfter = procedure(State.Completed, 100, job(0, "ECAL"), 30);
+
+        RecoveryProcedureRepository repository = Mockito.mock(RecoveryProcedureRepository.class);
+        Mockito.when(repository.streamBetween(Matchers.any(), Matchers.any(), Matchers.any()))
+                .thenReturn(Stream.of(recordedBefore, recordedAfter));
+        ReflectionTestUtils.setField(statistics, "recoveryProcedureRepository", repository);
+        ReflectionTestUtils.setField(statistics, "transactionManager", Mockito.mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(statistics, "historyDays", 90);
+
+        statistics.record(recordedBefore);
+        statistics.loadHistory();
+        statistics.record(recordedAfter);
+
+        Assert.assertEquals(2, statistics.getStatistics(TITLE).get(0).getAttempts());
+    }
+
+    @Test
+    public void signatureDoesNotDependOnOrderOfSubsystemsTest() {
+        RecoveryJob first = job(0, "ECAL");
+        first.getRedRecycle().add("PIXEL");
+        RecoveryJob second = job(3, "PIXEL");
+        second.getRedRecycle().add("ECAL");
+        second.setJob("Other description");
+
+        Assert.assertEquals(StepEffectivenessStatistics.signature(first), StepEffectivenessStatistics.signature(second));
+        Assert.assertNotEquals(StepEffectivenessStatistics.signature(first),
+                               StepEffectivenessStatistics.signature(job(0, "ECAL")));
+    }
+
+    /**
+     * @param jobsAndSeconds executed jobs, each followed by the number of seconds until the next one or the end
+     */
+    private RecoveryProcedure procedure(State state, long offset, Object... jobsAndSeconds) {
+        List<RecoveryJob> executed = new ArrayList<>();
+        OffsetDateTime time = T0.plusMinutes(offset + ids);
+        for (int i = 0; i < jobsAndSeconds.length; i += 2) {
+            RecoveryJob job = (RecoveryJob) jobsAndSeconds[i];
+            job.setStart(time);
+            time = time.plusSeconds((Integer) jobsAndSeconds[i + 1]);
+            executed.add(job);
+        }
+        return RecoveryProcedure.builder()
+                .id(++ids)
+                .problemTitle(TITLE)
+                .state(state.toString())
+                .start(T0)
+                .end(time)
+                .executedJobs(executed)
+                .build();
+    }
+
+    private static RecoveryProcedure newProcedure(RecoveryJob... steps) {
+        return RecoveryProcedure.builder()
+                .problemTitle(TITLE)
+                .procedure(new ArrayList<>(Arrays.asList(steps)))
+                .build();
+    }
+
+    private static RecoveryJob job(int stepIndex, String subsystem) {
+        return RecoveryJob.builder()
+                .stepIndex(stepIndex)
+                .job("Red recycle " + subsystem)
+                .redRecycle(new HashSet<>(Collections.singleton(subsystem)))
+                .greenRecycle(new HashSet<>())
+                .fault(new HashSet<>())
+                .reset(new HashSet<>())
+                .build();
+    }
+
+    private static List<Integer> stepIndexes(List<RecoveryJob> steps) {
+        List<Integer> indexes = new ArrayList<>();
+        steps.forEach(step -> indexes.add(step.getStepIndex()));
+        return indexes;
+    }
+}
@@ -0,0 +1,101 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class FMControllerPoolTest {
+
+    private final LV0AutomatorSimulator simulator =
+            new LV0AutomatorSimulator(0, 0, 0, 30, new LV0AutomatorStatusMonitor(10, 50));
+
+    @After
+    public void tearDown() {
+        simulator.shutdown();
+    }
+
+    @Test
+    public void controllerIsReusedTest() throws Exception {
+        FMControllerPool pool = new FMControllerPool(60000, 4, simulator);
+
+        LV0AutomatorController first = pool.borrowAutomatorController("test", "lv0a");
+        pool.release(first, true);
+        LV0AutomatorController second = pool.borrowAutomatorController("test", "lv0a");
+        LV0AutomatorController other = pool.borrowAutomatorController("test", "other");
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, other);
+        Assert.assertEquals(1L, metric(pool, "rcms.pool.hits"));
+        Assert.assertEquals(2L, metric(pool, "rcms.pool.misses"));
+        Assert.assertEquals(2, metric(pool, "rcms.pool.borrowed"));
+        Assert.assertEquals(1 / 3.0, pool.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void unhealthyControllerIsDiscardedTest() throws Exception {
+        FMControllerPool pool = new FMControllerPool(60000, 4, simulator);
+
+        L0Controller failed = pool.borrowL0Controller("test", "l0");
+        pool.release(failed, false);
+        L0Controller next = pool.borrowL0Controller("test", "l0");
+
+        Assert.assertNotSame(failed, next);
+        Assert.assertEquals(0L, metric(pool, "rcms.pool.hits"));
+        Assert.assertEquals(1L, metric(pool, "rcms.pool.evictions"));
+    }
+
+    @Test
+    public void idleControllersPerKeyAreLimitedTest() throws Exception {
+        FMControllerPool pool = new FMControllerPool(60000, 2, simulator);
+
+        LV0AutomatorController[] controllers = new LV0AutomatorController[3];
+        for (int i = 0; i < controllers.length; i++) {
+            controllers[i] = pool.borrowAutomatorController("test", "lv0a");
+        }
+        for (LV0AutomatorController controller : controllers) {
+            pool.release(controller, true);
+        }
+        Assert.assertEquals(1L, metric(pool, "rcms.pool.evictions"));
+
+        for (int i = 0; i < controllers.length; i++) {
+            pool.borrowAutomatorController("test", "lv0a");
+        }
+        Assert.assertEquals(2L, metric(pool, "rcms.pool.hits"));
+        Assert.assertEquals(4L, metric(pool, "rcms.pool.misses"));
+    }
+
+    @Test
+    public void idleControllerIsEvictedTest() throws Exception {
+        FMControllerPool pool = new FMControllerPool(20, 4, simulator);
+
+        LV0AutomatorController controller = pool.borrowAutomatorController("test", "lv0a");
+        pool.release(controller, true);
+        pool.evictIdle();
+        Assert.assertEquals(0L, metric(pool, "rcms.pool.evictions"));
+
+        Thread.sleep(50);
+        pool.evictIdle();
+        Assert.assertEquals(1L, metric(pool, "rcms.pool.evictions"));
+        Assert.assertNotSame(controller, pool.borrowAutomatorController("test", "lv0a"));
+        Assert.assertEquals(0L, metric(pool, "rcms.pool.hits"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void controllerIsReleasedOnlyOnceTest() throws Exception {
+        FMControllerPool pool = new FMControllerPool(60000, 4, simulator);
+
+        LV0AutomatorController controller = pool.borrowAutomatorController("test", "lv0a");
+        pool.release(controller, true);
+        pool.release(controller, true);
+    }
+
+    private static Object metric(FMControllerPool pool, String name) {
+        Map<String, Object> metrics = pool.metrics().stream()
+                .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+        return metrics.get(name);
+    }
+}
@@ -0,0 +1,117 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class LV0AutomatorSimulatorTest {
+
+    private final LV0AutomatorStatusMonitor statusMonitor = new LV0AutomatorStatusMonitor(10, 50);
+
+    private LV0AutomatorSimulator simulator;
+
+    private RcmsController rcmsController;
+
+    @After
+    public void tearDown() {
+        rcmsController.shutdown();
+        simulator.shutdown();
+    }
+
+    @Test
+    public void recoveryGoesThroughPhasesTest() throws Exception {
+        prepare(0, 30);
+        List<String> statuses = new CopyOnWriteArrayList<>();
+
+        rcmsController.execute(job(false, "ECAL"), this, statuses::add);
+
+        Assert.assertEquals(1, simulator.getRecoveries());
+        // idle status at the end of the recovery is delivered or not depending on the polling
+        statuses.remove(LV0AutomatorSimulator.ACTION_NONE);
+        Assert.assertEquals(Arrays.asList(LV0AutomatorSimulator.ACTION_STOPPING,
+                                          LV0AutomatorSimulator.ACTION_RECOVERING,
+                                          LV0AutomatorSimulator.ACTION_STARTING), statuses);
+        Assert.assertFalse(rcmsController.isRecoveryOngoing());
+        Assert.assertEquals(LV0AutomatorController.SUBSYSTEM_SCHEDULE_NONE, simulator.getSchedules().get("DAQ"));
+        Assert.assertTrue(simulator.getFaults().isEmpty());
+    }
+
+    @Test
+    public void ttcHardResetIsCountedTest() throws Exception {
+        prepare(0, 30);
+
+        rcmsController.execute(job(true));
+
+        Assert.assertEquals(1, simulator.getTtcHardResets());
+        Assert.assertEquals(0, simulator.getRecoveries());
+    }
+
+    @Test
+    public void interruptEndsRecoveryTest() throws Exception {
+        prepare(0, 60000);
+
+        CompletableFuture<Void> execution = CompletableFuture.runAsync(() -> {
+            try {
+                rcmsController.execute(job(false), this, status -> {
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Boolean.TRUE.equals(rcmsController.isRecoveryOngoing()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        rcmsController.interrupt(this);
+
+        execution.get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(rcmsController.isRecoveryOngoing());
+    }
+
+    @Test
+    public void injectedFailuresOpenCircuitTest() throws Exception {
+        prepare(1, 30);
+        ReflectionTestUtils.setField(rcmsController, "circuitBreaker",
+                                     new RcmsCircuitBreaker(2, 60000, 4, 10, System::currentTimeMillis));
+
+        Assert.assertNull(rcmsController.isRecoveryOngoing());
+        Assert.assertNull(rcmsController.isRecoveryOngoing());
+        Assert.assertNull(rcmsController.isRecoveryOngoing());
+
+        Assert.assertEquals(2, simulator.getCalls());
+        Assert.assertEquals(2, simulator.getFailures());
+    }
+
+    private void prepare(double failureRate, long phaseDuration) {
+        simulator = new LV0AutomatorSimulator(1, 1, failureRate, phaseDuration, statusMonitor);
+        rcmsController = new RcmsController();
+        ReflectionTestUtils.setField(rcmsController, "controllerPool", new FMControllerPool(60000, 4, simulator));
+        ReflectionTestUtils.setField(rcmsController, "statusMonitor", statusMonitor);
+        ReflectionTestUtils.setField(rcmsController, "parallelCommands", true);
+        ReflectionTestUtils.setField(rcmsController, "AUTOMATOR_URI", "lv0a");
+        ReflectionTestUtils.setField(rcmsController, "L0_URI", "l0");
+        ReflectionTestUtils.setField(rcmsController, "senderURI", "test");
+    }
+
+    private static RecoveryJob job(boolean ttcHardReset, String... faults) {
+        return RecoveryJob.builder()
+                .job("Recycle DAQ")
+                .issueTTCHardReset(ttcHardReset)
+                .redRecycle(new HashSet<>(ttcHardReset ? Collections.emptyList() : Collections.singletonList("DAQ")))
+                .greenRecycle(new HashSet<>())
+                .reset(new HashSet<>())
+                .fault(new HashSet<>(Arrays.asList(faults)))
+                .build();
+    }
+}
@@ -0,0 +1,138 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LV0AutomatorStatusMonitorTest {
+
+    @Test
+    public void statusChangesAreReportedOnceTest() throws Exception {
+
+        StubFM fm = new StubFM(Arrays.asList("Stopping", "Stopping", "Stopping", "Starting", "Starting"));
+        LV0AutomatorStatusMonitor monitor = new LV0AutomatorStatusMonitor(1, 4);
+
+        List<String> reported = new ArrayList<>();
+        monitor.awaitRecoveryEnd(fm, reported::add);
+
+        Assert.assertEquals(Arrays.asList("Stopping", "Starting"), reported);
+    }
+
+    @Test
+    public void pollingBacksOffWhenStatusDoesNotChangeTest() throws Exception {
+
+        StubFM fm = new StubFM(Collections.nCopies(5, "Stopping"));
+        LV0AutomatorStatusMonitor monitor = new LV0AutomatorStatusMonitor(20, 1000);
+        // LV0 automator is known to push
+        monitor.onParameterNotification(Collections.singletonMap("OTHER", "value"));
+        monitor.expectRecovery();
+
+        long start = System.currentTimeMillis();
+        monitor.awaitRecoveryEnd(fm, null);
+        long duration = System.currentTimeMillis() - start;
+
+        // 20 + 40 + 80 + 160 + 320 ms
+        Assert.assertTrue("Backoff too short: " + duration, duration >= 600);
+        Assert.assertTrue("Backoff too long: " + duration, duration < 2000);
+        Assert.assertEquals(6, fm.ongoingCalls.get());
+    }
+
+    @Test
+    public void pollingIsSlowUntilAutomatorPushesTest() throws Exception {
+
+        StubFM fm = new StubFM(Arrays.asList("Stopping", "Recovering", "Starting"));
+        LV0AutomatorStatusMonitor monitor = new LV0AutomatorStatusMonitor(1, 200);
+
+        long start = System.currentTimeMillis();
+        monitor.awaitRecoveryEnd(fm, null);
+        long duration = System.currentTimeMillis() - start;
+
+        // every action is new, yet polled with the maximum period
+        Assert.assertTrue("Polling too fast: " + duration, duration >= 600);
+        Assert.assertEquals(4, fm.ongoingCalls.get());
+    }
+
+    @Test
+    public void pushedEndBeforeStartIsConfirmedTest() throws Exception {
+
+        StubFM fm = new StubFM(Arrays.asList("Stopping", "Starting"));
+        LV0AutomatorStatusMonitor monitor = new LV0AutomatorStatusMonitor(1, 4);
+
+        // late notification of the interrupt preceding the recovery is dropped
+        monitor.onParameterNotification(Collections.singletonMap(LV0AutomatorStatusMonitor.RECOVERY_ONGOING, "false"));
+        monitor.expectRecovery();
+        // the one pushed after the start, before the recovery is seen ongoing, is confirmed
+        monitor.onParameterNotification(Collections.singletonMap(LV0AutomatorStatusMonitor.RECOVERY_ONGOING, "false"));
+
+        List<String> reported = new ArrayList<>();
+        monitor.awaitRecoveryEnd(fm, reported::add);
+
+        Assert.assertEquals(Arrays.asList("Stopping", "Starting"), reported);
+        Assert.assertEquals(3, fm.ongoingCalls.get());
+    }
+
+    @Test
+    public void pushedEndOfRecoveryWakesUpWaitingThreadTest() throws Exception {
+
+        StubFM fm = new StubFM(Collections.nCopies(1000, "Stopping"));
+        LV0AutomatorStatusMonitor monitor = new LV0AutomatorStatusMonitor(10000, 10000);
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put(LV0AutomatorStatusMonitor.RECOVERY_ONGOING, "false");
+            monitor.onParameterNotification(parameters);
+        }).start();
+
+        long start = System.currentTimeMillis();
+        monitor.awaitRecoveryEnd(fm, null);
+        long duration = System.currentTimeMillis() - start;
+
+        Assert.assertTrue("End of recovery detected too late: " + duration, duration < 1000);
+        Assert.assertEquals(1, fm.ongoingCalls.get());
+    }
+
+    /**
+     * Stub of the LV0 automator, reports given recovery actions and then the end of recovery
+     */
+    private static class StubFM implements ILV0AutomatorStatus {
+
+        private final List<String> actions;
+
+        private final AtomicInteger ongoingCalls = new AtomicInteger();
+
+        private int index = -1;
+
+        StubFM(List<String> actions) {
+            this.actions = actions;
+        }
+
+        @Override
+        public boolean isRecoveryOngoing() {
+            ongoingCalls.incrementAndGet();
+            index++;
+            return index < actions.size();
+        }
+
+        @Override
+        public String getRecoveryAction() {
+            return actions.get(index);
+        }
+
+        @Override
+        public Map<String, String> getSubsystemRecoveryActions() {
+            return new HashMap<>();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.junit.Assert;
+import org.junit.Test;
+import rcms.fm.fw.parameter.bean.FunctionManagerParameterBean;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ParameterBeanCacheTest {
+
+    @Test
+    public void sameCommandIsServedFromCacheTest() {
+        ParameterBeanCache cache = new ParameterBeanCache(10);
+
+        FunctionManagerParameterBean[] first = cache.get(schedules("ECAL", "PIXEL"));
+        FunctionManagerParameterBean[] second = cache.get(schedules("PIXEL", "ECAL"));
+        FunctionManagerParameterBean[] other = cache.get(schedules("ECAL"));
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, other);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1 / 3.0, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void leastRecentlyUsedCommandIsEvictedTest() {
+        ParameterBeanCache cache = new ParameterBeanCache(2);
+
+        FunctionManagerParameterBean[] ecal = cache.get(schedules("ECAL"));
+        FunctionManagerParameterBean[] pixel = cache.get(schedules("PIXEL"));
+        cache.get(schedules("ECAL"));
+        cache.get(schedules("TRACKER"));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(ecal, cache.get(schedules("ECAL")));
+        Assert.assertNotSame(pixel, cache.get(schedules("PIXEL")));
+    }
+
+    private static Map<String, Object> schedules(String... subsystems) {
+        Map<String, String> schedules = new HashMap<>();
+        for (String subsystem : subsystems) {
+            schedules.put(subsystem, LV0AutomatorController.SUBSYSTEM_SCHEDULE_RECYCLE);
+        }
+        Map<String, Object> command = new HashMap<>();
+        command.put("command", "subsystemSchedules");
+        command.put("schedules", schedules);
+        return command;
+    }
+}
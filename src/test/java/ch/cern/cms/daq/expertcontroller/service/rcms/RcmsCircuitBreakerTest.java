@@ -0,0 +1,135 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RcmsCircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(1000000);
+
+    private final RcmsCircuitBreaker breaker = new RcmsCircuitBreaker(2, 1000, 1, 10, now::get);
+
+    @Test
+    public void circuitOpensAfterConsecutiveFailuresTest() throws Exception {
+        fail();
+        Assert.assertEquals(RcmsCircuitBreaker.State.Closed, breaker.getState());
+        Assert.assertEquals("ok", breaker.call("test", () -> "ok"));
+        fail();
+        fail();
+
+        Assert.assertEquals(RcmsCircuitBreaker.State.Open, breaker.getState());
+        try {
+            breaker.call("test", () -> {
+                Assert.fail("Call made with open circuit");
+                return null;
+            });
+            Assert.fail("Exception expected");
+        } catch (RcmsUnavailableException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void successfulProbeClosesCircuitTest() throws Exception {
+        fail();
+        fail();
+        now.addAndGet(1000);
+
+        Assert.assertEquals(RcmsCircuitBreaker.State.HalfOpen, breaker.getState());
+        Assert.assertEquals("ok", breaker.call("probe", () -> "ok"));
+        Assert.assertEquals(RcmsCircuitBreaker.State.Closed, breaker.getState());
+    }
+
+    @Test
+    public void failedProbeOpensCircuitAgainTest() throws Exception {
+        fail();
+        fail();
+        now.addAndGet(1000);
+        fail();
+
+        Assert.assertEquals(RcmsCircuitBreaker.State.Open, breaker.getState());
+        now.addAndGet(999);
+        Assert.assertEquals(RcmsCircuitBreaker.State.Open, breaker.getState());
+    }
+
+    @Test
+    public void onlyOneProbeIsMadeTest() throws Exception {
+        fail();
+        fail();
+        now.addAndGet(1000);
+
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> probe = CompletableFuture.supplyAsync(() -> {
+            try {
+                return breaker.call("probe", () -> {
+                    probing.countDown();
+                    release.await();
+                    return "ok";
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Assert.assertTrue(probing.await(5, TimeUnit.SECONDS));
+
+        try {
+            breaker.call("other", () -> "other");
+            Assert.fail("Exception expected");
+        } catch (RcmsUnavailableException e) {
+            // expected
+        }
+
+        release.countDown();
+        Assert.assertEquals("ok", probe.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("other", breaker.call("other", () -> "other"));
+    }
+
+    @Test
+    public void fullBulkheadRejectsCallTest() throws Exception {
+        CountDownLatch calling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return breaker.call("slow", () -> {
+                    calling.countDown();
+                    release.await();
+                    return "slow";
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Assert.assertTrue(calling.await(5, TimeUnit.SECONDS));
+
+        try {
+            breaker.call("other", () -> "other");
+            Assert.fail("Exception expected");
+        } catch (RcmsUnavailableException e) {
+            // expected
+        }
+
+        release.countDown();
+        Assert.assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+        // rejection by the bulkhead is not a failure of the FM
+        Assert.assertEquals(RcmsCircuitBreaker.State.Closed, breaker.getState());
+    }
+
+    private void fail() {
+        try {
+            breaker.call("test", () -> {
+                throw new LV0AutomatorControlException("timeout");
+            });
+            Assert.fail("Exception expected");
+        } catch (RcmsUnavailableException e) {
+            Assert.fail("Call not made");
+        } catch (LV0AutomatorControlException e) {
+            // expected
+        }
+    }
+}
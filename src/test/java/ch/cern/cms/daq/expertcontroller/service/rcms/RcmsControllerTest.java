@@ -0,0 +1,127 @@
+package ch.cern.cms.daq.expertcontroller.service.rcms;
+
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class RcmsControllerTest {
+
+    private final FMControllerPool controllerPool = Mockito.mock(FMControllerPool.class);
+
+    private final LV0AutomatorController controller = Mockito.mock(LV0AutomatorController.class);
+
+    private final LV0AutomatorController faultsController = Mockito.mock(LV0AutomatorController.class);
+
+    private RcmsController rcmsController;
+
+    @Before
+    public void setUp() throws Exception {
+        rcmsController = new RcmsController();
+        ReflectionTestUtils.setField(rcmsController, "controllerPool", controllerPool);
+        ReflectionTestUtils.setField(rcmsController, "statusMonitor", Mockito.mock(LV0AutomatorStatusMonitor.class));
+
+        Mockito.when(controllerPool.borrowAutomatorController(anyString(), anyString()))
+                .thenReturn(controller, faultsController);
+    }
+
+    @After
+    public void tearDown() {
+        rcmsController.shutdown();
+    }
+
+    @Test
+    public void faultsAreSentInOneBatchWithSchedulesTest() throws Exception {
+        ReflectionTestUtils.setField(rcmsController, "parallelCommands", true);
+
+        rcmsController.recoverAndWait(job("ECAL", "PIXEL", "TRACKER"), null);
+
+        Map<String, Boolean> faults = new HashMap<>();
+        faults.put("ECAL", true);
+        faults.put("PIXEL", true);
+        faults.put("TRACKER", true);
+
+        InOrder inOrder = Mockito.inOrder(controller, faultsController);
+        inOrder.verify(controller).interruptRecovery();
+        inOrder.verify(faultsController).setFaults(faults);
+        inOrder.verify(controller).startRecovery();
+        verify(controller).setSchedules(Collections.singletonMap("DAQ", LV0AutomatorController.SUBSYSTEM_SCHEDULE_RECYCLE));
+        verify(controller, never()).setFault(anyString(), anyBoolean());
+        verify(controllerPool).release(faultsController, true);
+        verify(controllerPool).release(controller, true);
+    }
+
+    @Test
+    public void openCircuitFailsFastTest() throws Exception {
+        RcmsCircuitBreaker circuitBreaker = new RcmsCircuitBreaker(1, 60000, 4, 10, System::currentTimeMillis);
+        ReflectionTestUtils.setField(rcmsController, "circuitBreaker", circuitBreaker);
+        Mockito.when(controller.isRecoveryOngoing()).thenThrow(new LV0AutomatorControlException("timeout"));
+
+        Assert.assertNull(rcmsController.isRecoveryOngoing());
+        Assert.assertEquals(RcmsCircuitBreaker.State.Open, circuitBreaker.getState());
+
+        Assert.assertNull(rcmsController.isRecoveryOngoing());
+        rcmsController.interrupt();
+        try {
+            rcmsController.recoverAndWait(job("ECAL"), null);
+            Assert.fail("Exception expected");
+        } catch (RcmsUnavailableException e) {
+            // expected
+        }
+
+        verify(controller).isRecoveryOngoing();
+        verify(controller, never()).interruptRecovery();
+        verify(controller, never()).startRecovery();
+    }
+
+    @Test
+    public void faultsAreSentBeforeSchedulesWithoutParallelCommandsTest() throws Exception {
+        ReflectionTestUtils.setField(rcmsController, "parallelCommands", false);
+
+        rcmsController.recoverAndWait(job("ECAL", "PIXEL"), null);
+
+        InOrder inOrder = Mockito.inOrder(controller);
+        inOrder.verify(controller).interruptRecovery();
+        inOrder.verify(controller).setFaults(anyMapOf(String.class, Boolean.class));
+        inOrder.verify(controller).setSchedules(anyMapOf(String.class, String.class));
+        inOrder.verify(controller).startRecovery();
+        verify(controllerPool, Mockito.times(1)).borrowAutomatorController(anyString(), anyString());
+    }
+
+    @Test
+    public void noFaultsCommandWithoutFaultsTest() throws Exception {
+        ReflectionTestUtils.setField(rcmsController, "parallelCommands", true);
+
+        rcmsController.recoverAndWait(job(), null);
+
+        verify(controller, never()).setFaults(anyMapOf(String.class, Boolean.class));
+        verify(controller).startRecovery();
+        verify(controllerPool, Mockito.times(1)).borrowAutomatorController(anyString(), anyString());
+    }
+
+    private static RecoveryJob job(String... faults) {
+        return RecoveryJob.builder()
+                .job("Recycle DAQ")
+                .redRecycle(new HashSet<>(Collections.singletonList("DAQ")))
+                .greenRecycle(new HashSet<>())
+                .reset(new HashSet<>())
+                .fault(new HashSet<>(Arrays.asList(faults)))
+                .build();
+    }
+}
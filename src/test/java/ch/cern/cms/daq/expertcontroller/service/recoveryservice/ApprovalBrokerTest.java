@@ -0,0 +1,68 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
+
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ApprovalBrokerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void firstDecisionWinsTest() throws Exception {
+        ApprovalBroker broker = new ApprovalBroker(scheduler, 10000);
+        CompletableFuture<FSMEvent> approval = broker.register(1L, 0);
+
+        Assert.assertTrue(broker.isPending(1L, 0));
+        Assert.assertFalse(broker.decide(1L, 1, FSMEvent.JobAccepted));
+        Assert.assertTrue(broker.decide(1L, 0, FSMEvent.OtherJobAccepted));
+        Assert.assertFalse(broker.decide(1L, 0, FSMEvent.JobAccepted));
+
+        Assert.assertEquals(FSMEvent.OtherJobAccepted, approval.get());
+        Assert.assertFalse(broker.isPending(1L, 0));
+        Assert.assertEquals(0, broker.size());
+    }
+
+    @Test
+    public void approvalTimesOutTest() throws Exception {
+        ApprovalBroker broker = new ApprovalBroker(scheduler, 50);
+        CompletableFuture<FSMEvent> approval = broker.register(1L, 0);
+
+        Assert.assertEquals(FSMEvent.Timeout, approval.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(broker.decide(1L, 0, FSMEvent.JobAccepted));
+        Assert.assertEquals(0, broker.size());
+    }
+
+    @Test
+    public void cancelledApprovalIgnoresDecisionTest() {
+        ApprovalBroker broker = new ApprovalBroker(scheduler, 10000);
+        CompletableFuture<FSMEvent> approval = broker.register(null, null);
+
+        approval.cancel(false);
+
+        Assert.assertFalse(broker.decide(null, null, FSMEvent.JobAccepted));
+        Assert.assertEquals(0, broker.size());
+    }
+
+    @Test
+    public void registrationSupersedesPreviousTest() throws Exception {
+        ApprovalBroker broker = new ApprovalBroker(scheduler, 10000);
+        CompletableFuture<FSMEvent> first = broker.register(1L, 0);
+        CompletableFuture<FSMEvent> second = broker.register(1L, 0);
+
+        Assert.assertTrue(first.isCancelled());
+        Assert.assertTrue(broker.decide(1L, 0, FSMEvent.JobAccepted));
+        Assert.assertEquals(FSMEvent.JobAccepted, second.get());
+    }
+}
@@ -0,0 +1,44 @@
+package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
+
+import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSM;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMListener;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.IFSMListener;
+
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the executor scenarios against the asynchronous executor
+ */
+public class AsyncExecutorTest extends ExecutorTest {
+
+    @Override
+    protected void prepare(Function<RecoveryJob, FSMEvent> approvalConsumer,
+                           Function<RecoveryJob, FSMEvent> recoveryJobConsumer,
+                           Supplier<FSMEvent> observer,
+                           ApprovalBroker approvalBroker) {
+
+        IFSMListener listener = FSMListener.builder().build();
+
+        fsm = FSM.builder().listener(listener).build().initialize();
+        executor = AsyncExecutor.builder()
+                .fsm(fsm)
+                .listener(listener)
+                .executorService(Executors.newCachedThreadPool())
+                .timeoutScheduler(Executors.newSingleThreadScheduledExecutor())
+                .jobApprovalConsumer(approvalConsumer)
+                .jobConsumer(recoveryJobConsumer)
+                .statusReportConsumer(report)
+                .observationConsumer(observer)
+                .observationWindow(recoveryJob -> observationWindow)
+                .approvalTimeout(2)
+                .executionTimeout(2)
+                .approvalBroker(approvalBroker)
+                .build();
+        ((FSMListener) listener).setExecutor(executor);
+
+    }
+}
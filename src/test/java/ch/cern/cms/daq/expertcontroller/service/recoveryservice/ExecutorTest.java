@@ -1,5 +1,6 @@
 package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
 
+import ch.cern.cms.daq.expertcontroller.datatransfer.ApprovalResponse;
 import ch.cern.cms.daq.expertcontroller.entity.Event;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryJob;
 import ch.cern.cms.daq.expertcontroller.entity.RecoveryProcedure;
@@ -11,8 +12,12 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -23,6 +28,11 @@ public class ExecutorTest {
     FSM fsm;
     IExecutor executor;
 
+    /**
+     * Observation window in milliseconds when the test has no observer
+     */
+    int observationWindow = 100;
+
     private final static Logger logger = LoggerFactory.getLogger(ExecutorTest.class);
 
     @Test
@@ -90,6 +100,21 @@ public class ExecutorTest {
                             result.stream().map(c -> c.getContent()).collect(Collectors.toList()));
     }
 
+    @Test
+    public void executionTimeoutCountsFromJobStartTest() {
+        prepare(approvalConsumerThatAccepts, recoveryJobConsumerThatWaitsForAutomator, observerThatFinishes);
+        List<RecoveryJob> list = new ArrayList<>();
+        list.add(RecoveryJob.builder().job("J1").build());
+        RecoveryProcedure job = RecoveryProcedure.builder().procedure(list).build();
+        List<Event> result = executor.start(job, true);
+        Assert.assertEquals(State.Idle, fsm.getState());
+        Assert.assertEquals(Arrays.asList("Procedure starts",
+                                          "Job J1 accepted",
+                                          "Job J1 completed",
+                                          "Recovery procedure completed successfully"),
+                            result.stream().map(c -> c.getContent()).collect(Collectors.toList()));
+    }
+
     @Test
     public void recoveryJobCancelledFromOutsideTest() throws InterruptedException {
         prepare(approvalConsumerThatAccepts, recoveryJobConsumerThatHangs, observerThatFinishes);
@@ -199,6 +224,56 @@ public class ExecutorTest {
 
     }
 
+    @Test
+    public void statusSnapshotIsNotAffectedByLaterUpdatesTest() throws InterruptedException {
+        prepare(approvalConsumerThatAccepts, recoveryJobConsumerThatCompletes, observerThatFinishes);
+
+        List<RecoveryJob> list = new ArrayList<>();
+        list.add(RecoveryJob.builder().job("J").build());
+        RecoveryProcedure job = RecoveryProcedure.builder().procedure(list).build();
+
+        new Thread(() -> executor.start(job, true)).start();
+        Thread.sleep(50);
+
+        ExecutorStatus recovering = executor.getStatus();
+        Assert.assertEquals(State.Recovering, recovering.getState());
+        ExecutorStatus.ExecutedProcedure executed = recovering.getExecutedProcedure();
+        Assert.assertEquals(job.getStart(), executed.getStart());
+        Assert.assertNull(executed.getEnd());
+        Assert.assertEquals(Collections.singletonList("Recovering"),
+                            executed.getSteps().stream().map(RecoveryJob::getStatus).collect(Collectors.toList()));
+        // nothing changed, same snapshot
+        Assert.assertSame(recovering, executor.getStatus());
+
+        Thread.sleep(250);
+
+        ExecutorStatus idle = executor.getStatus();
+        Assert.assertEquals(State.Idle, idle.getState());
+        Assert.assertEquals(4, idle.getActionSummary().size());
+
+        Assert.assertEquals(State.Recovering, recovering.getState());
+        Assert.assertEquals(2, recovering.getActionSummary().size());
+        // procedure has finished since, values of the snapshot have not changed
+        Assert.assertNotNull(job.getEnd());
+        Assert.assertEquals(ExecutorStatus.ExecutedProcedure.builder()
+                                    .start(job.getStart())
+                                    .state(State.Recovering.toString())
+                                    .eventSummary(executed.getEventSummary())
+                                    .steps(executed.getSteps())
+                                    .executedJobs(executed.getExecutedJobs())
+                                    .build(), executed);
+        Assert.assertEquals("Recovering", executed.getSteps().get(0).getStatus());
+        Assert.assertNull(executed.getSteps().get(0).getEnd());
+        Assert.assertEquals(idle.getExecutedProcedure().getEnd(), job.getEnd());
+
+        try {
+            recovering.getActionSummary().clear();
+            Assert.fail("Snapshot must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
     @Test
     public void otherStepApprovedTest() {
         prepare(approvalConsumerThatAcceptsOtherJob, recoveryJobConsumerThatCompletes, observerThatFinishes);
@@ -253,9 +328,168 @@ public class ExecutorTest {
     }
 
 
-    private void prepare(Function<RecoveryJob, FSMEvent> approvalConsumer,
-                         Function<RecoveryJob, FSMEvent> recoveryJobConsumer,
-                         Supplier<FSMEvent> observer) {
+    @Test
+    public void observationWindowPassesWithNoEffectTest() {
+        prepare(approvalConsumerThatAccepts, recoveryJobConsumerThatCompletes, null);
+
+        List<RecoveryJob> list = Arrays.asList(
+                RecoveryJob.builder().job("J1").build(),
+                RecoveryJob.builder().job("J2").build());
+        RecoveryProcedure job = RecoveryProcedure.builder().procedure(list).build();
+        List<Event> result = executor.start(job, true);
+        Assert.assertEquals(State.Idle, fsm.getState());
+
+        Assert.assertEquals(Arrays.asList("Procedure starts",
+                                          "Job J1 accepted",
+                                          "Job J1 completed",
+                                          "Job J1 didn't fix the problem",
+                                          "Job J2 accepted",
+                                          "Job J2 completed",
+                                          "Job J2 didn't fix the problem",
+                                          "Next job not found, recovery failed"
+        ), result.stream().map(c -> c.getContent()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void finishedSignalEndsObservationTest() throws InterruptedException {
+        observationWindow = 100000;
+        prepare(approvalConsumerThatAccepts, recoveryJobConsumerThatCompletes, null);
+
+        List<RecoveryJob> list = new ArrayList<>();
+        list.add(RecoveryJob.builder().job("J1").build());
+        RecoveryProcedure job = RecoveryProcedure.builder().procedure(list).build();
+        executor.start(job);
+
+        awaitState(State.Observe);
+        Assert.assertTrue(executor.finished());
+
+        awaitState(State.Idle);
+        Assert.assertEquals(Arrays.asList("Procedure starts",
+                                          "Job J1 accepted",
+                                          "Job J1 completed",
+                                          "Recovery procedure completed successfully"
+        ), executor.getStatus().getActionSummary().stream().map(c -> c.getContent()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void sameProblemEndsObservationTest() throws InterruptedException {
+        observationWindow = 100000;
+        prepare(approvalConsumerThatAccepts, recoveryJobConsumerThatCompletes, null);
+
+        List<RecoveryJob> list = Arrays.asList(
+                RecoveryJob.builder().job("J1").build(),
+                RecoveryJob.builder().job("J2").build());
+        RecoveryProcedure job = RecoveryProcedure.builder().procedure(list).build();
+        executor.start(job);
+
+        awaitState(State.Observe);
+        Assert.assertTrue(executor.noEffect());
+
+        awaitState(State.Recovering);
+        Assert.assertFalse(executor.noEffect());
+        awaitState(State.Observe);
+        executor.finished();
+        awaitState(State.Idle);
+
+        Assert.assertEquals(Arrays.asList("Procedure starts",
+                                          "Job J1 accepted",
+                                          "Job J1 completed",
+                                          "Job J1 didn't fix the problem",
+                                          "Job J2 accepted",
+                                          "Job J2 completed",
+                                          "Recovery procedure completed successfully"
+        ), executor.getStatus().getActionSummary().stream().map(c -> c.getContent()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void approvalsRaceWithFinishedAndInterruptSignalsTest() throws InterruptedException {
+        observationWindow = 10;
+        ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+        prepare(approvalConsumerThatAsksOperator, recoveryJobConsumerThatCompletesAtOnce, null,
+                new ApprovalBroker(timeoutScheduler, 10000));
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> errors.add(e));
+        try {
+            for (long id = 1; id <= 100; id++) {
+                RecoveryProcedure procedure = RecoveryProcedure.builder()
+                        .id(id)
+                        .procedure(Arrays.asList(
+                                RecoveryJob.builder().job("J1").stepIndex(0).build(),
+                                RecoveryJob.builder().job("J2").stepIndex(1).build()))
+                        .build();
+                executor.start(procedure);
+                awaitState(State.AwaitingApproval);
+
+                ApprovalResponse approval = ApprovalResponse.builder()
+                        .recoveryProcedureId(id).step(0).approved(true).build();
+                Runnable preemptOrFinish = id % 2 == 0 ? executor::interrupt : executor::finished;
+
+                CountDownLatch go = new CountDownLatch(1);
+                List<Thread> signals = Arrays.asList(
+                        signal(go, errors, () -> executor.approveRecovery(approval)),
+                        signal(go, errors, executor::finished),
+                        signal(go, errors, preemptOrFinish));
+                go.countDown();
+                for (Thread signal : signals) {
+                    signal.join();
+                }
+
+                // finished signal is refused while recovering, recovery service repeats it
+                for (int i = 0; i < 500 && fsm.getState() != State.Idle; i++) {
+                    executor.finished();
+                    Thread.sleep(2);
+                }
+                awaitState(State.Idle);
+
+                List<Event> summary = executor.getStatus().getActionSummary();
+                List<String> types = summary.stream().map(Event::getType).collect(Collectors.toList());
+                Assert.assertEquals("Procedure starts", summary.get(0).getContent());
+                Assert.assertEquals("Procedure must end exactly once: " + types, 1,
+                                    types.stream().filter(Arrays.asList("finish", "interrupt", "cancellation")::contains)
+                                            .count());
+            }
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+            timeoutScheduler.shutdownNow();
+        }
+        Assert.assertEquals(Collections.emptyList(), errors);
+    }
+
+    private static Thread signal(CountDownLatch go, List<Throwable> errors, Runnable signal) {
+        Thread thread = new Thread(() -> {
+            try {
+                go.await();
+                signal.run();
+            } catch (InterruptedException | RuntimeException e) {
+                errors.add(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Wait up to 5 seconds for the FSM to reach given state
+     */
+    private void awaitState(State state) throws InterruptedException {
+        for (int i = 0; i < 500 && fsm.getState() != state; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(state, fsm.getState());
+    }
+
+    protected void prepare(Function<RecoveryJob, FSMEvent> approvalConsumer,
+                           Function<RecoveryJob, FSMEvent> recoveryJobConsumer,
+                           Supplier<FSMEvent> observer) {
+        prepare(approvalConsumer, recoveryJobConsumer, observer, null);
+    }
+
+    protected void prepare(Function<RecoveryJob, FSMEvent> approvalConsumer,
+                           Function<RecoveryJob, FSMEvent> recoveryJobConsumer,
+                           Supplier<FSMEvent> observer,
+                           ApprovalBroker approvalBroker) {
 
         IFSMListener listener = FSMListener.builder().build();
 
@@ -268,8 +502,10 @@ public class ExecutorTest {
                 .jobConsumer(recoveryJobConsumer)
                 .statusReportConsumer(report)
                 .observationConsumer(observer)
+                .observationWindow(recoveryJob -> observationWindow)
                 .approvalTimeout(2)
                 .executionTimeout(2)
+                .approvalBroker(approvalBroker)
                 .build();
         ((FSMListener) listener).setExecutor(executor);
 
@@ -292,6 +528,13 @@ public class ExecutorTest {
     };
 
 
+    /**
+     * Leaves the decision to the operator
+     */
+    Function<RecoveryJob, FSMEvent> approvalConsumerThatAsksOperator = recoveryJob -> null;
+
+    Function<RecoveryJob, FSMEvent> recoveryJobConsumerThatCompletesAtOnce = recoveryJob -> FSMEvent.JobCompleted;
+
     Function<RecoveryJob, FSMEvent> approvalConsumerThatRejects = recoveryJob -> {
         logger.info("Approval required, rejecting/timeouts");
         return FSMEvent.Timeout;
@@ -320,6 +563,20 @@ public class ExecutorTest {
 
     };
 
+    /**
+     * Waits for the LV0 automator executing other job, then executes for longer than the rest of the timeout
+     */
+    Function<RecoveryJob, FSMEvent> recoveryJobConsumerThatWaitsForAutomator = recoveryJob -> {
+        try {
+            Thread.sleep(1500);
+            executor.jobStarted();
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            return null;
+        }
+        return FSMEvent.JobCompleted;
+    };
+
     Function<RecoveryJob, FSMEvent> recoveryJobConsumerThatThrowsException = new Function<RecoveryJob, FSMEvent>() {
         @Override
         public FSMEvent apply(RecoveryJob recoveryJob) {
@@ -3,9 +3,18 @@ package ch.cern.cms.daq.expertcontroller.service.recoveryservice;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSMEvent;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.FSM;
 import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.State;
+import ch.cern.cms.daq.expertcontroller.service.recoveryservice.fsm.TransitionTable;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 public class FSMTest {
 
     @Test
@@ -107,4 +116,110 @@ public class FSMTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void timeSpentInStatesIsReportedTest() throws InterruptedException {
+
+        List<String> left = new ArrayList<>();
+        List<Long> durations = new ArrayList<>();
+        FSM fsm = FSM.builder()
+                .listener(new IFSMListenerMock())
+                .stateDurationConsumer((state, exitEvent, nanos) -> {
+                    left.add(state + "." + exitEvent);
+                    durations.add(nanos);
+                })
+                .build().initialize();
+
+        fsm.transition(FSMEvent.RecoveryStarts);
+        fsm.transition(FSMEvent.NextJobFound);
+        Thread.sleep(20);
+        fsm.transition(FSMEvent.JobAccepted);
+
+        Assert.assertEquals(Arrays.asList("Idle.RecoveryStarts",
+                                          "SelectingJob.NextJobFound",
+                                          "AwaitingApproval.JobAccepted"), left);
+        Assert.assertTrue(durations.get(2) >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * Jobs without effect chained by the listener are applied in a loop, on a thread with small stack
+     */
+    @Test
+    public void longChainOfEventsDoesNotGrowStackTest() throws InterruptedException {
+
+        int attempts = 2000;
+        AtomicInteger noEffect = new AtomicInteger();
+        IFSMListenerMock listener = new IFSMListenerMock() {
+            @Override
+            public FSMEvent onJobNoEffect() {
+                noEffect.incrementAndGet();
+                return FSMEvent.NextJobFound;
+            }
+
+            @Override
+            public FSMEvent onNextJobFound() {
+                return FSMEvent.JobAccepted;
+            }
+
+            @Override
+            public FSMEvent onJobAccepted() {
+                return FSMEvent.JobCompleted;
+            }
+
+            @Override
+            public FSMEvent onJobCompleted() {
+                return noEffect.get() < attempts ? FSMEvent.NoEffect : FSMEvent.Finished;
+            }
+        };
+
+        FSM fsm = FSM.builder().listener(listener).build().initialize();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                fsm.transition(FSMEvent.RecoveryStarts);
+                fsm.transition(FSMEvent.NextJobFound);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(attempts, noEffect.get());
+        Assert.assertEquals(State.Completed, fsm.getState());
+    }
+
+    @Test
+    public void customTransitionsTest() {
+
+        Properties definitions = new Properties();
+        definitions.setProperty("Idle.RecoveryStarts", "SelectingJob");
+        definitions.setProperty("SelectingJob.NextJobNotFound", "Idle");
+
+        FSM fsm = FSM.builder()
+                .listener(new IFSMListenerMock())
+                .transitions(TransitionTable.of(definitions))
+                .build().initialize();
+
+        fsm.transition(FSMEvent.RecoveryStarts);
+        fsm.transition(FSMEvent.NextJobNotFound);
+        Assert.assertEquals(State.Idle, fsm.getState());
+
+        fsm.transition(FSMEvent.RecoveryStarts);
+        try {
+            fsm.transition(FSMEvent.NextJobFound);
+            Assert.fail("No exception thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(State.SelectingJob, fsm.getState());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStateInTransitionsTest() {
+
+        Properties definitions = new Properties();
+        definitions.setProperty("Idle.RecoveryStarts", "Selecting");
+
+        TransitionTable.of(definitions);
+    }
+}